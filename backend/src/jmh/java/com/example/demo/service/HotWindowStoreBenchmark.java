@@ -0,0 +1,98 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Scan throughput of {@link HotWindowStore}. Run with
+ * {@code mvn -Pjmh test-compile exec:exec} (see the jmh profile in pom.xml).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotWindowStoreBenchmark {
+    private static final String[] COUNTRIES = {"US", "DE", "FR", "GB", "IN", "BR", "JP", "CA", "AU", "ES"};
+    private static final String[] PLATFORMS = {"web", "ios", "android"};
+    private static final String[] BROWSERS = {"chrome", "safari", "firefox", "edge"};
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"100"})
+    public int accounts;
+
+    private HotWindowStore store;
+    private AggregationQuery tenantByCampaign;
+    private AggregationQuery adminByDayAndCountry;
+
+    @Setup
+    public void setUp() {
+        store = new HotWindowStore(mock(JdbcTemplate.class), true, 30, 0,
+                Clock.fixed(Instant.parse("2024-06-30T12:00:00Z"), ZoneOffset.UTC), new SimpleMeterRegistry());
+        // Warm-up against an empty table, then load synthetic rows through the ingest path
+        store.warm();
+        Random random = new Random(42);
+        List<UUID> accountIds = new ArrayList<>();
+        for (int i = 0; i < accounts; i++) {
+            accountIds.add(new UUID(0, i));
+        }
+        LocalDateTime first = LocalDateTime.parse("2024-06-01T00:00:00");
+        List<AdEvent> batch = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            batch.add(new AdEvent(first.plusMinutes(random.nextInt(30 * 24 * 60)),
+                    accountIds.get(random.nextInt(accounts)), "campaign-" + random.nextInt(500),
+                    COUNTRIES[random.nextInt(COUNTRIES.length)], PLATFORMS[random.nextInt(PLATFORMS.length)],
+                    BROWSERS[random.nextInt(BROWSERS.length)], BigDecimal.valueOf(random.nextInt(1_000_000), 6),
+                    random.nextInt(1000), random.nextInt(50)));
+            if (batch.size() == 10_000) {
+                store.onIngested(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        store.onIngested(batch);
+        System.out.printf("%nhot window: %d rows, %d bytes allocated, %.1f bytes/row%n",
+                store.rows(), store.allocatedBytes(), store.bytesPerRow());
+
+        tenantByCampaign = new AggregationQuery(accountIds.get(0), false, List.of("campaign"),
+                List.of("spent", "clicks", "ctr"), "All", "All", "All", "All", "spent", "desc",
+                "2024-06-01", "2024-06-30");
+        adminByDayAndCountry = new AggregationQuery(null, true, List.of("day", "country"),
+                List.of("spent", "impressions", "clicks"), "All", "All", "web", "All", "", "asc",
+                "2024-06-01", "2024-06-30");
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.shutdown();
+    }
+
+    @Benchmark
+    public List<AggregatedMetrics> tenantByCampaign() {
+        return store.aggregate(tenantByCampaign).orElseThrow();
+    }
+
+    @Benchmark
+    public List<AggregatedMetrics> adminByDayAndCountry() {
+        return store.aggregate(adminByDayAndCountry).orElseThrow();
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.demo.service;
+
+import com.clickhouse.client.ClickHouseConfig;
+import com.clickhouse.client.ClickHouseStreamResponse;
+import com.clickhouse.client.config.ClickHouseClientOption;
+import com.clickhouse.data.ClickHouseCompression;
+import com.clickhouse.data.ClickHouseFormat;
+import com.clickhouse.data.ClickHouseInputStream;
+import com.clickhouse.data.stream.Lz4OutputStream;
+import com.clickhouse.jdbc.ClickHouseConnection;
+import com.clickhouse.jdbc.ClickHouseResultSet;
+import com.clickhouse.jdbc.ClickHouseStatement;
+import com.clickhouse.jdbc.JdbcConfig;
+import com.clickhouse.jdbc.JdbcTypeMapping;
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import net.jpountz.lz4.LZ4Factory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Bytes on the wire and client decode time for one million aggregation result
+ * rows. The rows are encoded locally as RowBinaryWithNamesAndTypes, optionally
+ * LZ4-framed the way ClickHouse compresses responses, and read through the
+ * driver's own {@code ClickHouseResultSet}, so no server is needed. Sizes are
+ * printed at setup; the score is milliseconds per million rows. Run with
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args=RowBinaryDecode}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowBinaryDecodeBenchmark {
+    private static final String[] COUNTRIES = {"US", "DE", "FR", "GB", "IN", "BR", "JP", "CA", "AU", "ES"};
+    private static final String[] NAMES = {"day", "country", "campaign", "total_spent", "total_impressions",
+            "total_clicks", "record_count", "ctr"};
+    private static final String[] TYPES = {"Date", "String", "String", "Decimal(38, 6)", "UInt64",
+            "UInt64", "UInt64", "Nullable(Float64)"};
+
+    @Param({"1000000"})
+    public int rows;
+
+    private byte[] rowBinary;
+    private byte[] lz4;
+    private ClickHouseConfig config;
+    private ClickHouseStatement statement;
+    private AggregationQuery query;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long tabSeparated = 0;
+        writeVarInt(out, NAMES.length);
+        for (String name : NAMES) {
+            writeString(out, name);
+        }
+        for (String type : TYPES) {
+            writeString(out, type);
+        }
+        long firstDay = LocalDate.parse("2024-01-01").toEpochDay();
+        for (int i = 0; i < rows; i++) {
+            long day = firstDay + random.nextInt(366);
+            String country = COUNTRIES[random.nextInt(COUNTRIES.length)];
+            String campaign = "campaign-" + random.nextInt(500);
+            long spentMicros = random.nextInt(1_000_000_000);
+            long impressions = random.nextInt(100_000);
+            long clicks = impressions == 0 ? 0 : random.nextInt((int) impressions);
+            long count = 1 + random.nextInt(1000);
+
+            writeLittleEndian(out, day, 2);
+            writeString(out, country);
+            writeString(out, campaign);
+            // Decimal(38, 6) is an Int128 of micros; these are positive, so the high half is zero
+            writeLittleEndian(out, spentMicros, 8);
+            writeLittleEndian(out, 0, 8);
+            writeLittleEndian(out, impressions, 8);
+            writeLittleEndian(out, clicks, 8);
+            writeLittleEndian(out, count, 8);
+            if (impressions == 0) {
+                out.write(1);
+            } else {
+                out.write(0);
+                writeLittleEndian(out, Double.doubleToLongBits((double) clicks / impressions), 8);
+            }
+
+            tabSeparated += (LocalDate.ofEpochDay(day) + "\t" + country + "\t" + campaign + "\t"
+                    + BigDecimal.valueOf(spentMicros, 6).toPlainString() + "\t" + impressions + "\t" + clicks + "\t"
+                    + count + "\t" + (impressions == 0 ? "\\N" : String.valueOf((double) clicks / impressions)) + "\n")
+                    .length();
+        }
+        rowBinary = out.toByteArray();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (Lz4OutputStream lz4Out = new Lz4OutputStream(compressed, 1 << 20, null)) {
+            lz4Out.write(rowBinary);
+        }
+        lz4 = compressed.toByteArray();
+
+        System.out.printf("%n%d rows: TabSeparated %d bytes (%.1f/row), RowBinary %d bytes (%.1f/row), "
+                        + "RowBinary+LZ4 %d bytes (%.1f/row), LZ4 codec %s%n",
+                rows, tabSeparated, (double) tabSeparated / rows, rowBinary.length, (double) rowBinary.length / rows,
+                lz4.length, (double) lz4.length / rows, LZ4Factory.fastestInstance());
+
+        config = new ClickHouseConfig(Map.of(ClickHouseClientOption.FORMAT, ClickHouseFormat.RowBinaryWithNamesAndTypes));
+        ClickHouseConnection connection = mock(ClickHouseConnection.class);
+        when(connection.getJdbcConfig()).thenReturn(new JdbcConfig());
+        when(connection.getDefaultCalendar()).thenReturn(Calendar.getInstance());
+        when(connection.getJdbcTypeMapping()).thenReturn(JdbcTypeMapping.getDefaultMapping());
+        when(connection.getTypeMap()).thenReturn(Map.of());
+        statement = mock(ClickHouseStatement.class);
+        when(statement.getConnection()).thenReturn(connection);
+        when(statement.getConfig()).thenReturn(config);
+        query = new AggregationQuery(UUID.randomUUID(), false, List.of("day", "country", "campaign"),
+                List.of("spent", "impressions", "clicks", "ctr"), "All", "All", "All", "All", "", "asc",
+                "2024-01-01", "2024-12-31");
+    }
+
+    @Benchmark
+    public void rowBinaryTypedGetters(Blackhole blackhole) throws Exception {
+        decode(resultSet(rowBinary, ClickHouseCompression.NONE), new AggregatedMetricsDecoder(query, false), blackhole);
+    }
+
+    @Benchmark
+    public void rowBinaryLz4TypedGetters(Blackhole blackhole) throws Exception {
+        decode(resultSet(lz4, ClickHouseCompression.LZ4), new AggregatedMetricsDecoder(query, false), blackhole);
+    }
+
+    /** The previous mapper: getObject and lookups by label for every cell. */
+    @Benchmark
+    public void rowBinaryLz4GetObject(Blackhole blackhole) throws Exception {
+        decode(resultSet(lz4, ClickHouseCompression.LZ4), (rs, rowNum) -> {
+            Map<String, Object> dimensions = new HashMap<>();
+            for (String dim : query.getGroupBy()) {
+                dimensions.put(dim, rs.getObject(dim));
+            }
+            Map<String, Double> derived = new LinkedHashMap<>();
+            for (String name : query.getDerivedMetrics()) {
+                Object value = rs.getObject(name);
+                derived.put(name, value == null ? null : ((Number) value).doubleValue());
+            }
+            return new AggregatedMetrics(dimensions, rs.getBigDecimal("total_spent"), rs.getLong("total_impressions"),
+                    rs.getLong("total_clicks"), (int) rs.getLong("record_count"), derived, null);
+        }, blackhole);
+    }
+
+    private ResultSet resultSet(byte[] bytes, ClickHouseCompression compression) throws IOException, SQLException {
+        return new ClickHouseResultSet("", "", statement, ClickHouseStreamResponse.of(config,
+                ClickHouseInputStream.of(new ByteArrayInputStream(bytes), compression)));
+    }
+
+    private static void decode(ResultSet rs, RowMapper<AggregatedMetrics> mapper, Blackhole blackhole)
+            throws SQLException {
+        try (ResultSet closing = rs) {
+            int rowNum = 0;
+            while (closing.next()) {
+                blackhole.consume(mapper.mapRow(closing, rowNum++));
+            }
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeLittleEndian(ByteArrayOutputStream out, long value, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xFF);
+        }
+    }
+}
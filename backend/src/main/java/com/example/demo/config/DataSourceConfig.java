@@ -1,13 +1,21 @@
 package com.example.demo.config;
 
+import com.example.demo.service.QuerySettings;
+import com.example.demo.service.QueryTracker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.jpountz.lz4.LZ4Factory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import javax.sql.DataSource;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Configuration
 public class DataSourceConfig {
@@ -21,23 +29,48 @@ public class DataSourceConfig {
     @Value("${DB_PASSWORD:}")
     private String dbPassword;
 
+    /**
+     * One pool per workload class, sized and timed out under
+     * {@code app.pool.<pool>.*}; see {@link WorkloadRoutingDataSource} and {@link PoolSizer}.
+     */
     @Bean
-    public DataSource dataSource() {
+    public WorkloadRoutingDataSource dataSource(QueryTracker queryTracker, Environment environment,
+                                                MeterRegistry meterRegistry) {
+        // Results arrive as RowBinaryWithNamesAndTypes (the driver's format for queries),
+        // LZ4-compressed by the server. lz4-java decompresses with its JNI codec where the
+        // native library loads and falls back to pure Java elsewhere; the gauge shows which.
+        String jdbcUrl = dbUrl + (dbUrl.contains("?") ? "&" : "?") + "compress=1&compress_algorithm=lz4";
+        Gauge.builder("clickhouse.lz4", () -> 1)
+                .tag("implementation", LZ4Factory.fastestInstance().toString())
+                .register(meterRegistry);
+        Map<String, HikariDataSource> pools = new LinkedHashMap<>();
+        for (String pool : WorkloadRoutingDataSource.POOLS) {
+            pools.put(pool, pool(pool, jdbcUrl, environment, meterRegistry));
+        }
+        return new WorkloadRoutingDataSource(pools, queryTracker);
+    }
+
+    private HikariDataSource pool(String name, String jdbcUrl, Environment environment, MeterRegistry meterRegistry) {
+        String prefix = "app.pool." + name + ".";
         HikariConfig config = new HikariConfig();
-        // Disable compression to avoid missing native libs, and use gzip if needed
-        String jdbcUrl = dbUrl.contains("?") ? dbUrl + "&compress=0" : dbUrl + "?compress=0";
+        config.setPoolName("clickhouse-" + name);
         config.setJdbcUrl(jdbcUrl);
         config.setUsername(dbUsername);
         config.setPassword(dbPassword);
         config.setDriverClassName("com.clickhouse.jdbc.ClickHouseDriver");
-        config.setMaximumPoolSize(5);
-        config.setMinimumIdle(1);
+        config.setMaximumPoolSize(environment.getProperty(prefix + "max-size", Integer.class, 5));
+        config.setMinimumIdle(environment.getProperty(prefix + "min-idle", Integer.class, 1));
+        // How long a caller waits for a connection before the statement fails
+        config.setConnectionTimeout(environment.getProperty(prefix + "connection-timeout-ms", Long.class, 30000L));
+        config.setIdleTimeout(environment.getProperty(prefix + "idle-timeout-ms", Long.class, 600000L));
+        // hikaricp.connections.* tagged with the pool name
+        config.setMetricRegistry(meterRegistry);
         return new HikariDataSource(config);
     }
 
     @Bean
-    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
-        return new JdbcTemplate(dataSource);
+    public JdbcTemplate jdbcTemplate(DataSource dataSource, QueryTracker queryTracker, QuerySettings querySettings) {
+        return new TrackingJdbcTemplate(dataSource, queryTracker, querySettings);
     }
 }
 
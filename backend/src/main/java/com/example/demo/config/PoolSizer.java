@@ -0,0 +1,113 @@
+package com.example.demo.config;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizes the batch pools (export, ingest) from what the interactive pool
+ * sees: while requests queue for an interactive connection or hold one longer
+ * than the latency target on average, the batch pools are halved (down to one
+ * connection) so ClickHouse has fewer heavy queries competing with dashboards;
+ * once it recovers they grow back one connection per interval up to their
+ * configured size. Connections above a lowered maximum are retired by Hikari
+ * as they go idle.
+ */
+@Component
+public class PoolSizer {
+    private final HikariPoolMXBean interactive;
+    private final String interactivePoolName;
+    private final Map<String, HikariConfigMXBean> batchPools;
+    private final Map<String, Integer> configuredSizes = new LinkedHashMap<>();
+    private final long latencyTargetMs;
+    private final ScheduledExecutorService sizer;
+    private final MeterRegistry meterRegistry;
+    private long lastUsageCount;
+    private double lastUsageMs;
+
+    @Autowired
+    public PoolSizer(WorkloadRoutingDataSource dataSource,
+                     @Value("${app.pool.adjust-interval-ms:5000}") long intervalMs,
+                     @Value("${app.pool.interactive-latency-target-ms:500}") long latencyTargetMs,
+                     MeterRegistry meterRegistry) {
+        this(dataSource.getPool(WorkloadRoutingDataSource.INTERACTIVE).getHikariPoolMXBean(),
+                dataSource.getPool(WorkloadRoutingDataSource.INTERACTIVE).getPoolName(),
+                batchPools(dataSource), latencyTargetMs, meterRegistry);
+        if (intervalMs > 0) {
+            sizer.scheduleWithFixedDelay(this::adjust, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    PoolSizer(HikariPoolMXBean interactive, String interactivePoolName, Map<String, HikariConfigMXBean> batchPools,
+              long latencyTargetMs, MeterRegistry meterRegistry) {
+        this.interactive = interactive;
+        this.interactivePoolName = interactivePoolName;
+        this.batchPools = batchPools;
+        this.latencyTargetMs = latencyTargetMs;
+        this.meterRegistry = meterRegistry;
+        batchPools.forEach((name, pool) -> configuredSizes.put(name, pool.getMaximumPoolSize()));
+        this.sizer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-sizer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static Map<String, HikariConfigMXBean> batchPools(WorkloadRoutingDataSource dataSource) {
+        Map<String, HikariConfigMXBean> pools = new LinkedHashMap<>();
+        for (String name : List.of(WorkloadRoutingDataSource.EXPORT, WorkloadRoutingDataSource.INGEST)) {
+            pools.put(name, dataSource.getPool(name).getHikariConfigMXBean());
+        }
+        return pools;
+    }
+
+    void adjust() {
+        try {
+            boolean congested = interactive.getThreadsAwaitingConnection() > 0
+                    || interactiveUsageMs() > latencyTargetMs;
+            for (Map.Entry<String, HikariConfigMXBean> pool : batchPools.entrySet()) {
+                int current = pool.getValue().getMaximumPoolSize();
+                int next = congested ? Math.max(1, current / 2) : Math.min(configuredSizes.get(pool.getKey()), current + 1);
+                if (next != current) {
+                    pool.getValue().setMaximumPoolSize(next);
+                    meterRegistry.counter("db.pool.resized", "pool", pool.getKey(),
+                            "direction", next < current ? "shrink" : "grow").increment();
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; the next interval retries
+            System.err.println("Pool resize failed: " + e.getMessage());
+        }
+    }
+
+    /** Mean time an interactive connection was held since the last call, 0 if none was returned. */
+    private double interactiveUsageMs() {
+        Timer usage = meterRegistry.find("hikaricp.connections.usage").tag("pool", interactivePoolName).timer();
+        if (usage == null) {
+            return 0;
+        }
+        long count = usage.count();
+        double totalMs = usage.totalTime(TimeUnit.MILLISECONDS);
+        double mean = count > lastUsageCount ? (totalMs - lastUsageMs) / (count - lastUsageCount) : 0;
+        lastUsageCount = count;
+        lastUsageMs = totalMs;
+        return mean;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sizer.shutdownNow();
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.demo.config;
+
+import com.example.demo.security.UserPrincipal;
+import com.example.demo.service.QuerySettings;
+import com.example.demo.service.QueryTracker;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opens a {@link QueryTracker} scope for each analytics request with the
+ * endpoint's timeout and {@link QuerySettings} profile (export endpoints, else
+ * admin or interactive by caller). Clients that send {@code X-Query-Group} (one value per
+ * dashboard tab) get their previous in-flight request to the same endpoint
+ * cancelled when a newer one arrives.
+ * <p>
+ * Streamed responses stay tracked until the stream ends: the async dispatch
+ * that completes them, or the stream's own completion callbacks when that
+ * dispatch does not get here. The container thread that started them is
+ * released from the request.
+ */
+@Component
+public class QueryTrackingInterceptor implements AsyncHandlerInterceptor {
+    public static final String QUERY_GROUP_HEADER = "X-Query-Group";
+    public static final String QUERY_ID_HEADER = "X-Query-Id";
+    private static final String TRACKED_ATTRIBUTE = QueryTrackingInterceptor.class.getName() + ".request";
+
+    private final QueryTracker queryTracker;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    // First matching pattern wins
+    private final Map<String, Long> timeoutsByPattern = new LinkedHashMap<>();
+    private final long defaultTimeoutMs;
+    private final String adminEmail;
+
+    public QueryTrackingInterceptor(QueryTracker queryTracker, @Value("${app.admin.email}") String adminEmail,
+                                    @Value("${app.query.timeout.export-ms:120000}") long exportTimeoutMs,
+                                    @Value("${app.query.timeout.aggregate-ms:15000}") long aggregateTimeoutMs,
+                                    @Value("${app.query.timeout.ads-ms:15000}") long adsTimeoutMs) {
+        this.queryTracker = queryTracker;
+        this.defaultTimeoutMs = aggregateTimeoutMs;
+        this.adminEmail = adminEmail;
+        timeoutsByPattern.put("/api/aggregate/export/**", exportTimeoutMs);
+        timeoutsByPattern.put("/api/aggregate/**", aggregateTimeoutMs);
+        timeoutsByPattern.put("/api/ads/**", adsTimeoutMs);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (request.getAttribute(TRACKED_ATTRIBUTE) != null) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        long timeoutMs = timeoutsByPattern.entrySet().stream()
+                .filter(e -> pathMatcher.match(e.getKey(), path))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(defaultTimeoutMs);
+
+        String supersedeKey = null;
+        String profile = QuerySettings.INTERACTIVE;
+        String group = request.getHeader(QUERY_GROUP_HEADER);
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getPrincipal() instanceof UserPrincipal) {
+            UserPrincipal user = (UserPrincipal) auth.getPrincipal();
+            if (StringUtils.hasText(group)) {
+                supersedeKey = user.getUserId() + ":" + path + ":" + group;
+            }
+            if (adminEmail.equals(user.getEmail())) {
+                profile = QuerySettings.ADMIN;
+            }
+        }
+        if (pathMatcher.match("/api/aggregate/export/**", path)) {
+            profile = QuerySettings.EXPORT;
+        }
+
+        QueryTracker.TrackedRequest tracked = queryTracker.begin(supersedeKey, timeoutMs, profile);
+        request.setAttribute(TRACKED_ATTRIBUTE, tracked);
+        response.setHeader(QUERY_ID_HEADER, tracked.getId());
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // afterCompletion runs on the async dispatch; keep this thread from carrying the request into the next one
+        queryTracker.attach(null);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object tracked = request.getAttribute(TRACKED_ATTRIBUTE);
+        if (tracked != null) {
+            request.removeAttribute(TRACKED_ATTRIBUTE);
+            queryTracker.end((QueryTracker.TrackedRequest) tracked);
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.example.demo.config;
 
+import com.example.demo.model.Account;
+import com.example.demo.model.AdEvent;
+import com.example.demo.service.AccountStore;
+import com.example.demo.service.AdEventIngestService;
 import com.example.demo.service.AuthService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import java.io.BufferedReader;
@@ -13,13 +16,17 @@ import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @Component
 public class StartupSeeder implements CommandLineRunner {
+    private static final int INGEST_BATCH_SIZE = 1000;
 
     private final AuthService authService;
-    private final JdbcTemplate jdbcTemplate;
+    private final AccountStore accountStore;
+    private final AdEventIngestService ingestService;
 
     @Value("${app.admin.email:admin@example.com}")
     private String adminEmail;
@@ -27,9 +34,10 @@ public class StartupSeeder implements CommandLineRunner {
     @Value("${app.admin.password:admin123}")
     private String adminPassword;
 
-    public StartupSeeder(AuthService authService, JdbcTemplate jdbcTemplate) {
+    public StartupSeeder(AuthService authService, AccountStore accountStore, AdEventIngestService ingestService) {
         this.authService = authService;
-        this.jdbcTemplate = jdbcTemplate;
+        this.accountStore = accountStore;
+        this.ingestService = ingestService;
     }
 
     @Override
@@ -66,17 +74,8 @@ public class StartupSeeder implements CommandLineRunner {
                     String passwordHash = values[2].trim();
                     
                     // Check if account already exists
-                    Integer count = jdbcTemplate.queryForObject(
-                        "SELECT COUNT(*) FROM appdb.accounts WHERE id = ?", 
-                        Integer.class, 
-                        UUID.fromString(id)
-                    );
-                    
-                    if (count == 0) {
-                        jdbcTemplate.update(
-                            "INSERT INTO appdb.accounts (id, email, password_hash, created_at) VALUES (?, ?, ?, now())",
-                            UUID.fromString(id), email, passwordHash
-                        );
+                    if (accountStore.findByEmail(email).isEmpty()) {
+                        accountStore.create(new Account(UUID.fromString(id), email, passwordHash, ""));
                     }
                 }
             }
@@ -94,6 +93,7 @@ public class StartupSeeder implements CommandLineRunner {
             String line;
             boolean isFirstLine = true;
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+            List<AdEvent> batch = new ArrayList<>();
             
             while ((line = reader.readLine()) != null) {
                 if (isFirstLine) {
@@ -113,13 +113,15 @@ public class StartupSeeder implements CommandLineRunner {
                     long impressions = Long.parseLong(values[7].trim());
                     long clicks = Long.parseLong(values[8].trim());
                     
-                    // Insert ad metrics data
-                    jdbcTemplate.update(
-                        "INSERT INTO appdb.ads_metrics (event_time, account_id, campaign, country, platform, browser, spent, impressions, clicks) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
-                        eventTime, accountId, campaign, country, platform, browser, spent, impressions, clicks
-                    );
+                    batch.add(new AdEvent(eventTime, accountId, campaign, country, platform, browser, spent, impressions, clicks));
+                    if (batch.size() >= INGEST_BATCH_SIZE) {
+                        ingestService.ingest(batch);
+                        batch = new ArrayList<>();
+                    }
                 }
             }
+            // Insert the remaining rows
+            ingestService.ingest(batch);
             reader.close();
         } catch (IOException e) {
             System.err.println("Error loading mock ad metrics: " + e.getMessage());
@@ -0,0 +1,65 @@
+package com.example.demo.config;
+
+import com.clickhouse.jdbc.ClickHouseStatement;
+import com.example.demo.service.QueryCancelledException;
+import com.example.demo.service.QuerySettings;
+import com.example.demo.service.QueryTracker;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * JdbcTemplate that ties every statement to the API request it runs for: the
+ * statement is tagged with the request's query id ({@code log_comment}, visible in
+ * {@code system.processes} and {@code system.query_log}), bounded by the remaining
+ * request time through {@code max_execution_time}, and registered with
+ * {@link QueryTracker} so it can be killed. Statements also carry the settings
+ * of their {@link QuerySettings} profile: the one selected on the thread, else
+ * the request's.
+ */
+public class TrackingJdbcTemplate extends JdbcTemplate {
+    private final QueryTracker queryTracker;
+    private final QuerySettings querySettings;
+
+    public TrackingJdbcTemplate(DataSource dataSource, QueryTracker queryTracker, QuerySettings querySettings) {
+        super(dataSource);
+        this.queryTracker = queryTracker;
+        this.querySettings = querySettings;
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        QueryTracker.TrackedRequest request = queryTracker.current();
+        Map<String, Long> settings = querySettings.forStatement(QuerySettings.current(request));
+        if (!settings.isEmpty() && stmt.isWrapperFor(ClickHouseStatement.class)) {
+            for (Map.Entry<String, Long> setting : settings.entrySet()) {
+                stmt.unwrap(ClickHouseStatement.class).getRequest().set(setting.getKey(), setting.getValue());
+            }
+        }
+        if (request == null) {
+            return;
+        }
+        // Maps to max_execution_time in the ClickHouse driver
+        stmt.setQueryTimeout(request.remainingSeconds());
+        if (stmt.isWrapperFor(ClickHouseStatement.class)) {
+            stmt.unwrap(ClickHouseStatement.class).getRequest().set("log_comment", request.getId());
+        }
+        if (!request.register(stmt)) {
+            throw new SQLException("Request " + request.getId() + " was cancelled before the statement ran");
+        }
+    }
+
+    @Override
+    protected DataAccessException translateException(String task, String sql, SQLException ex) {
+        QueryTracker.TrackedRequest request = queryTracker.current();
+        if (request != null && request.getCancelledReason() != null) {
+            return new QueryCancelledException(request.getCancelledReason(), ex);
+        }
+        return super.translateException(task, sql, ex);
+    }
+}
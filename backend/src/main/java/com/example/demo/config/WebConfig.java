@@ -1,20 +1,31 @@
 package com.example.demo.config;
 
+import com.example.demo.ratelimit.TenantRateLimitInterceptor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.util.List;
 
 @Configuration
-public class WebConfig {
+public class WebConfig implements WebMvcConfigurer {
 
     @Value("${app.cors.origin:http://localhost:3000}")
     private String corsOrigin;
 
+    private final TenantRateLimitInterceptor tenantRateLimitInterceptor;
+    private final QueryTrackingInterceptor queryTrackingInterceptor;
+
+    public WebConfig(TenantRateLimitInterceptor tenantRateLimitInterceptor, QueryTrackingInterceptor queryTrackingInterceptor) {
+        this.tenantRateLimitInterceptor = tenantRateLimitInterceptor;
+        this.queryTrackingInterceptor = queryTrackingInterceptor;
+    }
+
     @Bean
     public CorsFilter corsFilter() {
         CorsConfiguration config = new CorsConfiguration();
@@ -27,6 +38,12 @@ public class WebConfig {
         source.registerCorsConfiguration("/**", config);
         return new CorsFilter(source);
     }
-}
-
 
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(tenantRateLimitInterceptor)
+                .addPathPatterns("/api/aggregate/**", "/api/ads/**");
+        registry.addInterceptor(queryTrackingInterceptor)
+                .addPathPatterns("/api/aggregate/**", "/api/ads/**");
+    }
+}
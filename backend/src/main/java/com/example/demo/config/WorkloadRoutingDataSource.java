@@ -0,0 +1,68 @@
+package com.example.demo.config;
+
+import com.example.demo.service.QuerySettings;
+import com.example.demo.service.QueryTracker;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out connections from one Hikari pool per workload class, so a slow
+ * export or a seeding run can exhaust only its own pool and logins and
+ * dashboards keep theirs. The pool follows the statement's
+ * {@link QuerySettings} profile: admin requests share the interactive pool,
+ * statements with no profile use it too.
+ */
+public class WorkloadRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+    public static final String INTERACTIVE = "interactive";
+    public static final String EXPORT = "export";
+    public static final String INGEST = "ingest";
+    public static final String AUTH = "auth";
+    public static final List<String> POOLS = List.of(INTERACTIVE, EXPORT, INGEST, AUTH);
+
+    private final Map<String, HikariDataSource> pools;
+    private final QueryTracker queryTracker;
+
+    public WorkloadRoutingDataSource(Map<String, HikariDataSource> pools, QueryTracker queryTracker) {
+        this.pools = pools;
+        this.queryTracker = queryTracker;
+        setTargetDataSources(new HashMap<>(pools));
+        setDefaultTargetDataSource(pools.get(INTERACTIVE));
+        afterPropertiesSet();
+    }
+
+    /** Pool for statements run under a settings profile. */
+    static String pool(String profile) {
+        if (profile == null) {
+            return INTERACTIVE;
+        }
+        switch (profile) {
+            case QuerySettings.EXPORT:
+                return EXPORT;
+            case QuerySettings.INGEST:
+                return INGEST;
+            case QuerySettings.AUTH:
+                return AUTH;
+            default:
+                return INTERACTIVE;
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return pool(QuerySettings.current(queryTracker.current()));
+    }
+
+    public HikariDataSource getPool(String name) {
+        return pools.get(name);
+    }
+
+    @Override
+    public void close() {
+        pools.values().forEach(HikariDataSource::close);
+    }
+}
@@ -1,9 +1,12 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.AdMetrics;
+import com.example.demo.model.CursorPage;
+import com.example.demo.model.FacetValue;
 import com.example.demo.model.PaginatedResponse;
 import com.example.demo.security.UserPrincipal;
 import com.example.demo.service.AdMetricsService;
+import com.example.demo.service.CampaignCatalog;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -13,16 +16,20 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/ads")
 public class AdMetricsController {
     private final AdMetricsService adMetricsService;
+    private final CampaignCatalog campaignCatalog;
     private final String adminEmail;
 
-    public AdMetricsController(AdMetricsService adMetricsService, @Value("${app.admin.email}") String adminEmail) {
+    public AdMetricsController(AdMetricsService adMetricsService, CampaignCatalog campaignCatalog,
+                               @Value("${app.admin.email}") String adminEmail) {
         this.adMetricsService = adMetricsService;
+        this.campaignCatalog = campaignCatalog;
         this.adminEmail = adminEmail;
     }
 
@@ -62,6 +69,22 @@ public class AdMetricsController {
         }
     }
 
+    /**
+     * All filter values in one round trip: {@code {country: [...], campaign: [...], ...}}.
+     */
+    @GetMapping("/facets")
+    public ResponseEntity<Map<String, List<FacetValue>>> getFacets(
+            Authentication auth,
+            @RequestParam(value = "startDate", required = false) String startDate,
+            @RequestParam(value = "endDate", required = false) String endDate,
+            @RequestParam(value = "counts", defaultValue = "false") boolean counts) {
+        UserPrincipal user = (UserPrincipal) auth.getPrincipal();
+        
+        // If user is admin, return facets across all accounts; otherwise only their own
+        UUID accountId = adminEmail.equals(user.getEmail()) ? null : user.getUserId();
+        return ResponseEntity.ok(adMetricsService.getFacets(accountId, startDate, endDate, counts));
+    }
+
     @GetMapping("/countries")
     public ResponseEntity<List<String>> getAvailableCountries(Authentication auth) {
         UserPrincipal user = (UserPrincipal) auth.getPrincipal();
@@ -94,6 +117,31 @@ public class AdMetricsController {
         }
     }
 
+    /**
+     * Typeahead over the campaign catalog: {@code mode} is {@code prefix} (default)
+     * or {@code substring}; pass the returned {@code nextCursor} to get the next page.
+     * A substring page can be short or empty and still carry a {@code nextCursor}.
+     */
+    @GetMapping("/campaigns/search")
+    public ResponseEntity<?> searchCampaigns(
+            Authentication auth,
+            @RequestParam(value = "q", defaultValue = "") String query,
+            @RequestParam(value = "mode", defaultValue = "prefix") String mode,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        UserPrincipal user = (UserPrincipal) auth.getPrincipal();
+        
+        // If user is admin, search all campaigns; otherwise only their own
+        UUID accountId = adminEmail.equals(user.getEmail()) ? null : user.getUserId();
+        try {
+            CampaignCatalog.Mode searchMode = CampaignCatalog.Mode.valueOf(mode.toUpperCase());
+            CursorPage<String> page = campaignCatalog.search(accountId, query, searchMode, limit, cursor);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid request: " + e.getMessage()));
+        }
+    }
+
     @GetMapping("/platforms")
     public ResponseEntity<List<String>> getAvailablePlatforms(Authentication auth) {
         UserPrincipal user = (UserPrincipal) auth.getPrincipal();
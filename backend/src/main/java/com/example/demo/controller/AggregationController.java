@@ -1,153 +1,224 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import com.example.demo.model.ComparisonRow;
 import com.example.demo.model.PaginatedResponse;
+import com.example.demo.model.ProgressiveFrame;
+import com.example.demo.model.TimeSeriesPoint;
 import com.example.demo.security.UserPrincipal;
 import com.example.demo.service.AggregationService;
+import com.example.demo.service.ProgressiveAggregationService;
+import com.example.demo.service.QueryCancelledException;
+import com.example.demo.service.QueryRejectedException;
+import com.example.demo.service.QueryTracker;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.io.StringWriter;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/aggregate")
 public class AggregationController {
     private final AggregationService aggregationService;
+    private final ProgressiveAggregationService progressiveAggregationService;
+    private final QueryTracker queryTracker;
     private final String adminEmail;
+    private final long aggregateTimeoutMs;
 
-    public AggregationController(AggregationService aggregationService, @Value("${app.admin.email}") String adminEmail) {
+    public AggregationController(AggregationService aggregationService,
+                                 ProgressiveAggregationService progressiveAggregationService,
+                                 QueryTracker queryTracker,
+                                 @Value("${app.admin.email}") String adminEmail,
+                                 @Value("${app.query.timeout.aggregate-ms:15000}") long aggregateTimeoutMs) {
         this.aggregationService = aggregationService;
+        this.progressiveAggregationService = progressiveAggregationService;
+        this.queryTracker = queryTracker;
         this.adminEmail = adminEmail;
+        this.aggregateTimeoutMs = aggregateTimeoutMs;
     }
 
     @PostMapping
     public ResponseEntity<?> getAggregatedData(@RequestBody Map<String, Object> request, Authentication auth) {
         try {
-            UserPrincipal user = (UserPrincipal) auth.getPrincipal();
-            UUID userId = user.getUserId();
-            String userEmail = user.getEmail();
-            
-            // Extract parameters from request
-            @SuppressWarnings("unchecked")
-            List<String> groupByDimensions = (List<String>) request.getOrDefault("groupBy", List.of());
-            @SuppressWarnings("unchecked")
-            List<String> metrics = (List<String>) request.getOrDefault("metrics", List.of("spent", "impressions", "clicks"));
-            String countryFilter = (String) request.getOrDefault("countryFilter", "All");
-            String campaignFilter = (String) request.getOrDefault("campaignFilter", "All");
-            String platformFilter = (String) request.getOrDefault("platformFilter", "All");
-            String browserFilter = (String) request.getOrDefault("browserFilter", "All");
-            String sortBy = (String) request.getOrDefault("sortBy", "");
-            String sortDirection = (String) request.getOrDefault("sortDirection", "asc");
-            String startDate = (String) request.getOrDefault("startDate", "");
-            String endDate = (String) request.getOrDefault("endDate", "");
-            
-            // Set default date range to last week if not provided
-            if (startDate.isEmpty() || endDate.isEmpty()) {
-                LocalDate today = LocalDate.now();
-                LocalDate lastWeek = today.minusWeeks(1);
-                startDate = lastWeek.format(DateTimeFormatter.ISO_LOCAL_DATE);
-                endDate = today.format(DateTimeFormatter.ISO_LOCAL_DATE);
+            AggregationQuery query = parseQuery(request, auth);
+            if (query.getMetrics().isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "At least one valid metric must be specified"));
             }
             
-            // Validate metrics
-            List<String> validMetrics = metrics.stream()
-                .filter(m -> List.of("spent", "impressions", "clicks").contains(m))
-                .collect(java.util.stream.Collectors.toList());
+            // Subtotals per grouping prefix plus a grand total when rollup is requested
+            boolean rollup = Boolean.TRUE.equals(request.get("rollup"));
             
-            if (validMetrics.isEmpty()) {
-                return ResponseEntity.badRequest().body(Map.of("error", "At least one valid metric must be specified"));
+            // Top-N per group: topN values of the last groupBy dimension within the others
+            int topN = (Integer) request.getOrDefault("topN", 0);
+            if (topN > 0 && rollup) {
+                return ResponseEntity.badRequest().body(Map.of("error", "rollup and topN cannot be combined"));
             }
             
-            // Check if user is admin
-            boolean isAdmin = adminEmail.equals(userEmail);
+            // Approximate answer from a fraction of the rows, with error bounds; 1 = exact
+            double sample = request.get("sample") == null ? 1 : ((Number) request.get("sample")).doubleValue();
+            if (!(sample > 0 && sample <= 1)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "sample must be in (0, 1]"));
+            }
+            if (sample < 1 && (rollup || topN > 0)) {
+                return ResponseEntity.badRequest().body(Map.of("error", "sample cannot be combined with rollup or topN"));
+            }
             
             // Get aggregated data
-            List<AggregatedMetrics> result = aggregationService.getAggregatedData(
-                userId, groupByDimensions, validMetrics, countryFilter, campaignFilter, platformFilter, browserFilter, isAdmin, sortBy, sortDirection, startDate, endDate
-            );
+            List<AggregatedMetrics> result;
+            if (sample < 1) {
+                result = aggregationService.getSampledAggregatedData(query, sample);
+            } else if (topN > 0) {
+                String topBy = (String) request.getOrDefault("topBy", "spent");
+                boolean withOthers = Boolean.TRUE.equals(request.get("includeOthers"));
+                result = aggregationService.getTopN(query, topN, topBy, withOthers);
+            } else {
+                result = aggregationService.getAggregatedData(query, false, rollup);
+            }
             
-            return ResponseEntity.ok(Map.of(
-                "data", result,
-                "groupBy", groupByDimensions,
-                "metrics", validMetrics,
-                "countryFilter", countryFilter,
-                "campaignFilter", campaignFilter,
-                "platformFilter", platformFilter,
-                "browserFilter", browserFilter,
-                "startDate", startDate,
-                "endDate", endDate,
-                "isAdmin", isAdmin
-            ));
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", result);
+            response.put("rollup", rollup);
+            response.put("topN", topN);
+            response.put("sample", sample);
+            response.put("groupBy", query.getGroupBy());
+            response.put("metrics", query.getMetrics());
+            response.put("countryFilter", query.getCountryFilter());
+            response.put("campaignFilter", query.getCampaignFilter());
+            response.put("platformFilter", query.getPlatformFilter());
+            response.put("browserFilter", query.getBrowserFilter());
+            response.put("startDate", query.getStartDate());
+            response.put("endDate", query.getEndDate());
+            response.put("isAdmin", query.isAdmin());
+            
+            return ResponseEntity.ok(response);
             
+        } catch (QueryRejectedException e) {
+            return rejected(e);
+        } catch (QueryCancelledException e) {
+            return cancelled(e);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", "Invalid request: " + e.getMessage()));
         }
     }
 
+    /**
+     * Same request as {@code POST /api/aggregate}, answered as a Server-Sent
+     * Events stream: a {@code partial} event with the merged result each time one
+     * month of the range completes, then a {@code final} event with the complete
+     * result. A failure after the stream started arrives as an {@code error} event.
+     */
+    @PostMapping(value = "/progressive", produces = "text/event-stream")
+    public ResponseEntity<SseEmitter> getAggregatedDataProgressive(@RequestBody Map<String, Object> request, Authentication auth) {
+        // Typed as SseEmitter so Spring streams it; rejections are a 400 stream with one error event
+        AggregationQuery query;
+        try {
+            query = parseQuery(request, auth);
+            if (query.getMetrics().isEmpty()) {
+                return rejected("At least one valid metric must be specified");
+            }
+        } catch (Exception e) {
+            return rejected("Invalid request: " + e.getMessage());
+        }
+
+        // The query tracker's deadline cancels the months first; this only bounds a stalled client
+        SseEmitter emitter = endTrackingWith(new SseEmitter(aggregateTimeoutMs + 5_000));
+        try {
+            progressiveAggregationService.aggregate(query, frame -> send(emitter, frame))
+                .whenComplete((ignored, e) -> {
+                    if (e == null) {
+                        emitter.complete();
+                    } else {
+                        sendError(emitter, ProgressiveAggregationService.cause(e));
+                    }
+                });
+        } catch (IllegalArgumentException e) {
+            return rejected("Invalid request: " + e.getMessage());
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    private ResponseEntity<SseEmitter> rejected(String message) {
+        SseEmitter emitter = endTrackingWith(new SseEmitter());
+        sendError(emitter, new IllegalArgumentException(message));
+        return ResponseEntity.badRequest().body(emitter);
+    }
+
+    /**
+     * The completing async dispatch need not reach the interceptor (e.g. a client
+     * that went away), so the stream itself ends the request's tracking however
+     * it finishes.
+     */
+    private SseEmitter endTrackingWith(SseEmitter emitter) {
+        QueryTracker.TrackedRequest tracked = queryTracker.current();
+        if (tracked != null) {
+            emitter.onCompletion(() -> queryTracker.end(tracked));
+            emitter.onTimeout(() -> queryTracker.end(tracked));
+            emitter.onError(e -> queryTracker.end(tracked));
+        }
+        return emitter;
+    }
+
+    private static void send(SseEmitter emitter, ProgressiveFrame frame) {
+        try {
+            emitter.send(SseEmitter.event().name(frame.isComplete() ? "final" : "partial").data(frame));
+        } catch (IOException e) {
+            // Client went away; failing the frame stops the remaining months
+            throw new IllegalStateException("Client disconnected", e);
+        }
+    }
+
+    private static void sendError(SseEmitter emitter, Throwable e) {
+        int status = HttpStatus.BAD_REQUEST.value();
+        if (e instanceof QueryRejectedException) {
+            status = ((QueryRejectedException) e).getStatus();
+        } else if (e instanceof QueryCancelledException) {
+            status = ((QueryCancelledException) e).getReason() == QueryTracker.Reason.DEADLINE
+                ? HttpStatus.GATEWAY_TIMEOUT.value() : HttpStatus.CONFLICT.value();
+        }
+        try {
+            emitter.send(SseEmitter.event().name("error").data(Map.of("error", String.valueOf(e.getMessage()), "status", status)));
+            emitter.complete();
+        } catch (IOException | IllegalStateException ignored) {
+            // Client already gone or stream already completed
+            emitter.completeWithError(e);
+        }
+    }
+
     @GetMapping("/dimensions")
     public ResponseEntity<?> getAvailableDimensions() {
         return ResponseEntity.ok(Map.of(
-            "dimensions", List.of("day", "week", "month", "campaign", "country", "platform", "browser"),
-            "metrics", List.of("spent", "impressions", "clicks")
+            "dimensions", AggregationQuery.DIMENSIONS,
+            "metrics", AggregationQuery.METRICS,
+            "derivedMetrics", AggregationQuery.DERIVED_METRICS
         ));
     }
 
     @PostMapping("/paginated")
     public ResponseEntity<?> getAggregatedMetricsPaginated(@RequestBody Map<String, Object> request, Authentication auth) {
         try {
-            UserPrincipal user = (UserPrincipal) auth.getPrincipal();
-            UUID userId = user.getUserId();
-            String userEmail = user.getEmail();
-            
-            // Extract parameters from request
-            @SuppressWarnings("unchecked")
-            List<String> groupByDimensions = (List<String>) request.getOrDefault("groupBy", List.of());
-            @SuppressWarnings("unchecked")
-            List<String> metrics = (List<String>) request.getOrDefault("metrics", List.of("spent", "impressions", "clicks"));
-            String countryFilter = (String) request.getOrDefault("countryFilter", "All");
-            String campaignFilter = (String) request.getOrDefault("campaignFilter", "All");
-            String platformFilter = (String) request.getOrDefault("platformFilter", "All");
-            String browserFilter = (String) request.getOrDefault("browserFilter", "All");
+            AggregationQuery query = parseQuery(request, auth);
             int page = (Integer) request.getOrDefault("page", 0);
             int size = (Integer) request.getOrDefault("size", 10);
-            String sortBy = (String) request.getOrDefault("sortBy", "");
-            String sortDirection = (String) request.getOrDefault("sortDirection", "asc");
-            String startDate = (String) request.getOrDefault("startDate", "");
-            String endDate = (String) request.getOrDefault("endDate", "");
-            
-            // Set default date range to last week if not provided
-            if (startDate.isEmpty() || endDate.isEmpty()) {
-                LocalDate today = LocalDate.now();
-                LocalDate lastWeek = today.minusWeeks(1);
-                startDate = lastWeek.format(DateTimeFormatter.ISO_LOCAL_DATE);
-                endDate = today.format(DateTimeFormatter.ISO_LOCAL_DATE);
-            }
-            
-            // Validate metrics
-            List<String> validMetrics = metrics.stream()
-                .filter(m -> List.of("spent", "impressions", "clicks").contains(m))
-                .collect(java.util.stream.Collectors.toList());
-            
-            if (validMetrics.isEmpty()) {
+            if (query.getMetrics().isEmpty()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "At least one valid metric must be selected"));
             }
             
-            // Check if user is admin
-            boolean isAdmin = adminEmail.equals(userEmail);
-            
             // Get paginated aggregated data
-            PaginatedResponse<AggregatedMetrics> result = aggregationService.getAggregatedDataPaginated(
-                userId, groupByDimensions, validMetrics, countryFilter, campaignFilter, platformFilter, browserFilter, isAdmin, page, size, sortBy, sortDirection, startDate, endDate
-            );
+            PaginatedResponse<AggregatedMetrics> result = aggregationService.getAggregatedDataPaginated(query, page, size);
             
             Map<String, Object> response = new HashMap<>();
             response.put("data", result.getData());
@@ -157,77 +228,131 @@ public class AggregationController {
             response.put("pageSize", result.getPageSize());
             response.put("hasNext", result.isHasNext());
             response.put("hasPrevious", result.isHasPrevious());
-            response.put("groupBy", groupByDimensions);
-            response.put("metrics", validMetrics);
-            response.put("countryFilter", countryFilter);
-            response.put("campaignFilter", campaignFilter);
-            response.put("platformFilter", platformFilter);
-            response.put("browserFilter", browserFilter);
-            response.put("startDate", startDate);
-            response.put("endDate", endDate);
-            response.put("isAdmin", isAdmin);
+            response.put("groupBy", query.getGroupBy());
+            response.put("metrics", query.getMetrics());
+            response.put("countryFilter", query.getCountryFilter());
+            response.put("campaignFilter", query.getCampaignFilter());
+            response.put("platformFilter", query.getPlatformFilter());
+            response.put("browserFilter", query.getBrowserFilter());
+            response.put("startDate", query.getStartDate());
+            response.put("endDate", query.getEndDate());
+            response.put("isAdmin", query.isAdmin());
             
             return ResponseEntity.ok(response);
             
+        } catch (QueryRejectedException e) {
+            return rejected(e);
+        } catch (QueryCancelledException e) {
+            return cancelled(e);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", "Invalid request: " + e.getMessage()));
         }
     }
 
-    @PostMapping("/export/csv")
-    public ResponseEntity<?> exportAggregatedDataAsCsv(@RequestBody Map<String, Object> request, Authentication auth) {
+    /**
+     * Chart series: one point per {@code interval} bucket over the date range with
+     * gaps filled, downsampled to at most {@code maxPoints} when given.
+     */
+    @PostMapping("/timeseries")
+    public ResponseEntity<?> getTimeSeries(@RequestBody Map<String, Object> request, Authentication auth) {
         try {
-            UserPrincipal user = (UserPrincipal) auth.getPrincipal();
-            UUID userId = user.getUserId();
-            String userEmail = user.getEmail();
+            AggregationQuery query = parseQuery(request, auth);
+            if (query.getMetrics().isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "At least one valid metric must be specified"));
+            }
+            String interval = (String) request.getOrDefault("interval", "day");
+            int maxPoints = (Integer) request.getOrDefault("maxPoints", 0);
+            String shapeMetric = (String) request.getOrDefault("shapeMetric",
+                query.getBaseMetrics().isEmpty() ? "spent" : query.getBaseMetrics().get(0));
+            
+            List<TimeSeriesPoint> series = aggregationService.getTimeSeries(query, interval, maxPoints, shapeMetric);
             
-            // Extract parameters from request
-            @SuppressWarnings("unchecked")
-            List<String> groupByDimensions = (List<String>) request.getOrDefault("groupBy", List.of());
-            @SuppressWarnings("unchecked")
-            List<String> metrics = (List<String>) request.getOrDefault("metrics", List.of("spent", "impressions", "clicks"));
-            String countryFilter = (String) request.getOrDefault("countryFilter", "All");
-            String campaignFilter = (String) request.getOrDefault("campaignFilter", "All");
-            String platformFilter = (String) request.getOrDefault("platformFilter", "All");
-            String browserFilter = (String) request.getOrDefault("browserFilter", "All");
-            String sortBy = (String) request.getOrDefault("sortBy", "");
-            String sortDirection = (String) request.getOrDefault("sortDirection", "asc");
-            String startDate = (String) request.getOrDefault("startDate", "");
-            String endDate = (String) request.getOrDefault("endDate", "");
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", series);
+            response.put("interval", interval);
+            response.put("maxPoints", maxPoints);
+            response.put("metrics", query.getMetrics());
+            response.put("startDate", query.getStartDate());
+            response.put("endDate", query.getEndDate());
+            response.put("isAdmin", query.isAdmin());
+            return ResponseEntity.ok(response);
             
-            // Set default date range to last week if not provided
-            if (startDate.isEmpty() || endDate.isEmpty()) {
-                LocalDate today = LocalDate.now();
-                LocalDate lastWeek = today.minusWeeks(1);
-                startDate = lastWeek.format(DateTimeFormatter.ISO_LOCAL_DATE);
-                endDate = today.format(DateTimeFormatter.ISO_LOCAL_DATE);
+        } catch (QueryRejectedException e) {
+            return rejected(e);
+        } catch (QueryCancelledException e) {
+            return cancelled(e);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid request: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Period-over-period comparison: {@code startDate}/{@code endDate} is the current
+     * period, {@code previousStartDate}/{@code previousEndDate} the baseline, which
+     * defaults to the same number of days immediately before.
+     */
+    @PostMapping("/compare")
+    public ResponseEntity<?> compare(@RequestBody Map<String, Object> request, Authentication auth) {
+        try {
+            AggregationQuery query = parseQuery(request, auth);
+            if (query.getBaseMetrics().isEmpty()) {
+                return ResponseEntity.badRequest().body(Map.of("error", "At least one valid metric must be specified"));
+            }
+            String previousStart = (String) request.getOrDefault("previousStartDate", "");
+            String previousEnd = (String) request.getOrDefault("previousEndDate", "");
+            if (previousStart.isEmpty() || previousEnd.isEmpty()) {
+                LocalDate start = LocalDate.parse(query.getStartDate());
+                long days = ChronoUnit.DAYS.between(start, LocalDate.parse(query.getEndDate())) + 1;
+                previousStart = start.minusDays(days).format(DateTimeFormatter.ISO_LOCAL_DATE);
+                previousEnd = start.minusDays(1).format(DateTimeFormatter.ISO_LOCAL_DATE);
             }
             
-            // Validate metrics
-            List<String> validMetrics = metrics.stream()
-                .filter(m -> List.of("spent", "impressions", "clicks").contains(m))
-                .collect(java.util.stream.Collectors.toList());
+            List<ComparisonRow> result = aggregationService.getComparison(query, previousStart, previousEnd);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", result);
+            response.put("groupBy", query.getGroupBy());
+            response.put("metrics", query.getMetrics());
+            response.put("startDate", query.getStartDate());
+            response.put("endDate", query.getEndDate());
+            response.put("previousStartDate", previousStart);
+            response.put("previousEndDate", previousEnd);
+            response.put("isAdmin", query.isAdmin());
+            return ResponseEntity.ok(response);
             
-            if (validMetrics.isEmpty()) {
+        } catch (QueryRejectedException e) {
+            return rejected(e);
+        } catch (QueryCancelledException e) {
+            return cancelled(e);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Invalid request: " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/export/csv")
+    public ResponseEntity<?> exportAggregatedDataAsCsv(@RequestBody Map<String, Object> request, Authentication auth) {
+        try {
+            AggregationQuery query = parseQuery(request, auth);
+            if (query.getMetrics().isEmpty()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "At least one valid metric must be specified"));
             }
             
-            // Check if user is admin
-            boolean isAdmin = adminEmail.equals(userEmail);
-            
             // Get aggregated data
-            List<AggregatedMetrics> result = aggregationService.getAggregatedData(
-                userId, groupByDimensions, validMetrics, countryFilter, campaignFilter, platformFilter, browserFilter, isAdmin, sortBy, sortDirection, startDate, endDate
-            );
+            List<AggregatedMetrics> result = aggregationService.getAggregatedData(query, true);
             
             // Generate CSV content
             StringWriter csvWriter = new StringWriter();
             
             // Write CSV header
+            List<String> groupByDimensions = query.getGroupBy();
+            List<String> validMetrics = query.getMetrics();
             csvWriter.append(String.join(",", groupByDimensions));
             if (validMetrics.contains("spent")) csvWriter.append(",Total Spent");
             if (validMetrics.contains("impressions")) csvWriter.append(",Total Impressions");
             if (validMetrics.contains("clicks")) csvWriter.append(",Total Clicks");
+            for (String derived : query.getDerivedMetrics()) {
+                csvWriter.append(",").append(derived.toUpperCase());
+            }
             csvWriter.append(",Record Count\n");
             
             // Write CSV data
@@ -255,6 +380,10 @@ public class AggregationController {
                 if (validMetrics.contains("clicks")) {
                     row.add(metric.getTotalClicks().toString());
                 }
+                for (String derived : query.getDerivedMetrics()) {
+                    Double value = metric.getDerived().get(derived);
+                    row.add(value != null ? value.toString() : "");
+                }
                 row.add(metric.getRecordCount().toString());
                 
                 csvWriter.append(String.join(",", row)).append("\n");
@@ -268,6 +397,10 @@ public class AggregationController {
                 .header(HttpHeaders.CONTENT_TYPE, "text/csv")
                 .body(csvContent);
             
+        } catch (QueryRejectedException e) {
+            return rejected(e);
+        } catch (QueryCancelledException e) {
+            return cancelled(e);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", "Export failed: " + e.getMessage()));
         }
@@ -276,61 +409,26 @@ public class AggregationController {
     @PostMapping("/export/json")
     public ResponseEntity<?> exportAggregatedDataAsJson(@RequestBody Map<String, Object> request, Authentication auth) {
         try {
-            UserPrincipal user = (UserPrincipal) auth.getPrincipal();
-            UUID userId = user.getUserId();
-            String userEmail = user.getEmail();
-            
-            // Extract parameters from request
-            @SuppressWarnings("unchecked")
-            List<String> groupByDimensions = (List<String>) request.getOrDefault("groupBy", List.of());
-            @SuppressWarnings("unchecked")
-            List<String> metrics = (List<String>) request.getOrDefault("metrics", List.of("spent", "impressions", "clicks"));
-            String countryFilter = (String) request.getOrDefault("countryFilter", "All");
-            String campaignFilter = (String) request.getOrDefault("campaignFilter", "All");
-            String platformFilter = (String) request.getOrDefault("platformFilter", "All");
-            String browserFilter = (String) request.getOrDefault("browserFilter", "All");
-            String sortBy = (String) request.getOrDefault("sortBy", "");
-            String sortDirection = (String) request.getOrDefault("sortDirection", "asc");
-            String startDate = (String) request.getOrDefault("startDate", "");
-            String endDate = (String) request.getOrDefault("endDate", "");
-            
-            // Set default date range to last week if not provided
-            if (startDate.isEmpty() || endDate.isEmpty()) {
-                LocalDate today = LocalDate.now();
-                LocalDate lastWeek = today.minusWeeks(1);
-                startDate = lastWeek.format(DateTimeFormatter.ISO_LOCAL_DATE);
-                endDate = today.format(DateTimeFormatter.ISO_LOCAL_DATE);
-            }
-            
-            // Validate metrics
-            List<String> validMetrics = metrics.stream()
-                .filter(m -> List.of("spent", "impressions", "clicks").contains(m))
-                .collect(java.util.stream.Collectors.toList());
-            
-            if (validMetrics.isEmpty()) {
+            AggregationQuery query = parseQuery(request, auth);
+            if (query.getMetrics().isEmpty()) {
                 return ResponseEntity.badRequest().body(Map.of("error", "At least one valid metric must be specified"));
             }
             
-            // Check if user is admin
-            boolean isAdmin = adminEmail.equals(userEmail);
-            
             // Get aggregated data
-            List<AggregatedMetrics> result = aggregationService.getAggregatedData(
-                userId, groupByDimensions, validMetrics, countryFilter, campaignFilter, platformFilter, browserFilter, isAdmin, sortBy, sortDirection, startDate, endDate
-            );
+            List<AggregatedMetrics> result = aggregationService.getAggregatedData(query, true);
             
             // Create export metadata
             Map<String, Object> exportData = new HashMap<>();
             exportData.put("exportDate", LocalDate.now().format(DateTimeFormatter.ISO_LOCAL_DATE));
-            exportData.put("groupByDimensions", groupByDimensions);
-            exportData.put("metrics", validMetrics);
+            exportData.put("groupByDimensions", query.getGroupBy());
+            exportData.put("metrics", query.getMetrics());
             exportData.put("filters", Map.of(
-                "country", countryFilter,
-                "campaign", campaignFilter,
-                "platform", platformFilter,
-                "browser", browserFilter,
-                "startDate", startDate,
-                "endDate", endDate
+                "country", query.getCountryFilter(),
+                "campaign", query.getCampaignFilter(),
+                "platform", query.getPlatformFilter(),
+                "browser", query.getBrowserFilter(),
+                "startDate", query.getStartDate(),
+                "endDate", query.getEndDate()
             ));
             exportData.put("totalRecords", result.size());
             exportData.put("data", result);
@@ -342,8 +440,70 @@ public class AggregationController {
                 .header(HttpHeaders.CONTENT_TYPE, "application/json")
                 .body(exportData);
             
+        } catch (QueryRejectedException e) {
+            return rejected(e);
+        } catch (QueryCancelledException e) {
+            return cancelled(e);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", "Export failed: " + e.getMessage()));
         }
     }
+
+    private AggregationQuery parseQuery(Map<String, Object> request, Authentication auth) {
+        UserPrincipal user = (UserPrincipal) auth.getPrincipal();
+        
+        // Extract parameters from request
+        @SuppressWarnings("unchecked")
+        List<String> groupByDimensions = (List<String>) request.getOrDefault("groupBy", List.of());
+        @SuppressWarnings("unchecked")
+        List<String> metrics = (List<String>) request.getOrDefault("metrics", AggregationQuery.METRICS);
+        String countryFilter = (String) request.getOrDefault("countryFilter", "All");
+        String campaignFilter = (String) request.getOrDefault("campaignFilter", "All");
+        String platformFilter = (String) request.getOrDefault("platformFilter", "All");
+        String browserFilter = (String) request.getOrDefault("browserFilter", "All");
+        String sortBy = (String) request.getOrDefault("sortBy", "");
+        String sortDirection = (String) request.getOrDefault("sortDirection", "asc");
+        String startDate = (String) request.getOrDefault("startDate", "");
+        String endDate = (String) request.getOrDefault("endDate", "");
+        
+        // Set default date range to last week if not provided
+        if (startDate.isEmpty() || endDate.isEmpty()) {
+            LocalDate today = LocalDate.now();
+            LocalDate lastWeek = today.minusWeeks(1);
+            startDate = lastWeek.format(DateTimeFormatter.ISO_LOCAL_DATE);
+            endDate = today.format(DateTimeFormatter.ISO_LOCAL_DATE);
+        }
+        
+        // Dimensions are interpolated into SQL, so only known names are accepted
+        for (String dim : groupByDimensions) {
+            if (!AggregationQuery.DIMENSIONS.contains(dim)) {
+                throw new IllegalArgumentException("Unknown dimension: " + dim);
+            }
+        }
+        
+        // Validate metrics
+        List<String> validMetrics = metrics.stream()
+            .filter(m -> AggregationQuery.METRICS.contains(m) || AggregationQuery.DERIVED_METRICS.contains(m))
+            .collect(Collectors.toList());
+        
+        // Check if user is admin
+        boolean isAdmin = adminEmail.equals(user.getEmail());
+        
+        return new AggregationQuery(user.getUserId(), isAdmin, groupByDimensions, validMetrics,
+            countryFilter, campaignFilter, platformFilter, browserFilter, sortBy, sortDirection, startDate, endDate);
+    }
+
+    private ResponseEntity<?> rejected(QueryRejectedException e) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(e.getStatus());
+        if (e.getRetryAfterSeconds() > 0) {
+            builder.header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        }
+        return builder.body(Map.of("error", e.getMessage()));
+    }
+
+    private ResponseEntity<?> cancelled(QueryCancelledException e) {
+        // A superseded request has a newer one in flight; the client drops this response
+        HttpStatus status = e.getReason() == QueryTracker.Reason.DEADLINE ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.CONFLICT;
+        return ResponseEntity.status(status).body(Map.of("error", e.getMessage()));
+    }
 }
@@ -2,52 +2,81 @@ package com.example.demo.controller;
 
 import com.example.demo.model.Account;
 import com.example.demo.security.JwtUtil;
+import com.example.demo.security.LoginThrottle;
 import com.example.demo.security.UserPrincipal;
 import com.example.demo.service.AuthService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/auth")
 public class AuthController {
     private final AuthService authService;
     private final JwtUtil jwtUtil;
+    private final LoginThrottle loginThrottle;
     private final String adminEmail;
 
-    public AuthController(AuthService authService, JwtUtil jwtUtil, @Value("${app.admin.email}") String adminEmail) {
+    public AuthController(AuthService authService, JwtUtil jwtUtil, LoginThrottle loginThrottle, @Value("${app.admin.email}") String adminEmail) {
         this.authService = authService;
         this.jwtUtil = jwtUtil;
+        this.loginThrottle = loginThrottle;
         this.adminEmail = adminEmail;
     }
 
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody Map<String, String> body) {
+    public ResponseEntity<?> register(@RequestBody Map<String, String> body, HttpServletRequest request) {
         String email = body.getOrDefault("email", "").trim().toLowerCase();
         String password = body.getOrDefault("password", "");
         if (email.isEmpty() || password.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("error", "Email and password are required"));
         }
-        return authService.findByEmail(email)
-                .<ResponseEntity<?>>map(a -> ResponseEntity.status(409).body(Map.of("error", "Email already registered")))
-                .orElseGet(() -> {
-                    Account acc = authService.register(email, password);
-                    String token = jwtUtil.generateToken(acc.getEmail(), acc.getId());
-                    return ResponseEntity.ok(Map.of("token", token));
-                });
+        long waitNanos = loginThrottle.tryAcquire(request.getRemoteAddr(), email);
+        if (waitNanos > 0) {
+            return tooManyRequests(waitNanos);
+        }
+        try {
+            return authService.findByEmail(email)
+                    .<ResponseEntity<?>>map(a -> ResponseEntity.status(409).body(Map.of("error", "Email already registered")))
+                    .orElseGet(() -> {
+                        try {
+                            Account acc = authService.register(email, password);
+                            String token = jwtUtil.generateToken(acc.getEmail(), acc.getId());
+                            return ResponseEntity.ok(Map.of("token", token));
+                        } catch (DuplicateKeyException e) {
+                            // Lost a race with a concurrent signup for the same email
+                            return ResponseEntity.status(409).body(Map.of("error", "Email already registered"));
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            return tooManyRequests(TimeUnit.SECONDS.toNanos(1));
+        }
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody Map<String, String> body) {
+    public ResponseEntity<?> login(@RequestBody Map<String, String> body, HttpServletRequest request) {
         String email = body.getOrDefault("email", "").trim().toLowerCase();
         String password = body.getOrDefault("password", "");
-        return authService.findByEmail(email)
-                .filter(a -> authService.verifyPassword(password, a.getPasswordHash()))
-                .<ResponseEntity<?>>map(a -> ResponseEntity.ok(Map.of("token", jwtUtil.generateToken(a.getEmail(), a.getId()))))
-                .orElseGet(() -> ResponseEntity.status(401).body(Map.of("error", "Invalid credentials")));
+        long waitNanos = loginThrottle.tryAcquire(request.getRemoteAddr(), email);
+        if (waitNanos > 0) {
+            return tooManyRequests(waitNanos);
+        }
+        try {
+            return authService.findByEmail(email)
+                    .filter(a -> authService.verifyPassword(password, a.getPasswordHash()))
+                    .<ResponseEntity<?>>map(a -> ResponseEntity.ok(Map.of("token", jwtUtil.generateToken(a.getEmail(), a.getId()))))
+                    .orElseGet(() -> ResponseEntity.status(401).body(Map.of("error", "Invalid credentials")));
+        } catch (RejectedExecutionException e) {
+            return tooManyRequests(TimeUnit.SECONDS.toNanos(1));
+        }
     }
 
     @GetMapping("/me")
@@ -60,6 +89,11 @@ public class AuthController {
             "isAdmin", isAdmin
         ));
     }
-}
-
 
+    private ResponseEntity<?> tooManyRequests(long waitNanos) {
+        long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        return ResponseEntity.status(429)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(Map.of("error", "Too many attempts, please retry later"));
+    }
+}
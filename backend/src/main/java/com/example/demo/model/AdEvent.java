@@ -0,0 +1,78 @@
+package com.example.demo.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+/** A raw ad metrics row as written to {@code appdb.ads_metrics}. */
+public class AdEvent {
+    private LocalDateTime eventTime;
+    private UUID accountId;
+    private String campaign;
+    private String country;
+    private String platform;
+    private String browser;
+    private BigDecimal spent;
+    private long impressions;
+    private long clicks;
+
+    public AdEvent(LocalDateTime eventTime, UUID accountId, String campaign, String country, String platform,
+                   String browser, BigDecimal spent, long impressions, long clicks) {
+        this.eventTime = eventTime;
+        this.accountId = accountId;
+        this.campaign = campaign;
+        this.country = country;
+        this.platform = platform;
+        this.browser = browser;
+        this.spent = spent;
+        this.impressions = impressions;
+        this.clicks = clicks;
+    }
+
+    public LocalDateTime getEventTime() { return eventTime; }
+    public UUID getAccountId() { return accountId; }
+    public String getCampaign() { return campaign; }
+    public String getCountry() { return country; }
+    public String getPlatform() { return platform; }
+    public String getBrowser() { return browser; }
+    public BigDecimal getSpent() { return spent; }
+    public long getImpressions() { return impressions; }
+    public long getClicks() { return clicks; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AdEvent adEvent = (AdEvent) o;
+        return impressions == adEvent.impressions &&
+                clicks == adEvent.clicks &&
+                Objects.equals(eventTime, adEvent.eventTime) &&
+                Objects.equals(accountId, adEvent.accountId) &&
+                Objects.equals(campaign, adEvent.campaign) &&
+                Objects.equals(country, adEvent.country) &&
+                Objects.equals(platform, adEvent.platform) &&
+                Objects.equals(browser, adEvent.browser) &&
+                Objects.equals(spent, adEvent.spent);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(eventTime, accountId, campaign, country, platform, browser, spent, impressions, clicks);
+    }
+
+    @Override
+    public String toString() {
+        return "AdEvent{" +
+                "eventTime=" + eventTime +
+                ", accountId=" + accountId +
+                ", campaign='" + campaign + '\'' +
+                ", country='" + country + '\'' +
+                ", platform='" + platform + '\'' +
+                ", browser='" + browser + '\'' +
+                ", spent=" + spent +
+                ", impressions=" + impressions +
+                ", clicks=" + clicks +
+                '}';
+    }
+}
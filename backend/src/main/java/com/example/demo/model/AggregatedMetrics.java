@@ -1,5 +1,7 @@
 package com.example.demo.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.math.BigDecimal;
 import java.util.Map;
 import java.util.Objects;
@@ -10,14 +12,55 @@ public class AggregatedMetrics {
     private Long totalImpressions;
     private Long totalClicks;
     private Integer recordCount;
+    // Requested derived metrics (ctr, cpc, cpm); null where the denominator is zero
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, Double> derived;
+    // Set on rollup rows: number of grouped dimensions the row is broken down by (0 = grand total)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer groupingLevel;
+    // Set on top-N rows that sum up every group outside the top N of their partition
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean others;
+    // Set on sampled rows: half-width of the 95% confidence interval per metric (estimate +/- margin)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, Double> marginOfError;
 
     public AggregatedMetrics(Map<String, Object> dimensions, BigDecimal totalSpent, 
                            Long totalImpressions, Long totalClicks, Integer recordCount) {
+        this(dimensions, totalSpent, totalImpressions, totalClicks, recordCount, Map.of());
+    }
+
+    public AggregatedMetrics(Map<String, Object> dimensions, BigDecimal totalSpent,
+                           Long totalImpressions, Long totalClicks, Integer recordCount,
+                           Map<String, Double> derived) {
+        this(dimensions, totalSpent, totalImpressions, totalClicks, recordCount, derived, null);
+    }
+
+    public AggregatedMetrics(Map<String, Object> dimensions, BigDecimal totalSpent,
+                           Long totalImpressions, Long totalClicks, Integer recordCount,
+                           Map<String, Double> derived, Integer groupingLevel) {
+        this(dimensions, totalSpent, totalImpressions, totalClicks, recordCount, derived, groupingLevel, null);
+    }
+
+    public AggregatedMetrics(Map<String, Object> dimensions, BigDecimal totalSpent,
+                           Long totalImpressions, Long totalClicks, Integer recordCount,
+                           Map<String, Double> derived, Integer groupingLevel, Boolean others) {
+        this(dimensions, totalSpent, totalImpressions, totalClicks, recordCount, derived, groupingLevel, others, null);
+    }
+
+    public AggregatedMetrics(Map<String, Object> dimensions, BigDecimal totalSpent,
+                           Long totalImpressions, Long totalClicks, Integer recordCount,
+                           Map<String, Double> derived, Integer groupingLevel, Boolean others,
+                           Map<String, Double> marginOfError) {
         this.dimensions = dimensions;
         this.totalSpent = totalSpent;
         this.totalImpressions = totalImpressions;
         this.totalClicks = totalClicks;
         this.recordCount = recordCount;
+        this.derived = derived;
+        this.groupingLevel = groupingLevel;
+        this.others = others;
+        this.marginOfError = marginOfError;
     }
 
     public Map<String, Object> getDimensions() { return dimensions; }
@@ -25,6 +68,10 @@ public class AggregatedMetrics {
     public Long getTotalImpressions() { return totalImpressions; }
     public Long getTotalClicks() { return totalClicks; }
     public Integer getRecordCount() { return recordCount; }
+    public Map<String, Double> getDerived() { return derived; }
+    public Integer getGroupingLevel() { return groupingLevel; }
+    public Boolean getOthers() { return others; }
+    public Map<String, Double> getMarginOfError() { return marginOfError; }
 
     @Override
     public boolean equals(Object o) {
@@ -35,12 +82,16 @@ public class AggregatedMetrics {
                 Objects.equals(totalSpent, that.totalSpent) &&
                 Objects.equals(totalImpressions, that.totalImpressions) &&
                 Objects.equals(totalClicks, that.totalClicks) &&
-                Objects.equals(recordCount, that.recordCount);
+                Objects.equals(recordCount, that.recordCount) &&
+                Objects.equals(derived, that.derived) &&
+                Objects.equals(groupingLevel, that.groupingLevel) &&
+                Objects.equals(others, that.others) &&
+                Objects.equals(marginOfError, that.marginOfError);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(dimensions, totalSpent, totalImpressions, totalClicks, recordCount);
+        return Objects.hash(dimensions, totalSpent, totalImpressions, totalClicks, recordCount, derived, groupingLevel, others, marginOfError);
     }
 
     @Override
@@ -51,6 +102,10 @@ public class AggregatedMetrics {
                 ", totalImpressions=" + totalImpressions +
                 ", totalClicks=" + totalClicks +
                 ", recordCount=" + recordCount +
+                ", derived=" + derived +
+                ", groupingLevel=" + groupingLevel +
+                ", others=" + others +
+                ", marginOfError=" + marginOfError +
                 '}';
     }
 }
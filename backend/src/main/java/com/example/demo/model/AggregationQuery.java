@@ -0,0 +1,86 @@
+package com.example.demo.model;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Parameters of one aggregation request over {@code appdb.ads_metrics}, after
+ * defaults have been applied and dimensions/metrics validated.
+ */
+public class AggregationQuery {
+    public static final List<String> DIMENSIONS = List.of("day", "week", "month", "campaign", "country", "platform", "browser");
+    public static final List<String> METRICS = List.of("spent", "impressions", "clicks");
+    /** Ratios computed from the summed metrics; valid in {@code metrics} and {@code sortBy}. */
+    public static final List<String> DERIVED_METRICS = List.of("ctr", "cpc", "cpm");
+
+    private final UUID accountId;
+    private final boolean admin;
+    private final List<String> groupBy;
+    private final List<String> metrics;
+    private final String countryFilter;
+    private final String campaignFilter;
+    private final String platformFilter;
+    private final String browserFilter;
+    private final String sortBy;
+    private final String sortDirection;
+    private final String startDate;
+    private final String endDate;
+
+    public AggregationQuery(UUID accountId, boolean admin, List<String> groupBy, List<String> metrics,
+                            String countryFilter, String campaignFilter, String platformFilter, String browserFilter,
+                            String sortBy, String sortDirection, String startDate, String endDate) {
+        this.accountId = accountId;
+        this.admin = admin;
+        this.groupBy = List.copyOf(groupBy);
+        this.metrics = List.copyOf(metrics);
+        this.countryFilter = countryFilter;
+        this.campaignFilter = campaignFilter;
+        this.platformFilter = platformFilter;
+        this.browserFilter = browserFilter;
+        this.sortBy = sortBy;
+        this.sortDirection = sortDirection;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public UUID getAccountId() { return accountId; }
+    public boolean isAdmin() { return admin; }
+    public List<String> getGroupBy() { return groupBy; }
+    public List<String> getMetrics() { return metrics; }
+    public String getCountryFilter() { return countryFilter; }
+    public String getCampaignFilter() { return campaignFilter; }
+    public String getPlatformFilter() { return platformFilter; }
+    public String getBrowserFilter() { return browserFilter; }
+    public String getSortBy() { return sortBy; }
+    public String getSortDirection() { return sortDirection; }
+    public String getStartDate() { return startDate; }
+    public String getEndDate() { return endDate; }
+
+    /** Same filters, metrics and range grouped by other dimensions. */
+    public AggregationQuery withGroupBy(List<String> dimensions) {
+        return new AggregationQuery(accountId, admin, dimensions, metrics, countryFilter, campaignFilter,
+                platformFilter, browserFilter, sortBy, sortDirection, startDate, endDate);
+    }
+
+    /** Requested metrics that are plain sums (excludes derived ones). */
+    public List<String> getBaseMetrics() {
+        return metrics.stream().filter(METRICS::contains).collect(Collectors.toList());
+    }
+
+    /** Requested derived metrics. */
+    public List<String> getDerivedMetrics() {
+        return metrics.stream().filter(DERIVED_METRICS::contains).collect(Collectors.toList());
+    }
+
+    /** Same grouping, filters and metrics over another date range. */
+    public AggregationQuery withDateRange(String start, String end) {
+        return new AggregationQuery(accountId, admin, groupBy, metrics, countryFilter, campaignFilter,
+                platformFilter, browserFilter, sortBy, sortDirection, start, end);
+    }
+
+    /** True if the filter value restricts the query ("All" and empty mean no restriction). */
+    public static boolean isActiveFilter(String value) {
+        return value != null && !value.isEmpty() && !value.equals("All");
+    }
+}
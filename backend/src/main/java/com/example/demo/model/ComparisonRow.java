@@ -0,0 +1,39 @@
+package com.example.demo.model;
+
+import java.util.Map;
+import java.util.Objects;
+
+/** One group of a period-over-period comparison, keyed by metric name. */
+public class ComparisonRow {
+    private Map<String, Object> dimensions;
+    private Map<String, MetricDelta> metrics;
+
+    public ComparisonRow(Map<String, Object> dimensions, Map<String, MetricDelta> metrics) {
+        this.dimensions = dimensions;
+        this.metrics = metrics;
+    }
+
+    public Map<String, Object> getDimensions() { return dimensions; }
+    public Map<String, MetricDelta> getMetrics() { return metrics; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ComparisonRow that = (ComparisonRow) o;
+        return Objects.equals(dimensions, that.dimensions) && Objects.equals(metrics, that.metrics);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dimensions, metrics);
+    }
+
+    @Override
+    public String toString() {
+        return "ComparisonRow{" +
+                "dimensions=" + dimensions +
+                ", metrics=" + metrics +
+                '}';
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Objects;
+
+/** One distinct dimension value, with its row count when counts were requested. */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class FacetValue {
+    private String value;
+    private Long count;
+
+    public FacetValue(String value, Long count) {
+        this.value = value;
+        this.count = count;
+    }
+
+    public String getValue() { return value; }
+    public Long getCount() { return count; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FacetValue that = (FacetValue) o;
+        return Objects.equals(value, that.value) && Objects.equals(count, that.count);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(value, count);
+    }
+
+    @Override
+    public String toString() {
+        return "FacetValue{" +
+                "value='" + value + '\'' +
+                ", count=" + count +
+                '}';
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Objects;
+
+/**
+ * One metric in two periods. {@code deltaPercent} is relative to the previous
+ * period and absent when the previous value is zero.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MetricDelta {
+    private BigDecimal current;
+    private BigDecimal previous;
+    private BigDecimal delta;
+    private BigDecimal deltaPercent;
+
+    public MetricDelta(BigDecimal current, BigDecimal previous) {
+        this.current = current;
+        this.previous = previous;
+        this.delta = current.subtract(previous);
+        this.deltaPercent = previous.signum() == 0 ? null
+                : delta.multiply(BigDecimal.valueOf(100)).divide(previous.abs(), 2, RoundingMode.HALF_UP);
+    }
+
+    public BigDecimal getCurrent() { return current; }
+    public BigDecimal getPrevious() { return previous; }
+    public BigDecimal getDelta() { return delta; }
+    public BigDecimal getDeltaPercent() { return deltaPercent; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MetricDelta that = (MetricDelta) o;
+        return Objects.equals(current, that.current) &&
+                Objects.equals(previous, that.previous) &&
+                Objects.equals(delta, that.delta) &&
+                Objects.equals(deltaPercent, that.deltaPercent);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(current, previous, delta, deltaPercent);
+    }
+
+    @Override
+    public String toString() {
+        return "MetricDelta{" +
+                "current=" + current +
+                ", previous=" + previous +
+                ", delta=" + delta +
+                ", deltaPercent=" + deltaPercent +
+                '}';
+    }
+}
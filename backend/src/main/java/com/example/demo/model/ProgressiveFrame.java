@@ -0,0 +1,33 @@
+package com.example.demo.model;
+
+import java.util.List;
+
+/**
+ * One step of a progressive aggregation: the result merged over the monthly
+ * partitions completed so far. The last frame ({@code complete}) covers every
+ * partition and is the authoritative result.
+ */
+public class ProgressiveFrame {
+    private final List<AggregatedMetrics> data;
+    private final int completedPartitions;
+    private final int totalPartitions;
+    // Date ranges merged into this frame, e.g. "2024-03-01..2024-03-31"
+    private final List<String> coveredRanges;
+
+    public ProgressiveFrame(List<AggregatedMetrics> data, int completedPartitions, int totalPartitions,
+                            List<String> coveredRanges) {
+        this.data = data;
+        this.completedPartitions = completedPartitions;
+        this.totalPartitions = totalPartitions;
+        this.coveredRanges = coveredRanges;
+    }
+
+    public List<AggregatedMetrics> getData() { return data; }
+    public int getCompletedPartitions() { return completedPartitions; }
+    public int getTotalPartitions() { return totalPartitions; }
+    public List<String> getCoveredRanges() { return coveredRanges; }
+
+    public boolean isComplete() {
+        return completedPartitions == totalPartitions;
+    }
+}
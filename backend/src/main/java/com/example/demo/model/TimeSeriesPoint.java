@@ -0,0 +1,60 @@
+package com.example.demo.model;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/** Metric totals for one time bucket; gap-filled buckets carry zeros. */
+public class TimeSeriesPoint {
+    private String bucket;
+    private BigDecimal totalSpent;
+    private Long totalImpressions;
+    private Long totalClicks;
+
+    public TimeSeriesPoint(String bucket, BigDecimal totalSpent, Long totalImpressions, Long totalClicks) {
+        this.bucket = bucket;
+        this.totalSpent = totalSpent;
+        this.totalImpressions = totalImpressions;
+        this.totalClicks = totalClicks;
+    }
+
+    public String getBucket() { return bucket; }
+    public BigDecimal getTotalSpent() { return totalSpent; }
+    public Long getTotalImpressions() { return totalImpressions; }
+    public Long getTotalClicks() { return totalClicks; }
+
+    /** Value of a metric by its API name ("spent", "impressions", "clicks"). */
+    public double metricValue(String metric) {
+        switch (metric) {
+            case "spent": return totalSpent.doubleValue();
+            case "impressions": return totalImpressions;
+            case "clicks": return totalClicks;
+            default: throw new IllegalArgumentException("Unknown metric: " + metric);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TimeSeriesPoint that = (TimeSeriesPoint) o;
+        return Objects.equals(bucket, that.bucket) &&
+                Objects.equals(totalSpent, that.totalSpent) &&
+                Objects.equals(totalImpressions, that.totalImpressions) &&
+                Objects.equals(totalClicks, that.totalClicks);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bucket, totalSpent, totalImpressions, totalClicks);
+    }
+
+    @Override
+    public String toString() {
+        return "TimeSeriesPoint{" +
+                "bucket='" + bucket + '\'' +
+                ", totalSpent=" + totalSpent +
+                ", totalImpressions=" + totalImpressions +
+                ", totalClicks=" + totalClicks +
+                '}';
+    }
+}
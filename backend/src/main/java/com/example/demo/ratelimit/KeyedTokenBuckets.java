@@ -0,0 +1,145 @@
+package com.example.demo.ratelimit;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * One {@link TokenBucket} per key (IP address, email, account...), at most
+ * {@code maxKeys} of them to keep memory bounded under high-cardinality floods.
+ * A new key never waits for room: when the map is full, buckets that have
+ * fully refilled (indistinguishable from new ones) are dropped, and if none
+ * has, the ones closest to refilled are evicted, so a flood of new keys cannot
+ * lock out everyone else. Slots are reserved before a bucket is inserted, so
+ * concurrent inserts cannot overshoot the cap.
+ */
+public class KeyedTokenBuckets {
+    private final int capacity;
+    private final double refillPerSecond;
+    private final int maxKeys;
+    private final int evictionBatch;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    // Buckets plus reserved slots whose bucket is being inserted
+    private final AtomicInteger size = new AtomicInteger();
+    // Keys picked by the last sweep, evicted one per new key until the next sweep
+    private final Queue<String> evictionCandidates = new ConcurrentLinkedQueue<>();
+
+    public KeyedTokenBuckets(int capacity, double refillPerSecond, int maxKeys) {
+        this(capacity, refillPerSecond, maxKeys, System::nanoTime);
+    }
+
+    public KeyedTokenBuckets(int capacity, double refillPerSecond, int maxKeys, LongSupplier nanoClock) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys must be positive");
+        }
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.maxKeys = maxKeys;
+        // A sweep scans the whole map; picking a tenth of it per sweep keeps that amortized
+        this.evictionBatch = Math.max(1, maxKeys / 10);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return 0 if a token was taken for the key, otherwise the nanoseconds until one will be available
+     */
+    public long tryAcquire(String key) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            reserveSlot();
+            TokenBucket created = new TokenBucket(capacity, refillPerSecond, nanoClock);
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            } else {
+                // Another thread inserted the key first; its slot counts, ours is returned
+                size.decrementAndGet();
+            }
+        }
+        return bucket.tryAcquire();
+    }
+
+    private void reserveSlot() {
+        while (true) {
+            int current = size.get();
+            if (current < maxKeys) {
+                if (size.compareAndSet(current, current + 1)) {
+                    return;
+                }
+            } else if (!evictOne()) {
+                // Every slot is reserved by an insert still in progress
+                Thread.yield();
+            }
+        }
+    }
+
+    private boolean evictOne() {
+        while (true) {
+            String key = evictionCandidates.poll();
+            if (key == null) {
+                if (!sweep()) {
+                    return false;
+                }
+                if (evictionCandidates.isEmpty()) {
+                    // The sweep made room by dropping refilled buckets
+                    return true;
+                }
+                continue;
+            }
+            if (buckets.remove(key) != null) {
+                size.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drops refilled buckets; if there are none, queues the {@code evictionBatch}
+     * buckets that refill soonest as eviction candidates.
+     *
+     * @return false if there was nothing to drop or queue
+     */
+    private synchronized boolean sweep() {
+        if (!evictionCandidates.isEmpty()) {
+            // Another thread swept while this one waited
+            return true;
+        }
+        long now = nanoClock.getAsLong();
+        boolean dropped = false;
+        // Max-heap on refill time, holding the evictionBatch soonest-refilled buckets
+        PriorityQueue<Map.Entry<String, Long>> soonest = new PriorityQueue<>(
+            Comparator.comparingLong((Map.Entry<String, Long> e) -> e.getValue()).reversed());
+        for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+            long fullAt = entry.getValue().fullAt();
+            if (fullAt <= now) {
+                if (buckets.remove(entry.getKey(), entry.getValue())) {
+                    size.decrementAndGet();
+                    dropped = true;
+                }
+            } else if (!dropped) {
+                soonest.add(Map.entry(entry.getKey(), fullAt));
+                if (soonest.size() > evictionBatch) {
+                    soonest.poll();
+                }
+            }
+        }
+        if (dropped) {
+            return true;
+        }
+        for (Map.Entry<String, Long> entry : soonest) {
+            evictionCandidates.add(entry.getKey());
+        }
+        return !soonest.isEmpty();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.demo.ratelimit;
+
+import com.example.demo.security.UserPrincipal;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies {@link TenantRateLimiter} to the analytics endpoints and answers 429
+ * with {@code Retry-After} when the caller's account is over its limits.
+ */
+@Component
+public class TenantRateLimitInterceptor implements HandlerInterceptor {
+    private static final String ACQUIRED_ATTRIBUTE = TenantRateLimitInterceptor.class.getName() + ".accountId";
+
+    private final TenantRateLimiter tenantRateLimiter;
+    private final String adminEmail;
+
+    public TenantRateLimitInterceptor(TenantRateLimiter tenantRateLimiter, @Value("${app.admin.email}") String adminEmail) {
+        this.tenantRateLimiter = tenantRateLimiter;
+        this.adminEmail = adminEmail;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (request.getAttribute(ACQUIRED_ATTRIBUTE) != null) {
+            // Async re-dispatch of a request that was already admitted
+            return true;
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || !(auth.getPrincipal() instanceof UserPrincipal)) {
+            return true;
+        }
+        UserPrincipal user = (UserPrincipal) auth.getPrincipal();
+        UUID accountId = user.getUserId();
+        long waitNanos = tenantRateLimiter.tryAcquire(accountId, adminEmail.equals(user.getEmail()));
+        if (waitNanos > 0) {
+            long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+            response.setStatus(429);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"Too many requests for this account, please retry later\"}");
+            return false;
+        }
+        Slot slot = new Slot(accountId);
+        request.setAttribute(ACQUIRED_ATTRIBUTE, slot);
+        // A streamed or deferred response can end without a completing dispatch
+        // (timeout, client gone), so the async completion releases the slot too
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.registerDeferredResultInterceptor(ACQUIRED_ATTRIBUTE, new DeferredResultProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, DeferredResult<T> deferredResult) {
+                slot.release();
+            }
+        });
+        asyncManager.registerCallableInterceptor(ACQUIRED_ATTRIBUTE, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                slot.release();
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object slot = request.getAttribute(ACQUIRED_ATTRIBUTE);
+        if (slot != null) {
+            request.removeAttribute(ACQUIRED_ATTRIBUTE);
+            ((Slot) slot).release();
+        }
+    }
+
+    /** The request's in-flight slot; released once, by whichever completion path runs first. */
+    private final class Slot {
+        private final UUID accountId;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Slot(UUID accountId) {
+            this.accountId = accountId;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                tenantRateLimiter.release(accountId);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.demo.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Request-rate and in-flight limits per account for the analytics APIs, so a
+ * single tenant cannot hold every pooled ClickHouse connection. Admins get
+ * their own, usually larger, limits.
+ */
+@Component
+public class TenantRateLimiter {
+    private static final long CONCURRENCY_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final KeyedTokenBuckets userBuckets;
+    private final KeyedTokenBuckets adminBuckets;
+    private final int userMaxInFlight;
+    private final int adminMaxInFlight;
+    private final ConcurrentMap<UUID, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Counter rateRejections;
+    private final Counter concurrencyRejections;
+
+    public TenantRateLimiter(@Value("${app.tenant-limits.user.burst:20}") int userBurst,
+                             @Value("${app.tenant-limits.user.requests-per-second:5}") double userRate,
+                             @Value("${app.tenant-limits.user.max-in-flight:2}") int userMaxInFlight,
+                             @Value("${app.tenant-limits.admin.burst:40}") int adminBurst,
+                             @Value("${app.tenant-limits.admin.requests-per-second:10}") double adminRate,
+                             @Value("${app.tenant-limits.admin.max-in-flight:3}") int adminMaxInFlight,
+                             MeterRegistry meterRegistry) {
+        this.userBuckets = new KeyedTokenBuckets(userBurst, userRate, 100_000);
+        this.adminBuckets = new KeyedTokenBuckets(adminBurst, adminRate, 1_000);
+        this.userMaxInFlight = userMaxInFlight;
+        this.adminMaxInFlight = adminMaxInFlight;
+        this.rateRejections = meterRegistry.counter("tenant.limit.rejected", "reason", "rate");
+        this.concurrencyRejections = meterRegistry.counter("tenant.limit.rejected", "reason", "concurrency");
+        meterRegistry.gauge("tenant.limit.in_flight", inFlight,
+                m -> m.values().stream().mapToInt(AtomicInteger::get).sum());
+    }
+
+    /**
+     * Admits a request for the account. An admitted request must be paired with
+     * exactly one {@link #release(UUID)}.
+     *
+     * @return 0 if admitted, otherwise the nanoseconds the client should wait before retrying
+     */
+    public long tryAcquire(UUID accountId, boolean isAdmin) {
+        long wait = (isAdmin ? adminBuckets : userBuckets).tryAcquire(accountId.toString());
+        if (wait > 0) {
+            rateRejections.increment();
+            return wait;
+        }
+        if (!tryAcquireInFlight(accountId, isAdmin)) {
+            concurrencyRejections.increment();
+            return CONCURRENCY_RETRY_NANOS;
+        }
+        return 0;
+    }
+
+    /**
+     * Takes one more in-flight slot for work an admitted request fans out,
+     * without charging the request rate. A {@code true} result must be paired
+     * with exactly one {@link #release(UUID)}.
+     */
+    public boolean tryAcquireInFlight(UUID accountId, boolean isAdmin) {
+        int limit = isAdmin ? adminMaxInFlight : userMaxInFlight;
+        AtomicInteger counter = inFlight.computeIfAbsent(accountId, id -> new AtomicInteger());
+        while (true) {
+            int current = counter.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(UUID accountId) {
+        // Counters are never removed: one small object per account is cheaper than
+        // coordinating removal with concurrent acquires
+        AtomicInteger counter = inFlight.get(accountId);
+        if (counter != null) {
+            counter.decrementAndGet();
+        }
+    }
+
+    public int inFlight(UUID accountId) {
+        AtomicInteger counter = inFlight.get(accountId);
+        return counter == null ? 0 : counter.get();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demo.security;
+
+import com.example.demo.ratelimit.KeyedTokenBuckets;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-IP and per-email token buckets in front of the BCrypt work done by
+ * {@code /auth/login} and {@code /auth/register}.
+ */
+@Component
+public class LoginThrottle {
+    private final KeyedTokenBuckets ipBuckets;
+    private final KeyedTokenBuckets emailBuckets;
+    private final Counter ipRejections;
+    private final Counter emailRejections;
+
+    public LoginThrottle(@Value("${app.auth.throttle.ip.capacity:20}") int ipCapacity,
+                         @Value("${app.auth.throttle.ip.refill-per-minute:30}") int ipRefillPerMinute,
+                         @Value("${app.auth.throttle.email.capacity:5}") int emailCapacity,
+                         @Value("${app.auth.throttle.email.refill-per-minute:5}") int emailRefillPerMinute,
+                         @Value("${app.auth.throttle.max-keys:100000}") int maxKeys,
+                         MeterRegistry meterRegistry) {
+        this.ipBuckets = new KeyedTokenBuckets(ipCapacity, ipRefillPerMinute / 60.0, maxKeys);
+        this.emailBuckets = new KeyedTokenBuckets(emailCapacity, emailRefillPerMinute / 60.0, maxKeys);
+        this.ipRejections = meterRegistry.counter("auth.throttle.rejected", "key", "ip");
+        this.emailRejections = meterRegistry.counter("auth.throttle.rejected", "key", "email");
+    }
+
+    /**
+     * @return 0 if the attempt may proceed, otherwise the nanoseconds the client should wait
+     */
+    public long tryAcquire(String clientIp, String email) {
+        long ipWait = ipBuckets.tryAcquire(clientIp);
+        if (ipWait > 0) {
+            ipRejections.increment();
+            return ipWait;
+        }
+        long emailWait = emailBuckets.tryAcquire(email);
+        if (emailWait > 0) {
+            emailRejections.increment();
+        }
+        return emailWait;
+    }
+}
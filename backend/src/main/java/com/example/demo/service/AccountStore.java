@@ -0,0 +1,21 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Account;
+
+import java.util.Optional;
+
+/**
+ * Storage for login accounts. Implementations must make {@link #create(Account)}
+ * atomic with respect to the email so concurrent signups cannot both succeed.
+ */
+public interface AccountStore {
+
+    Optional<Account> findByEmail(String email);
+
+    /**
+     * Persists a new account.
+     *
+     * @throws org.springframework.dao.DuplicateKeyException if the email is already registered
+     */
+    Account create(Account account);
+}
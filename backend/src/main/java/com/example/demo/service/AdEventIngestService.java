@@ -0,0 +1,44 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Single write path into {@code appdb.ads_metrics}. Rows are inserted as one batch
+ * and every {@link IngestListener} is told about them once the insert succeeded.
+ */
+@Service
+public class AdEventIngestService {
+    private final JdbcTemplate jdbcTemplate;
+    private final List<IngestListener> listeners;
+
+    public AdEventIngestService(JdbcTemplate jdbcTemplate, List<IngestListener> listeners) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.listeners = listeners;
+    }
+
+    public void ingest(List<AdEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        QuerySettings.run(QuerySettings.INGEST, () -> jdbcTemplate.batchUpdate(
+            "INSERT INTO appdb.ads_metrics (event_time, account_id, campaign, country, platform, browser, spent, impressions, clicks) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            events.stream().map(e -> new Object[] {
+                e.getEventTime(), e.getAccountId(), e.getCampaign(), e.getCountry(),
+                e.getPlatform(), e.getBrowser(), e.getSpent(), e.getImpressions(), e.getClicks()
+            }).collect(Collectors.toList())
+        ));
+        for (IngestListener listener : listeners) {
+            try {
+                listener.onIngested(events);
+            } catch (RuntimeException e) {
+                // The rows are stored; a failing listener must not fail the ingest
+                System.err.println("Ingest listener " + listener.getClass().getSimpleName() + " failed: " + e.getMessage());
+            }
+        }
+    }
+}
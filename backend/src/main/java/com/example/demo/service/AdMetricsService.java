@@ -1,20 +1,35 @@
 package com.example.demo.service;
 
 import com.example.demo.model.AdMetrics;
+import com.example.demo.model.FacetValue;
 import com.example.demo.model.PaginatedResponse;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 @Service
 public class AdMetricsService {
+    /** Dimensions offered as dashboard filters. */
+    public static final List<String> FACET_DIMENSIONS = List.of("country", "campaign", "platform", "browser");
+
     private final JdbcTemplate jdbcTemplate;
+    private final FacetDictionaryService facetDictionary;
+    private final HotWindowStore hotWindow;
 
-    public AdMetricsService(JdbcTemplate jdbcTemplate) {
+    public AdMetricsService(JdbcTemplate jdbcTemplate, FacetDictionaryService facetDictionary, HotWindowStore hotWindow) {
         this.jdbcTemplate = jdbcTemplate;
+        this.facetDictionary = facetDictionary;
+        this.hotWindow = hotWindow;
     }
 
     public List<AdMetrics> getAllMetrics() {
@@ -145,63 +160,125 @@ public class AdMetricsService {
         return new PaginatedResponse<>(data, page, totalPages, totalCount, size);
     }
 
+    // Filter values come from the in-memory dictionary; no ClickHouse query
+
     public List<String> getAvailableCountries() {
-        return jdbcTemplate.queryForList(
-            "SELECT DISTINCT country FROM appdb.ads_metrics ORDER BY country",
-            String.class
-        );
+        return facetDictionary.values(null, "country");
     }
 
     public List<String> getAvailableCountriesByAccountId(UUID accountId) {
-        return jdbcTemplate.queryForList(
-            "SELECT DISTINCT country FROM appdb.ads_metrics WHERE account_id = ? ORDER BY country",
-            String.class,
-            accountId
-        );
+        return facetDictionary.values(accountId, "country");
     }
 
     public List<String> getAvailableCampaigns() {
-        return jdbcTemplate.queryForList(
-            "SELECT DISTINCT campaign FROM appdb.ads_metrics ORDER BY campaign",
-            String.class
-        );
+        return facetDictionary.values(null, "campaign");
     }
 
     public List<String> getAvailableCampaignsByAccountId(UUID accountId) {
-        return jdbcTemplate.queryForList(
-            "SELECT DISTINCT campaign FROM appdb.ads_metrics WHERE account_id = ? ORDER BY campaign",
-            String.class,
-            accountId
-        );
+        return facetDictionary.values(accountId, "campaign");
     }
 
     public List<String> getAvailablePlatforms() {
-        return jdbcTemplate.queryForList(
-            "SELECT DISTINCT platform FROM appdb.ads_metrics ORDER BY platform",
-            String.class
-        );
+        return facetDictionary.values(null, "platform");
     }
 
     public List<String> getAvailablePlatformsByAccountId(UUID accountId) {
-        return jdbcTemplate.queryForList(
-            "SELECT DISTINCT platform FROM appdb.ads_metrics WHERE account_id = ? ORDER BY platform",
-            String.class,
-            accountId
-        );
+        return facetDictionary.values(accountId, "platform");
     }
 
     public List<String> getAvailableBrowsers() {
-        return jdbcTemplate.queryForList(
-            "SELECT DISTINCT browser FROM appdb.ads_metrics ORDER BY browser",
-            String.class
-        );
+        return facetDictionary.values(null, "browser");
     }
 
     public List<String> getAvailableBrowsersByAccountId(UUID accountId) {
-        return jdbcTemplate.queryForList(
-            "SELECT DISTINCT browser FROM appdb.ads_metrics WHERE account_id = ? ORDER BY browser",
-            String.class,
-            accountId
-        );
+        return facetDictionary.values(accountId, "browser");
+    }
+
+    /**
+     * Distinct values of every filter dimension, sorted. Unbounded requests without
+     * counts are answered from the dictionary; the rest take a single scan.
+     *
+     * @param accountId tenant to scope to, or null for all accounts
+     * @param startDate inclusive lower bound on day, or null
+     * @param endDate inclusive upper bound on day, or null
+     * @param withCounts also return the number of rows per value
+     */
+    public Map<String, List<FacetValue>> getFacets(UUID accountId, String startDate, String endDate, boolean withCounts) {
+        boolean dateBounded = (startDate != null && !startDate.isEmpty()) || (endDate != null && !endDate.isEmpty());
+        if (!withCounts && !dateBounded) {
+            Map<String, List<FacetValue>> facets = new LinkedHashMap<>();
+            for (String dim : FACET_DIMENSIONS) {
+                List<FacetValue> facet = new ArrayList<>();
+                for (String value : facetDictionary.values(accountId, dim)) {
+                    facet.add(new FacetValue(value, null));
+                }
+                facets.put(dim, facet);
+            }
+            return facets;
+        }
+        if (startDate != null && !startDate.isEmpty()) {
+            // Recent ranges are counted from the hot window's bitmap indexes when it is enabled
+            Optional<Map<String, List<FacetValue>>> hot = hotWindow.facets(accountId, startDate, endDate, withCounts);
+            if (hot.isPresent()) {
+                return hot.get();
+            }
+        }
+
+        List<String> whereConditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        if (accountId != null) {
+            whereConditions.add("account_id = ?");
+            params.add(accountId);
+        }
+        if (startDate != null && !startDate.isEmpty()) {
+            whereConditions.add("day >= ?");
+            params.add(startDate);
+        }
+        if (endDate != null && !endDate.isEmpty()) {
+            whereConditions.add("day <= ?");
+            params.add(endDate);
+        }
+        String whereClause = whereConditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", whereConditions);
+
+        List<String> selects = new ArrayList<>();
+        String sql;
+        if (withCounts) {
+            // sumMap returns (sorted keys, summed values); unpack both arrays per dimension
+            List<String> maps = new ArrayList<>();
+            for (String dim : FACET_DIMENSIONS) {
+                maps.add("sumMap([" + dim + "], [toUInt64(1)]) AS " + dim + "_map");
+                selects.add(dim + "_map.1 AS " + dim + "_values, " + dim + "_map.2 AS " + dim + "_counts");
+            }
+            sql = "SELECT " + String.join(", ", selects) +
+                " FROM (SELECT " + String.join(", ", maps) + " FROM appdb.ads_metrics" + whereClause + ")";
+        } else {
+            for (String dim : FACET_DIMENSIONS) {
+                selects.add("arraySort(groupUniqArray(" + dim + ")) AS " + dim + "_values");
+            }
+            sql = "SELECT " + String.join(", ", selects) + " FROM appdb.ads_metrics" + whereClause;
+        }
+
+        Map<String, List<FacetValue>> facets = jdbcTemplate.queryForObject(sql,
+            (rs, rowNum) -> mapFacets(rs, withCounts), params.toArray());
+        return facets != null ? facets : new LinkedHashMap<>();
+    }
+
+    private Map<String, List<FacetValue>> mapFacets(ResultSet rs, boolean withCounts) throws SQLException {
+        Map<String, List<FacetValue>> facets = new LinkedHashMap<>();
+        for (String dim : FACET_DIMENSIONS) {
+            Object[] values = toArray(rs.getArray(dim + "_values"));
+            Object[] counts = withCounts ? toArray(rs.getArray(dim + "_counts")) : null;
+            List<FacetValue> facet = new ArrayList<>(values.length);
+            for (int i = 0; i < values.length; i++) {
+                Long count = counts != null ? ((Number) counts[i]).longValue() : null;
+                facet.add(new FacetValue(String.valueOf(values[i]), count));
+            }
+            facets.put(dim, facet);
+        }
+        return facets;
+    }
+
+    private static Object[] toArray(Array array) throws SQLException {
+        return array == null ? new Object[0] : (Object[]) array.getArray();
     }
 }
@@ -0,0 +1,106 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps aggregation result rows to {@link AggregatedMetrics} with typed getters
+ * by column position. The ClickHouse driver already holds each row decoded from
+ * RowBinary; {@code getObject} and lookups by label would add a JDBC type
+ * mapping, boxing and a name search per cell. Positions are resolved from the
+ * first row, so an instance serves a single result set.
+ * <p>
+ * Time dimensions (day, week, month) are Date columns and are read as
+ * {@link LocalDate}, the type the segment cache, cube and hot window use for
+ * them, so rows from different paths merge and sort together. The other
+ * dimensions are read as strings.
+ */
+class AggregatedMetricsDecoder implements RowMapper<AggregatedMetrics> {
+    private static final List<String> TIME_DIMENSIONS = List.of("day", "week", "month");
+
+    private final List<String> groupBy;
+    private final List<String> derivedMetrics;
+    private final boolean withSpent;
+    private final boolean withImpressions;
+    private final boolean withClicks;
+    private final boolean rollup;
+
+    private int[] dimensionColumns;
+    private boolean[] timeDimensions;
+    private int[] derivedColumns;
+    private int spentColumn;
+    private int impressionsColumn;
+    private int clicksColumn;
+    private int countColumn;
+    private int groupingMaskColumn;
+
+    AggregatedMetricsDecoder(AggregationQuery query, boolean rollup) {
+        this.groupBy = query.getGroupBy();
+        this.derivedMetrics = query.getDerivedMetrics();
+        this.withSpent = query.getMetrics().contains("spent");
+        this.withImpressions = query.getMetrics().contains("impressions");
+        this.withClicks = query.getMetrics().contains("clicks");
+        this.rollup = rollup && !groupBy.isEmpty();
+    }
+
+    @Override
+    public AggregatedMetrics mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (dimensionColumns == null) {
+            resolve(rs);
+        }
+        Map<String, Object> dimensions = new HashMap<>();
+        for (int i = 0; i < dimensionColumns.length; i++) {
+            dimensions.put(groupBy.get(i), timeDimensions[i]
+                ? rs.getObject(dimensionColumns[i], LocalDate.class) : rs.getString(dimensionColumns[i]));
+        }
+
+        BigDecimal totalSpent = withSpent ? rs.getBigDecimal(spentColumn) : BigDecimal.ZERO;
+        long totalImpressions = withImpressions ? rs.getLong(impressionsColumn) : 0L;
+        long totalClicks = withClicks ? rs.getLong(clicksColumn) : 0L;
+        long recordCount = rs.getLong(countColumn);
+
+        Map<String, Double> derived = new LinkedHashMap<>();
+        for (int i = 0; i < derivedColumns.length; i++) {
+            double value = rs.getDouble(derivedColumns[i]);
+            // NULL when the denominator is zero
+            derived.put(derivedMetrics.get(i), rs.wasNull() ? null : value);
+        }
+
+        Integer groupingLevel = null;
+        if (rollup) {
+            groupingLevel = groupBy.size() - Long.bitCount(rs.getLong(groupingMaskColumn));
+        }
+
+        return new AggregatedMetrics(dimensions, totalSpent, totalImpressions, totalClicks, (int) recordCount,
+            derived, groupingLevel);
+    }
+
+    private void resolve(ResultSet rs) throws SQLException {
+        int[] dimensions = new int[groupBy.size()];
+        timeDimensions = new boolean[groupBy.size()];
+        for (int i = 0; i < dimensions.length; i++) {
+            dimensions[i] = rs.findColumn(groupBy.get(i));
+            timeDimensions[i] = TIME_DIMENSIONS.contains(groupBy.get(i));
+        }
+        derivedColumns = new int[derivedMetrics.size()];
+        for (int i = 0; i < derivedColumns.length; i++) {
+            derivedColumns[i] = rs.findColumn(derivedMetrics.get(i));
+        }
+        spentColumn = withSpent ? rs.findColumn("total_spent") : 0;
+        impressionsColumn = withImpressions ? rs.findColumn("total_impressions") : 0;
+        clicksColumn = withClicks ? rs.findColumn("total_clicks") : 0;
+        countColumn = rs.findColumn("record_count");
+        groupingMaskColumn = rollup ? rs.findColumn("grouping_mask") : 0;
+        dimensionColumns = dimensions;
+    }
+}
@@ -0,0 +1,445 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Pre-aggregated cubes over the last {@code window-days}, one per combination
+ * of the non-time dimensions (campaign, country, platform, browser) that
+ * requests actually need. Combinations are tracked as 4-bit masks of grouped
+ * plus filtered dimensions; a background task builds a cube for each mask used
+ * at least {@code min-uses} times (usage decays by half per refresh) and drops
+ * cubes that fell out of use.
+ * <p>
+ * Cells are per account and day, so any date range inside the window and any
+ * day/week/month grouping can be rolled up from them; a cube also answers every
+ * query whose mask is a subset of its own. Ingested rows are added to the built
+ * cubes as they arrive; rows ingested while a cube is being built are kept and
+ * replayed into it before it is published. A cube that grows past {@code max-cells},
+ * whether while building or from ingest, is dropped and its mask is not
+ * retried for {@link #OVERSIZED_RETRY_REFRESHES} refreshes.
+ */
+@Component
+public class AggregationCube implements IngestListener {
+    // Bit per non-time dimension, in this order
+    private static final List<String> CUBE_DIMENSIONS = List.of("campaign", "country", "platform", "browser");
+    // The window slides and data changes, so an oversized mask gets another chance after this many refreshes
+    static final int OVERSIZED_RETRY_REFRESHES = 12;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int windowDays;
+    private final int minUses;
+    private final int maxCubes;
+    private final int maxCells;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService builder;
+    private final AtomicLongArray uses = new AtomicLongArray(1 << CUBE_DIMENSIONS.size());
+    private final ConcurrentMap<Integer, Cube> cubes = new ConcurrentHashMap<>();
+    // Masks whose cube exceeded max-cells, with the refreshes left before they are retried
+    private final ConcurrentMap<Integer, Integer> oversized = new ConcurrentHashMap<>();
+    private final Object ingestLock = new Object();
+    // Rows ingested since the running build's scan was issued, replayed into its cube;
+    // null while no build runs, and once more than max-cells rows piled up
+    private List<AdEvent> ingestedDuringBuild;
+    private boolean buildOverrun;
+
+    @Autowired
+    public AggregationCube(JdbcTemplate jdbcTemplate,
+                           @Value("${app.cube.enabled:true}") boolean enabled,
+                           @Value("${app.cube.window-days:30}") int windowDays,
+                           @Value("${app.cube.min-uses:5}") int minUses,
+                           @Value("${app.cube.max-cubes:4}") int maxCubes,
+                           @Value("${app.cube.max-cells:500000}") int maxCells,
+                           @Value("${app.cube.refresh-seconds:300}") long refreshSeconds,
+                           MeterRegistry meterRegistry) {
+        this(jdbcTemplate, enabled, windowDays, minUses, maxCubes, maxCells, Clock.systemUTC(), meterRegistry);
+        if (enabled) {
+            builder.scheduleWithFixedDelay(this::refresh, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    AggregationCube(JdbcTemplate jdbcTemplate, boolean enabled, int windowDays, int minUses, int maxCubes, int maxCells,
+                    Clock clock, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.windowDays = windowDays;
+        this.minUses = minUses;
+        this.maxCubes = maxCubes;
+        this.maxCells = maxCells;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.builder = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cube-builder");
+            t.setDaemon(true);
+            return t;
+        });
+        meterRegistry.gaugeMapSize("query.cube.cubes", Collections.emptyList(), cubes);
+    }
+
+    /**
+     * Counts the dimension combination the query needs. Returns the mask, or -1
+     * if the query has nothing a cube could serve (unbounded range).
+     */
+    public int recordUse(AggregationQuery query) {
+        int mask = mask(query);
+        if (enabled && mask >= 0) {
+            uses.incrementAndGet(mask);
+        }
+        return mask;
+    }
+
+    /**
+     * Answers the query from the smallest built cube covering its dimensions.
+     *
+     * @return empty if no cube covers it or the range is outside the window
+     */
+    public Optional<List<AggregatedMetrics>> aggregate(AggregationQuery query) {
+        int mask = mask(query);
+        if (!enabled || mask < 0) {
+            return Optional.empty();
+        }
+        LocalDate start = LocalDate.parse(query.getStartDate());
+        LocalDate end = LocalDate.parse(query.getEndDate());
+        Cube cube = null;
+        for (Cube candidate : cubes.values()) {
+            if ((candidate.mask & mask) == mask && !start.isBefore(candidate.from)
+                && (cube == null || Integer.bitCount(candidate.mask) < Integer.bitCount(cube.mask))) {
+                cube = candidate;
+            }
+        }
+        if (cube == null) {
+            meterRegistry.counter("query.cube.requests", "result", "miss").increment();
+            return Optional.empty();
+        }
+        meterRegistry.counter("query.cube.requests", "result", "hit").increment();
+        return Optional.of(DaySegmentCache.toRows(query, cube.rollUp(query, start, end)));
+    }
+
+    @Override
+    public void onIngested(List<AdEvent> events) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (ingestLock) {
+            if (ingestedDuringBuild != null) {
+                if (ingestedDuringBuild.size() + events.size() > maxCells) {
+                    // Too much to hold; the build is retried on the next refresh
+                    ingestedDuringBuild = null;
+                    buildOverrun = true;
+                } else {
+                    ingestedDuringBuild.addAll(events);
+                }
+            }
+            for (Cube cube : cubes.values()) {
+                for (AdEvent event : events) {
+                    if (!cube.add(event)) {
+                        cubes.remove(cube.mask, cube);
+                        oversized.put(cube.mask, OVERSIZED_RETRY_REFRESHES);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Builds cubes for masks that became popular, drops unused ones and slides the window. */
+    void refresh() {
+        try {
+            oversized.replaceAll((mask, left) -> left - 1);
+            oversized.values().removeIf(left -> left <= 0);
+            // Counts keep moving while requests arrive; rank a stable copy
+            long[] counts = new long[uses.length()];
+            List<Integer> wanted = new ArrayList<>();
+            for (int mask = 0; mask < counts.length; mask++) {
+                counts[mask] = uses.get(mask);
+                if (counts[mask] >= minUses && !oversized.containsKey(mask)) {
+                    wanted.add(mask);
+                }
+            }
+            wanted.sort(Comparator.comparingLong((Integer mask) -> counts[mask]).reversed());
+            wanted = wanted.subList(0, Math.min(maxCubes, wanted.size()));
+
+            cubes.keySet().retainAll(wanted);
+            LocalDate from = LocalDate.now(clock).minusDays(windowDays - 1);
+            synchronized (ingestLock) {
+                for (Cube cube : cubes.values()) {
+                    cube.dropBefore(from);
+                }
+            }
+            for (int mask : wanted) {
+                if (!cubes.containsKey(mask)) {
+                    build(mask, from);
+                }
+            }
+            // Halve usage so the set of cubes follows recent traffic
+            for (int mask = 0; mask < uses.length(); mask++) {
+                uses.set(mask, uses.get(mask) / 2);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Cube refresh failed: " + e.getMessage());
+        }
+    }
+
+    void build(int mask, LocalDate from) {
+        List<String> dims = dimensions(mask);
+        String dimensionSelect = dims.isEmpty() ? "" : ", " + String.join(", ", dims);
+        Cube cube = new Cube(mask, from, maxCells);
+        // The watermark: rows notified before this point were inserted before the scan
+        // starts and are in it; rows notified after it are replayed. Only an insert that
+        // commits before ClickHouse picks the scan's parts but is notified after this
+        // point is counted twice, a window of milliseconds.
+        synchronized (ingestLock) {
+            ingestedDuringBuild = new ArrayList<>();
+            buildOverrun = false;
+        }
+        try {
+            // A background scan over the whole window: run it like an export
+            QuerySettings.run(QuerySettings.EXPORT, () -> jdbcTemplate.query(
+                "SELECT account_id, toInt32(day) AS day_number" + dimensionSelect + ", sum(spent) AS total_spent, " +
+                "sum(impressions) AS total_impressions, sum(clicks) AS total_clicks, count(*) AS record_count " +
+                "FROM appdb.ads_metrics WHERE day >= ? GROUP BY account_id, day" + dimensionSelect,
+                rs -> {
+                    List<String> key = new ArrayList<>(dims.size());
+                    for (String dim : dims) {
+                        key.add(rs.getString(dim));
+                    }
+                    boolean fits = cube.add(UUID.fromString(rs.getString("account_id")), rs.getInt("day_number"), key,
+                        new DaySegmentCache.Partial(rs.getBigDecimal("total_spent"), rs.getLong("total_impressions"),
+                            rs.getLong("total_clicks"), rs.getLong("record_count")));
+                    if (!fits) {
+                        throw new IllegalStateException("Cube over " + maxCells + " cells");
+                    }
+                }, from.toString()));
+        } catch (IllegalStateException e) {
+            stopCapturing();
+            oversized.put(mask, OVERSIZED_RETRY_REFRESHES);
+            return;
+        } catch (DataAccessException e) {
+            stopCapturing();
+            System.err.println("Cube build failed for " + dims + ": " + e.getMessage());
+            return;
+        }
+        synchronized (ingestLock) {
+            List<AdEvent> replay = ingestedDuringBuild;
+            ingestedDuringBuild = null;
+            if (buildOverrun) {
+                return;
+            }
+            // Under the lock, so no ingest lands between the replay and the publish
+            for (AdEvent event : replay) {
+                if (!cube.add(event)) {
+                    oversized.put(mask, OVERSIZED_RETRY_REFRESHES);
+                    return;
+                }
+            }
+            cubes.put(mask, cube);
+        }
+    }
+
+    private void stopCapturing() {
+        synchronized (ingestLock) {
+            ingestedDuringBuild = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    /**
+     * Bitmask of the non-time dimensions the query groups or filters by, or -1
+     * if it has no bounded date range.
+     */
+    static int mask(AggregationQuery query) {
+        try {
+            LocalDate.parse(query.getStartDate());
+            LocalDate.parse(query.getEndDate());
+        } catch (DateTimeParseException | NullPointerException e) {
+            return -1;
+        }
+        int mask = 0;
+        for (String dim : query.getGroupBy()) {
+            int bit = CUBE_DIMENSIONS.indexOf(dim);
+            if (bit >= 0) {
+                mask |= 1 << bit;
+            }
+        }
+        List<String> filters = List.of(query.getCampaignFilter() == null ? "" : query.getCampaignFilter(),
+            query.getCountryFilter() == null ? "" : query.getCountryFilter(),
+            query.getPlatformFilter() == null ? "" : query.getPlatformFilter(),
+            query.getBrowserFilter() == null ? "" : query.getBrowserFilter());
+        for (int bit = 0; bit < filters.size(); bit++) {
+            if (AggregationQuery.isActiveFilter(filters.get(bit))) {
+                mask |= 1 << bit;
+            }
+        }
+        return mask;
+    }
+
+    private static List<String> dimensions(int mask) {
+        List<String> dims = new ArrayList<>();
+        for (int bit = 0; bit < CUBE_DIMENSIONS.size(); bit++) {
+            if ((mask & (1 << bit)) != 0) {
+                dims.add(CUBE_DIMENSIONS.get(bit));
+            }
+        }
+        return dims;
+    }
+
+    /**
+     * Cells keyed by account, day (epoch day) and the mask's dimension values.
+     * Written by one thread at a time (the build, then under the ingest lock).
+     */
+    private static final class Cube {
+        final int mask;
+        final List<String> dims;
+        final int maxCells;
+        // First day held; advances as the window slides
+        volatile LocalDate from;
+        final ConcurrentMap<UUID, ConcurrentNavigableMap<Integer, ConcurrentMap<List<String>, DaySegmentCache.Partial>>> byAccount =
+            new ConcurrentHashMap<>();
+        int cells;
+
+        Cube(int mask, LocalDate from, int maxCells) {
+            this.mask = mask;
+            this.dims = dimensions(mask);
+            this.from = from;
+            this.maxCells = maxCells;
+        }
+
+        /** @return false once the cube holds more than {@code maxCells} cells */
+        boolean add(UUID accountId, int day, List<String> key, DaySegmentCache.Partial partial) {
+            ConcurrentMap<List<String>, DaySegmentCache.Partial> cellsOfDay = byAccount
+                .computeIfAbsent(accountId, id -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(day, d -> new ConcurrentHashMap<>());
+            // Cells are replaced, never mutated, so readers see whole values
+            DaySegmentCache.Partial previous = cellsOfDay.get(key);
+            cellsOfDay.merge(key, partial, (a, b) -> {
+                DaySegmentCache.Partial sum = new DaySegmentCache.Partial();
+                sum.add(a);
+                sum.add(b);
+                return sum;
+            });
+            if (previous == null) {
+                cells++;
+            }
+            return cells <= maxCells;
+        }
+
+        boolean add(AdEvent event) {
+            if (event.getEventTime().toLocalDate().isBefore(from)) {
+                return true;
+            }
+            List<String> key = new ArrayList<>(dims.size());
+            for (String dim : dims) {
+                switch (dim) {
+                    case "campaign": key.add(event.getCampaign()); break;
+                    case "country": key.add(event.getCountry()); break;
+                    case "platform": key.add(event.getPlatform()); break;
+                    default: key.add(event.getBrowser()); break;
+                }
+            }
+            return add(event.getAccountId(), (int) event.getEventTime().toLocalDate().toEpochDay(), key,
+                new DaySegmentCache.Partial(event.getSpent(), event.getImpressions(), event.getClicks(), 1));
+        }
+
+        void dropBefore(LocalDate day) {
+            from = day;
+            for (ConcurrentNavigableMap<Integer, ConcurrentMap<List<String>, DaySegmentCache.Partial>> days : byAccount.values()) {
+                Map<Integer, ConcurrentMap<List<String>, DaySegmentCache.Partial>> dropped = days.headMap((int) day.toEpochDay());
+                for (Map<List<String>, DaySegmentCache.Partial> cellsOfDay : dropped.values()) {
+                    cells -= cellsOfDay.size();
+                }
+                dropped.clear();
+            }
+        }
+
+        /** Sums the cells in range that pass the filters, grouped by the query's dimensions. */
+        Map<List<Object>, DaySegmentCache.Partial> rollUp(AggregationQuery query, LocalDate start, LocalDate end) {
+            // Filter value per cube dimension position, null where unfiltered
+            String[] filters = new String[dims.size()];
+            for (int i = 0; i < dims.size(); i++) {
+                String value = filterValue(query, dims.get(i));
+                filters[i] = AggregationQuery.isActiveFilter(value) ? value : null;
+            }
+            List<String> groupBy = query.getGroupBy();
+            int[] positions = new int[groupBy.size()];
+            for (int g = 0; g < groupBy.size(); g++) {
+                positions[g] = dims.indexOf(groupBy.get(g));
+            }
+
+            Collection<ConcurrentNavigableMap<Integer, ConcurrentMap<List<String>, DaySegmentCache.Partial>>> accounts;
+            if (query.isAdmin()) {
+                accounts = byAccount.values();
+            } else {
+                ConcurrentNavigableMap<Integer, ConcurrentMap<List<String>, DaySegmentCache.Partial>> days =
+                    byAccount.get(query.getAccountId());
+                accounts = days == null ? List.of() : List.of(days);
+            }
+
+            Map<List<Object>, DaySegmentCache.Partial> groups = new LinkedHashMap<>();
+            for (ConcurrentNavigableMap<Integer, ConcurrentMap<List<String>, DaySegmentCache.Partial>> days : accounts) {
+                for (Map.Entry<Integer, ConcurrentMap<List<String>, DaySegmentCache.Partial>> dayCells
+                        : days.subMap((int) start.toEpochDay(), true, (int) end.toEpochDay(), true).entrySet()) {
+                    LocalDate day = LocalDate.ofEpochDay(dayCells.getKey());
+                    cells:
+                    for (Map.Entry<List<String>, DaySegmentCache.Partial> cell : dayCells.getValue().entrySet()) {
+                        for (int i = 0; i < filters.length; i++) {
+                            if (filters[i] != null && !filters[i].equals(cell.getKey().get(i))) {
+                                continue cells;
+                            }
+                        }
+                        List<Object> key = new ArrayList<>(groupBy.size());
+                        for (int g = 0; g < groupBy.size(); g++) {
+                            key.add(positions[g] >= 0 ? cell.getKey().get(positions[g]) : timeBucket(groupBy.get(g), day));
+                        }
+                        groups.computeIfAbsent(key, k -> new DaySegmentCache.Partial()).add(cell.getValue());
+                    }
+                }
+            }
+            return groups;
+        }
+
+        private static String filterValue(AggregationQuery query, String dim) {
+            switch (dim) {
+                case "campaign": return query.getCampaignFilter();
+                case "country": return query.getCountryFilter();
+                case "platform": return query.getPlatformFilter();
+                default: return query.getBrowserFilter();
+            }
+        }
+
+        private static LocalDate timeBucket(String dim, LocalDate day) {
+            switch (dim) {
+                case "week": return day.with(DayOfWeek.MONDAY);
+                case "month": return day.withDayOfMonth(1);
+                default: return day;
+            }
+        }
+    }
+}
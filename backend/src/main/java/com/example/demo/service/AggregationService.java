@@ -1,342 +1,718 @@
 package com.example.demo.service;
 
 import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import com.example.demo.model.ComparisonRow;
+import com.example.demo.model.MetricDelta;
 import com.example.demo.model.PaginatedResponse;
+import com.example.demo.model.TimeSeriesPoint;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.function.Supplier;
 
 @Service
 public class AggregationService {
+    // No "hour": event_time is not in the SummingMergeTree key, so merged rows keep an arbitrary hour
+    public static final List<String> INTERVALS = List.of("day", "week", "month");
+
+    // Derived metrics as aggregate expressions; nullIf keeps a zero denominator from failing the query
+    private static final Map<String, String> DERIVED_METRIC_SQL = Map.of(
+        "ctr", "sum(clicks) / nullIf(sum(impressions), 0)",
+        "cpc", "toFloat64(sum(spent)) / nullIf(sum(clicks), 0)",
+        "cpm", "toFloat64(sum(spent)) * 1000 / nullIf(sum(impressions), 0)"
+    );
+
+    // Two-sided 95% normal quantile for sampled error bounds
+    private static final double Z_95 = 1.959964;
+    // Hashed into sample_key, the table's sampling key
+    private static final List<String> SAMPLE_KEY_DIMENSIONS = List.of("campaign", "country", "platform", "browser");
+
     private final JdbcTemplate jdbcTemplate;
+    private final QueryCostEstimator costEstimator;
+    private final QueryAdmission queryAdmission;
+    private final QueryCoalescer queryCoalescer;
+    private final DaySegmentCache segmentCache;
+    private final HotWindowStore hotWindow;
+    private final AggregationCube cube;
+    private final DrillDownCache drillDown;
 
-    public AggregationService(JdbcTemplate jdbcTemplate) {
+    public AggregationService(JdbcTemplate jdbcTemplate, QueryCostEstimator costEstimator,
+                              QueryAdmission queryAdmission, QueryCoalescer queryCoalescer,
+                              DaySegmentCache segmentCache, HotWindowStore hotWindow, AggregationCube cube,
+                              DrillDownCache drillDown) {
         this.jdbcTemplate = jdbcTemplate;
+        this.costEstimator = costEstimator;
+        this.queryAdmission = queryAdmission;
+        this.queryCoalescer = queryCoalescer;
+        this.segmentCache = segmentCache;
+        this.hotWindow = hotWindow;
+        this.cube = cube;
+        this.drillDown = drillDown;
     }
 
-    public List<AggregatedMetrics> getAggregatedData(UUID accountId, List<String> groupByDimensions, 
-                                                    List<String> metrics, String countryFilter, String campaignFilter, String platformFilter, String browserFilter, boolean isAdmin, String sortBy, String sortDirection, String startDate, String endDate) {
-        
-        // Build the GROUP BY clause
-        String groupByClause = groupByDimensions.isEmpty() ? "" : 
-            "GROUP BY " + String.join(", ", groupByDimensions);
-        
-        // Build the SELECT clause for dimensions
-        String dimensionSelect = groupByDimensions.isEmpty() ? "" : 
-            String.join(", ", groupByDimensions) + ", ";
-        
-        // Build the SELECT clause for metrics
-        List<String> metricSelects = new ArrayList<>();
-        if (metrics.contains("spent")) {
-            metricSelects.add("sum(spent) as total_spent");
-        }
-        if (metrics.contains("impressions")) {
-            metricSelects.add("sum(impressions) as total_impressions");
-        }
-        if (metrics.contains("clicks")) {
-            metricSelects.add("sum(clicks) as total_clicks");
-        }
-        metricSelects.add("count(*) as record_count");
-        
-        String metricSelect = String.join(", ", metricSelects);
-        
-        // Build WHERE clause
-        List<String> whereConditions = new ArrayList<>();
-        if (!isAdmin) {
-            whereConditions.add("account_id = ?");
-        }
-        if (countryFilter != null && !countryFilter.equals("All")) {
-            whereConditions.add("country = ?");
-        }
-        if (campaignFilter != null && !campaignFilter.equals("All")) {
-            whereConditions.add("campaign = ?");
-        }
-        if (platformFilter != null && !platformFilter.equals("All")) {
-            whereConditions.add("platform = ?");
-        }
-        if (browserFilter != null && !browserFilter.equals("All")) {
-            whereConditions.add("browser = ?");
-        }
-        if (startDate != null && !startDate.isEmpty()) {
-            whereConditions.add("day >= ?");
-        }
-        if (endDate != null && !endDate.isEmpty()) {
-            whereConditions.add("day <= ?");
-        }
-        
-        String whereClause = whereConditions.isEmpty() ? "" : 
-            "WHERE " + String.join(" AND ", whereConditions);
-        
-        // Build ORDER BY clause
-        String orderByClause = "";
-        if (sortBy != null && !sortBy.isEmpty()) {
-            String direction = (sortDirection != null && sortDirection.equalsIgnoreCase("desc")) ? "DESC" : "ASC";
-            switch (sortBy.toLowerCase()) {
-                case "spent":
-                    orderByClause = "ORDER BY total_spent " + direction;
-                    break;
-                case "impressions":
-                    orderByClause = "ORDER BY total_impressions " + direction;
-                    break;
-                case "clicks":
-                    orderByClause = "ORDER BY total_clicks " + direction;
-                    break;
-                default:
-                    // Default to group by dimensions if invalid sort field
-                    orderByClause = groupByDimensions.isEmpty() ? "" : 
-                        "ORDER BY " + String.join(", ", groupByDimensions);
-                    break;
+    public List<AggregatedMetrics> getAggregatedData(AggregationQuery query) {
+        return getAggregatedData(query, false);
+    }
+
+    /**
+     * @param export exports are admitted against the larger export budget
+     */
+    public List<AggregatedMetrics> getAggregatedData(AggregationQuery query, boolean export) {
+        return getAggregatedData(query, export, false);
+    }
+
+    /**
+     * @param rollup also return subtotals for every prefix of the grouping and a
+     *               grand total, from the same scan; rows carry their grouping level
+     */
+    public List<AggregatedMetrics> getAggregatedData(AggregationQuery query, boolean export, boolean rollup) {
+        if (!rollup) {
+            // Recent ranges are answered in-process when the hot window is enabled
+            Optional<List<AggregatedMetrics>> hot = hotWindow.aggregate(query);
+            if (hot.isPresent()) {
+                return hot.get();
             }
-        } else {
-            // Default ordering by group by dimensions
-            orderByClause = groupByDimensions.isEmpty() ? "" : 
-                "ORDER BY " + String.join(", ", groupByDimensions);
+            // Frequently needed dimension combinations get a cube built in the background
+            cube.recordUse(query);
+            Optional<List<AggregatedMetrics>> cubed = cube.aggregate(query);
+            if (cubed.isPresent()) {
+                return cubed.get();
+            }
+            // Drilling out of a recent finer result (day -> week, dropping a dimension) stays in the JVM
+            Optional<List<AggregatedMetrics>> rolledUp = drillDown.rollUp(query);
+            if (rolledUp.isPresent()) {
+                return rolledUp.get();
+            }
+            List<AggregatedMetrics> rows = segmentCache.supports(query)
+                ? getAggregatedDataFromSegments(query, export)
+                : getAggregatedDataFromSql(query, export, false);
+            drillDown.remember(query, rows);
+            return rows;
         }
-        
-        String sql = String.format(
-            "SELECT %s %s FROM appdb.ads_metrics %s %s %s",
-            dimensionSelect, metricSelect, whereClause, groupByClause, orderByClause
-        ).trim();
-        
-        // Execute query
+        return getAggregatedDataFromSql(query, export, true);
+    }
+
+    private List<AggregatedMetrics> getAggregatedDataFromSql(AggregationQuery query, boolean export, boolean rollup) {
         List<Object> params = new ArrayList<>();
-        if (!isAdmin) {
-            params.add(accountId);
+        String sql = buildSelectSql(query, params, rollup);
+
+        // Identical dashboards loading at once share one execution, including its admission
+        return queryCoalescer.execute(coalescingKey(query, export, sql, params), () -> {
+            long cost = costEstimator.estimate(query, sql, params);
+            return queryAdmission.execute(cost, export, () -> readingUpTo(query.getEndDate(), () ->
+                jdbcTemplate.query(sql, rowMapper(query, rollup), params.toArray())));
+        });
+    }
+
+    /**
+     * Answers the query from cached per-day partial aggregates, scanning only the
+     * days that are not cached (or still mutable) in one statement. Falls back to
+     * the plain aggregation when too many days are missing.
+     */
+    private List<AggregatedMetrics> getAggregatedDataFromSegments(AggregationQuery query, boolean export) {
+        String shape = segmentCache.shapeKey(query);
+        long generation = segmentCache.generation();
+        Map<LocalDate, DaySegmentCache.DaySegment> segments = new TreeMap<>();
+        List<LocalDate> missing = new ArrayList<>();
+        LocalDate end = LocalDate.parse(query.getEndDate());
+        for (LocalDate day = LocalDate.parse(query.getStartDate()); !day.isAfter(end); day = day.plusDays(1)) {
+            DaySegmentCache.DaySegment segment = segmentCache.get(shape, day);
+            if (segment != null) {
+                segments.put(day, segment);
+            } else {
+                missing.add(day);
+            }
         }
-        if (countryFilter != null && !countryFilter.equals("All")) {
-            params.add(countryFilter);
+
+        if (!segmentCache.fillable(missing.size())) {
+            // A long cold range: one aggregation beats grouping every day with a huge day IN (...)
+            return getAggregatedDataFromSql(query, export, false);
+        }
+        if (!missing.isEmpty()) {
+            List<Object> params = new ArrayList<>();
+            String sql = buildDaySegmentSql(query, missing, params);
+            AggregationQuery scanned = query.withDateRange(missing.get(0).toString(), missing.get(missing.size() - 1).toString());
+            Map<LocalDate, Map<List<Object>, DaySegmentCache.Partial>> loaded = queryCoalescer.execute(
+                coalescingKey(query, export, sql, params), () -> {
+                    long cost = costEstimator.estimate(scanned, sql, params);
+                    // Not marked for the query cache: a reload after a late ingest evicted the
+                    // day must see the new rows, and the segments are cached here anyway
+                    return queryAdmission.execute(cost, export, () -> {
+                        Map<LocalDate, Map<List<Object>, DaySegmentCache.Partial>> groupsByDay = new HashMap<>();
+                        jdbcTemplate.query(sql, rs -> {
+                            List<Object> key = new ArrayList<>(query.getGroupBy().size());
+                            for (String dim : query.getGroupBy()) {
+                                key.add(rs.getObject(dim));
+                            }
+                            groupsByDay.computeIfAbsent(LocalDate.parse(rs.getString("segment_day")), d -> new HashMap<>())
+                                .put(key, new DaySegmentCache.Partial(rs.getBigDecimal("total_spent"),
+                                    rs.getLong("total_impressions"), rs.getLong("total_clicks"), rs.getLong("record_count")));
+                        }, params.toArray());
+                        return groupsByDay;
+                    });
+                });
+            // Days without rows are cached too, as empty segments
+            for (LocalDate day : missing) {
+                DaySegmentCache.DaySegment segment = new DaySegmentCache.DaySegment(loaded.getOrDefault(day, Map.of()));
+                segmentCache.put(shape, day, segment, generation);
+                segments.put(day, segment);
+            }
         }
-        if (campaignFilter != null && !campaignFilter.equals("All")) {
-            params.add(campaignFilter);
+        return segmentCache.merge(query, segments.values());
+    }
+
+    /**
+     * Partial aggregates per day and group for the given days, with all base
+     * metrics so any metric selection or ratio can be merged from them.
+     */
+    String buildDaySegmentSql(AggregationQuery query, List<LocalDate> days, List<Object> params) {
+        List<String> groupBy = query.getGroupBy();
+        String dimensionSelect = groupBy.isEmpty() ? "" : String.join(", ", groupBy) + ", ";
+        String whereClause = buildWhereClause(query.withDateRange(null, null), params);
+        whereClause = (whereClause.isEmpty() ? "WHERE " : whereClause + " AND ")
+            + "day IN (" + String.join(", ", Collections.nCopies(days.size(), "?")) + ")";
+        for (LocalDate day : days) {
+            params.add(day.toString());
+        }
+        return canonical("SELECT toString(day) AS segment_day, " + dimensionSelect + "sum(spent) AS total_spent, " +
+            "sum(impressions) AS total_impressions, sum(clicks) AS total_clicks, count(*) AS record_count " +
+            "FROM appdb.ads_metrics " + whereClause + " GROUP BY segment_day" +
+            (groupBy.isEmpty() ? "" : ", " + String.join(", ", groupBy)));
+    }
+
+    /**
+     * Approximate aggregation over a {@code sample} fraction of the table's
+     * sampling key ({@code SAMPLE}). Sums and counts are scaled up by
+     * {@code _sample_factor}, and each requested metric carries the half-width of
+     * its 95% confidence interval. {@code SAMPLE BY sample_key} keeps or drops a
+     * (campaign, country, platform, browser) combination as a whole, so the
+     * variance of a scaled sum is estimated from the squares of each sampled
+     * combination's totals within the group; ratios use the linearized (delta
+     * method) variance.
+     *
+     * @throws IllegalArgumentException when grouping by every sampled dimension:
+     *         each group is then one combination, either missing or scaled whole
+     */
+    public List<AggregatedMetrics> getSampledAggregatedData(AggregationQuery query, double sample) {
+        if (query.getGroupBy().containsAll(SAMPLE_KEY_DIMENSIONS)) {
+            throw new IllegalArgumentException("sample cannot group by all of " + String.join(", ", SAMPLE_KEY_DIMENSIONS));
         }
-        if (platformFilter != null && !platformFilter.equals("All")) {
-            params.add(platformFilter);
+        List<Object> params = new ArrayList<>();
+        String sql = buildSampledSelectSql(query, sample, params);
+
+        return queryCoalescer.execute(coalescingKey(query, false, sql, params), () -> {
+            long cost = costEstimator.estimate(query, sql, params);
+            return queryAdmission.execute(cost, false, () -> readingUpTo(query.getEndDate(), () ->
+                jdbcTemplate.query(sql, sampledRowMapper(query, sample), params.toArray())));
+        });
+    }
+
+    /**
+     * Totals per group and sampled combination ({@code sample_key}) in a subquery,
+     * then per group the sample sums, unscaled (Decimal cannot be multiplied by the
+     * Float64 factor in ClickHouse), plus the sums of squares and products of the
+     * combination totals the error bounds need. Ordering by unscaled sums is the
+     * same since the factor is one per query.
+     */
+    String buildSampledSelectSql(AggregationQuery query, double sample, List<Object> params) {
+        List<String> groupBy = query.getGroupBy();
+        String dimensionSelect = groupBy.isEmpty() ? "" : String.join(", ", groupBy) + ", ";
+        String unitSelect = "sum(spent) as unit_spent, sum(impressions) as unit_impressions, " +
+            "sum(clicks) as unit_clicks, count(*) as unit_count, any(_sample_factor) as unit_factor";
+        String metricSelect = "sum(unit_spent) as total_spent, sum(unit_impressions) as total_impressions, " +
+            "sum(unit_clicks) as total_clicks, sum(unit_count) as record_count, any(unit_factor) as sample_factor, " +
+            "sum(toFloat64(unit_spent) * toFloat64(unit_spent)) as spent_sq, " +
+            "sum(toFloat64(unit_impressions) * unit_impressions) as impressions_sq, " +
+            "sum(toFloat64(unit_clicks) * unit_clicks) as clicks_sq, " +
+            "sum(toFloat64(unit_spent) * unit_impressions) as spent_impressions, " +
+            "sum(toFloat64(unit_spent) * unit_clicks) as spent_clicks, " +
+            "sum(toFloat64(unit_clicks) * unit_impressions) as clicks_impressions";
+        String whereClause = buildWhereClause(query, params);
+        String groupByClause = groupBy.isEmpty() ? "" : "GROUP BY " + String.join(", ", groupBy);
+        // Ratio sorts are written over the base columns, which the outer query sees as unit_*
+        String orderByClause = buildOrderByClause(query).replace("sum(spent)", "sum(unit_spent)")
+            .replace("sum(impressions)", "sum(unit_impressions)").replace("sum(clicks)", "sum(unit_clicks)");
+
+        // The ratio is validated by the caller and must be a literal in SAMPLE
+        return canonical(String.format(
+            "SELECT %s%s FROM (SELECT %ssample_key, %s FROM appdb.ads_metrics SAMPLE %s %s GROUP BY %ssample_key) %s %s",
+            dimensionSelect, metricSelect, dimensionSelect, unitSelect, BigDecimal.valueOf(sample).toPlainString(),
+            whereClause, dimensionSelect, groupByClause, orderByClause
+        ));
+    }
+
+    private RowMapper<AggregatedMetrics> sampledRowMapper(AggregationQuery query, double sample) {
+        List<String> metrics = query.getMetrics();
+        return (rs, rowNum) -> {
+            Map<String, Object> dimensions = new HashMap<>();
+            for (String dim : query.getGroupBy()) {
+                dimensions.put(dim, rs.getObject(dim));
+            }
+            // any() over no rows (grand total of an empty range) yields 0
+            double factor = rs.getDouble("sample_factor");
+            if (factor < 1) {
+                factor = 1 / sample;
+            }
+            BigDecimal spent = rs.getBigDecimal("total_spent").multiply(BigDecimal.valueOf(factor))
+                .setScale(6, RoundingMode.HALF_UP);
+            double impressions = rs.getLong("total_impressions") * factor;
+            double clicks = rs.getLong("total_clicks") * factor;
+            // Var(F * sum(y)) with combinations kept independently with p = 1/F, estimated from the sample
+            double varianceScale = factor * (factor - 1);
+
+            Map<String, Double> margins = new LinkedHashMap<>();
+            if (metrics.contains("spent")) {
+                margins.put("spent", Z_95 * Math.sqrt(varianceScale * rs.getDouble("spent_sq")));
+            }
+            if (metrics.contains("impressions")) {
+                margins.put("impressions", Z_95 * Math.sqrt(varianceScale * rs.getDouble("impressions_sq")));
+            }
+            if (metrics.contains("clicks")) {
+                margins.put("clicks", Z_95 * Math.sqrt(varianceScale * rs.getDouble("clicks_sq")));
+            }
+            Map<String, Double> derived = new LinkedHashMap<>();
+            for (String name : query.getDerivedMetrics()) {
+                double numerator = name.equals("ctr") ? clicks : spent.doubleValue();
+                double denominator = name.equals("cpc") ? clicks : impressions;
+                double scale = name.equals("cpm") ? 1000 : 1;
+                if (denominator == 0) {
+                    derived.put(name, null);
+                    continue;
+                }
+                double ratio = numerator / denominator;
+                double residualSq;
+                switch (name) {
+                    case "ctr":
+                        residualSq = rs.getDouble("clicks_sq") - 2 * ratio * rs.getDouble("clicks_impressions")
+                            + ratio * ratio * rs.getDouble("impressions_sq");
+                        break;
+                    case "cpc":
+                        residualSq = rs.getDouble("spent_sq") - 2 * ratio * rs.getDouble("spent_clicks")
+                            + ratio * ratio * rs.getDouble("clicks_sq");
+                        break;
+                    default:
+                        residualSq = rs.getDouble("spent_sq") - 2 * ratio * rs.getDouble("spent_impressions")
+                            + ratio * ratio * rs.getDouble("impressions_sq");
+                        break;
+                }
+                derived.put(name, scale * ratio);
+                margins.put(name, scale * Z_95 * Math.sqrt(varianceScale * Math.max(0, residualSq)) / denominator);
+            }
+
+            return new AggregatedMetrics(dimensions,
+                metrics.contains("spent") ? spent : BigDecimal.ZERO,
+                metrics.contains("impressions") ? Math.round(impressions) : 0L,
+                metrics.contains("clicks") ? Math.round(clicks) : 0L,
+                (int) Math.round(rs.getLong("record_count") * factor),
+                derived, null, null, margins);
+        };
+    }
+
+    public PaginatedResponse<AggregatedMetrics> getAggregatedDataPaginated(AggregationQuery query, int page, int size) {
+        int offset = page * size;
+
+        List<Object> params = new ArrayList<>();
+        String sql = buildSelectSql(query, params);
+
+        // Get total count - count distinct groups
+        List<Object> countParams = new ArrayList<>();
+        String countSql = canonical(String.format(
+            "SELECT COUNT(DISTINCT (%s)) FROM appdb.ads_metrics %s",
+            query.getGroupBy().isEmpty() ? "1" : String.join(", ", query.getGroupBy()),
+            buildWhereClause(query, countParams)
+        ));
+
+        // Add LIMIT and OFFSET to main query
+        String paginatedSql = sql + " LIMIT ? OFFSET ?";
+        List<Object> pageParams = new ArrayList<>(params);
+        pageParams.add(size);
+        pageParams.add(offset);
+
+        return queryCoalescer.execute(coalescingKey(query, false, paginatedSql, pageParams), () -> {
+            long cost = costEstimator.estimate(query, sql, params);
+            return queryAdmission.execute(cost, false, () -> readingUpTo(query.getEndDate(), () -> {
+                Long totalCount = jdbcTemplate.queryForObject(countSql, Long.class, countParams.toArray());
+                if (totalCount == null) totalCount = 0L;
+
+                List<AggregatedMetrics> data = jdbcTemplate.query(paginatedSql, rowMapper(query), pageParams.toArray());
+
+                int totalPages = (int) Math.ceil((double) totalCount / size);
+                return new PaginatedResponse<>(data, page, totalPages, totalCount.longValue(), size);
+            }));
+        });
+    }
+
+    /**
+     * Top {@code topN} values of the last grouped dimension within each combination
+     * of the preceding ones (e.g. top campaigns per country), ranked by
+     * {@code topBy}. With {@code withOthers} every partition gets one extra row,
+     * flagged {@code others}, summing the groups outside its top N.
+     */
+    public List<AggregatedMetrics> getTopN(AggregationQuery query, int topN, String topBy, boolean withOthers) {
+        if (query.getGroupBy().isEmpty()) {
+            throw new IllegalArgumentException("Top-N needs at least one groupBy dimension");
+        }
+        if (topN < 1) {
+            throw new IllegalArgumentException("topN must be positive");
+        }
+        if (!AggregationQuery.METRICS.contains(topBy)) {
+            throw new IllegalArgumentException("Unknown metric: " + topBy);
         }
-        if (browserFilter != null && !browserFilter.equals("All")) {
-            params.add(browserFilter);
+        List<Object> params = new ArrayList<>();
+        String sql = buildTopNSql(query, topN, topBy, withOthers, params);
+        List<String> groupBy = query.getGroupBy();
+        String ranked = groupBy.get(groupBy.size() - 1);
+
+        return queryCoalescer.execute(coalescingKey(query, false, sql, params), () -> {
+            long cost = costEstimator.estimate(query, sql, params);
+            return queryAdmission.execute(cost, false, () -> readingUpTo(query.getEndDate(), () ->
+                jdbcTemplate.query(sql, (rs, rowNum) -> {
+                    boolean others = withOthers && rs.getBoolean("is_others");
+                    Map<String, Object> dimensions = new HashMap<>();
+                    for (String dim : groupBy) {
+                        dimensions.put(dim, others && dim.equals(ranked) ? null : rs.getObject(dim));
+                    }
+                    BigDecimal spent = rs.getBigDecimal("total_spent");
+                    long impressions = rs.getLong("total_impressions");
+                    long clicks = rs.getLong("total_clicks");
+                    long count = rs.getLong("record_count");
+                    // Every base sum is selected, so ratios come from them like on the other paths
+                    DaySegmentCache.Partial totals = new DaySegmentCache.Partial(spent, impressions, clicks, count);
+                    Map<String, Double> derived = new LinkedHashMap<>();
+                    for (String name : query.getDerivedMetrics()) {
+                        derived.put(name, totals.derived(name));
+                    }
+                    return new AggregatedMetrics(dimensions,
+                        query.getMetrics().contains("spent") ? spent : BigDecimal.ZERO,
+                        query.getMetrics().contains("impressions") ? impressions : 0L,
+                        query.getMetrics().contains("clicks") ? clicks : 0L,
+                        (int) count, derived, null, others ? Boolean.TRUE : null);
+                }, params.toArray())));
+        });
+    }
+
+    String buildTopNSql(AggregationQuery query, int topN, String topBy, boolean withOthers, List<Object> params) {
+        List<String> groupBy = query.getGroupBy();
+        List<String> partition = groupBy.subList(0, groupBy.size() - 1);
+        String ranked = groupBy.get(groupBy.size() - 1);
+        String partitionBy = String.join(", ", partition);
+        String whereClause = buildWhereClause(query, params);
+
+        if (!withOthers) {
+            // Exact per-partition limit, no window needed
+            params.add(topN);
+            return canonical("SELECT " + String.join(", ", groupBy) + ", sum(spent) AS total_spent, " +
+                "sum(impressions) AS total_impressions, sum(clicks) AS total_clicks, count(*) AS record_count " +
+                "FROM appdb.ads_metrics " + whereClause + " GROUP BY " + String.join(", ", groupBy) +
+                " ORDER BY " + (partition.isEmpty() ? "" : partitionBy + ", ") + "total_" + topBy + " DESC, " + ranked +
+                " LIMIT ?" + (partition.isEmpty() ? "" : " BY " + partitionBy));
         }
-        if (startDate != null && !startDate.isEmpty()) {
-            params.add(startDate);
+
+        // Inner columns get their own names: re-aggregating a column under its own
+        // alias (sum(x) AS x) is rejected by ClickHouse
+        String partitionSelect = partition.isEmpty() ? "" : partitionBy + ", ";
+        String inner = "SELECT " + partitionSelect + ranked + " AS ranked_value, sum(spent) AS group_spent, " +
+            "sum(impressions) AS group_impressions, sum(clicks) AS group_clicks, count(*) AS group_count, " +
+            "row_number() OVER (" + (partition.isEmpty() ? "" : "PARTITION BY " + partitionBy + " ") +
+            "ORDER BY group_" + topBy + " DESC, ranked_value) AS rn " +
+            "FROM appdb.ads_metrics " + whereClause + " GROUP BY " + String.join(", ", groupBy);
+
+        // Ranks past N collapse into bucket N + 1, which becomes the partition's "others" row.
+        // topN is a validated int and is inlined so the placeholders stay in WHERE order.
+        return canonical("SELECT " + partitionSelect + "any(ranked_value) AS " + ranked + ", " +
+            "sum(group_spent) AS total_spent, sum(group_impressions) AS total_impressions, " +
+            "sum(group_clicks) AS total_clicks, sum(group_count) AS record_count, min(rn) > " + topN + " AS is_others " +
+            "FROM (" + inner + ") GROUP BY " + partitionSelect + "least(rn, " + (topN + 1) + ") AS bucket " +
+            "ORDER BY " + partitionSelect + "bucket");
+    }
+
+    /**
+     * Metric totals per time bucket over the query's date range. Empty buckets are
+     * filled with zeros in ClickHouse ({@code WITH FILL}); if the series is longer
+     * than {@code maxPoints} it is reduced with LTTB on {@code shapeMetric}.
+     *
+     * @param interval  day, week or month
+     * @param maxPoints 0 to return every bucket
+     */
+    public List<TimeSeriesPoint> getTimeSeries(AggregationQuery query, String interval, int maxPoints, String shapeMetric) {
+        if (!INTERVALS.contains(interval)) {
+            throw new IllegalArgumentException("Unknown interval: " + interval);
+        }
+        if (!AggregationQuery.METRICS.contains(shapeMetric)) {
+            throw new IllegalArgumentException("Unknown metric: " + shapeMetric);
         }
-        if (endDate != null && !endDate.isEmpty()) {
-            params.add(endDate);
+        List<Object> params = new ArrayList<>();
+        String sql = buildTimeSeriesSql(query, interval, params);
+
+        List<TimeSeriesPoint> series = queryCoalescer.execute(coalescingKey(query, false, sql, params), () -> {
+            long cost = costEstimator.estimate(query.withGroupBy(List.of(interval)), sql, params);
+            return queryAdmission.execute(cost, false, () -> readingUpTo(query.getEndDate(), () ->
+                jdbcTemplate.query(sql, (rs, rowNum) -> new TimeSeriesPoint(
+                    rs.getString("bucket"),
+                    rs.getBigDecimal("total_spent"),
+                    rs.getLong("total_impressions"),
+                    rs.getLong("total_clicks")
+                ), params.toArray())));
+        });
+        return TimeSeriesDownsampler.lttb(series, maxPoints, p -> p.metricValue(shapeMetric));
+    }
+
+    String buildTimeSeriesSql(AggregationQuery query, String interval, List<Object> params) {
+        String bucket;
+        String fill;
+        switch (interval) {
+            case "week":
+                bucket = "week";
+                fill = "FROM toStartOfWeek(toDate(?), 1) TO toDate(?) + 1 STEP toIntervalWeek(1)";
+                break;
+            case "month":
+                bucket = "month";
+                fill = "FROM toStartOfMonth(toDate(?)) TO toDate(?) + 1 STEP toIntervalMonth(1)";
+                break;
+            default:
+                bucket = "day";
+                fill = "FROM toDate(?) TO toDate(?) + 1 STEP 1";
+                break;
+        }
+        String whereClause = buildWhereClause(query, params);
+        params.add(query.getStartDate());
+        params.add(query.getEndDate());
+        return canonical("SELECT " + bucket + " AS bucket, sum(spent) AS total_spent, sum(impressions) AS total_impressions, " +
+            "sum(clicks) AS total_clicks FROM appdb.ads_metrics " + whereClause +
+            " GROUP BY bucket ORDER BY bucket WITH FILL " + fill);
+    }
+
+    /**
+     * Compares the query's date range with a previous range per group, reading
+     * both periods in one scan with conditional sums.
+     */
+    public List<ComparisonRow> getComparison(AggregationQuery query, String previousStart, String previousEnd) {
+        List<Object> params = new ArrayList<>();
+        String sql = buildComparisonSql(query, previousStart, previousEnd, params);
+
+        return queryCoalescer.execute(coalescingKey(query, false, sql, params), () -> {
+            long cost = costEstimator.estimate(query, sql, params);
+            return queryAdmission.execute(cost, false, () -> readingUpTo(later(query.getEndDate(), previousEnd), () ->
+                jdbcTemplate.query(sql, (rs, rowNum) -> {
+                    Map<String, Object> dimensions = new HashMap<>();
+                    for (String dim : query.getGroupBy()) {
+                        dimensions.put(dim, rs.getObject(dim));
+                    }
+                    Map<String, MetricDelta> metrics = new LinkedHashMap<>();
+                    for (String metric : query.getBaseMetrics()) {
+                        metrics.put(metric, new MetricDelta(
+                            rs.getBigDecimal("total_" + metric), rs.getBigDecimal("previous_" + metric)));
+                    }
+                    return new ComparisonRow(dimensions, metrics);
+                }, params.toArray())));
+        });
+    }
+
+    String buildComparisonSql(AggregationQuery query, String previousStart, String previousEnd, List<Object> params) {
+        List<String> groupByDimensions = query.getGroupBy();
+        String dimensionSelect = groupByDimensions.isEmpty() ? "" : String.join(", ", groupByDimensions) + ", ";
+        String groupByClause = groupByDimensions.isEmpty() ? "" : " GROUP BY " + String.join(", ", groupByDimensions);
+
+        // Current period keeps the total_* aliases so the usual ORDER BY applies
+        List<String> metricSelects = new ArrayList<>();
+        for (String metric : query.getBaseMetrics()) {
+            metricSelects.add("sumIf(" + metric + ", day >= ? AND day <= ?) AS total_" + metric);
+            params.add(query.getStartDate());
+            params.add(query.getEndDate());
+            metricSelects.add("sumIf(" + metric + ", day >= ? AND day <= ?) AS previous_" + metric);
+            params.add(previousStart);
+            params.add(previousEnd);
         }
-        
-        if (isAdmin) {
-            return jdbcTemplate.query(sql, (rs, rowNum) -> {
-                Map<String, Object> dimensions = new HashMap<>();
-                for (String dim : groupByDimensions) {
-                    dimensions.put(dim, rs.getObject(dim));
-                }
-                
-                BigDecimal totalSpent = metrics.contains("spent") ? rs.getBigDecimal("total_spent") : BigDecimal.ZERO;
-                Long totalImpressions = metrics.contains("impressions") ? rs.getLong("total_impressions") : 0L;
-                Long totalClicks = metrics.contains("clicks") ? rs.getLong("total_clicks") : 0L;
-                Long recordCount = rs.getLong("record_count");
-                
-                return new AggregatedMetrics(dimensions, totalSpent, totalImpressions, totalClicks, recordCount.intValue());
-            }, params.toArray());
-        } else {
-            return jdbcTemplate.query(sql, (rs, rowNum) -> {
-                Map<String, Object> dimensions = new HashMap<>();
-                for (String dim : groupByDimensions) {
-                    dimensions.put(dim, rs.getObject(dim));
-                }
-                
-                BigDecimal totalSpent = metrics.contains("spent") ? rs.getBigDecimal("total_spent") : BigDecimal.ZERO;
-                Long totalImpressions = metrics.contains("impressions") ? rs.getLong("total_impressions") : 0L;
-                Long totalClicks = metrics.contains("clicks") ? rs.getLong("total_clicks") : 0L;
-                Long recordCount = rs.getLong("record_count");
-                
-                return new AggregatedMetrics(dimensions, totalSpent, totalImpressions, totalClicks, recordCount.intValue());
-            }, params.toArray());
+
+        // The WHERE keeps both periods, so a ratio sort is rewritten over the current
+        // period's total_* sums; sums the sort needs but the query did not ask for are selected
+        String orderByClause = buildOrderByClause(query);
+        for (String metric : AggregationQuery.METRICS) {
+            orderByClause = orderByClause.replace("sum(" + metric + ")", "total_" + metric);
+            if (orderByClause.contains("total_" + metric) && !query.getBaseMetrics().contains(metric)) {
+                metricSelects.add("sumIf(" + metric + ", day >= ? AND day <= ?) AS total_" + metric);
+                params.add(query.getStartDate());
+                params.add(query.getEndDate());
+            }
         }
+
+        String whereClause = buildWhereClause(query.withDateRange(null, null), params);
+        whereClause = (whereClause.isEmpty() ? "WHERE " : whereClause + " AND ")
+            + "((day >= ? AND day <= ?) OR (day >= ? AND day <= ?))";
+        params.add(query.getStartDate());
+        params.add(query.getEndDate());
+        params.add(previousStart);
+        params.add(previousEnd);
+
+        return canonical("SELECT " + dimensionSelect + String.join(", ", metricSelects) + " FROM appdb.ads_metrics "
+            + whereClause + groupByClause + (orderByClause.isEmpty() ? "" : " " + orderByClause));
     }
 
-    public PaginatedResponse<AggregatedMetrics> getAggregatedDataPaginated(UUID accountId, List<String> groupByDimensions, 
-                                                                          List<String> metrics, String countryFilter, String campaignFilter, String platformFilter, String browserFilter, boolean isAdmin, int page, int size, String sortBy, String sortDirection, String startDate, String endDate) {
-        
-        int offset = page * size;
-        
+    /**
+     * Runs {@code work} marked as reading no day after {@code lastDay} (ISO date),
+     * which lets closed ranges use the ClickHouse query cache.
+     */
+    private static <T> T readingUpTo(String lastDay, Supplier<T> work) {
+        LocalDate day;
+        try {
+            day = LocalDate.parse(lastDay);
+        } catch (DateTimeParseException | NullPointerException e) {
+            // Open-ended range
+            return work.get();
+        }
+        return QuerySettings.readingUpTo(day, work);
+    }
+
+    private static String later(String a, String b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /** Collapses whitespace so equal queries are sent (and keyed) as identical text. */
+    static String canonical(String sql) {
+        return sql.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Single-flight key: tenant, budget class, whitespace-normalized SQL and its
+     * bound parameters. The SQL already carries grouping, metrics and ordering.
+     */
+    private String coalescingKey(AggregationQuery query, boolean export, String sql, List<Object> params) {
+        String tenant = query.isAdmin() ? "admin" : String.valueOf(query.getAccountId());
+        return tenant + "|" + (export ? "export" : "interactive") + "|" + canonical(sql) + "|" + params;
+    }
+
+    /**
+     * Builds the aggregation SELECT (without LIMIT) and appends its positional
+     * parameters to {@code params}.
+     */
+    String buildSelectSql(AggregationQuery query, List<Object> params) {
+        return buildSelectSql(query, params, false);
+    }
+
+    String buildSelectSql(AggregationQuery query, List<Object> params, boolean rollup) {
+        List<String> groupByDimensions = query.getGroupBy();
+        rollup = rollup && !groupByDimensions.isEmpty();
+
         // Build the GROUP BY clause
-        String groupByClause = groupByDimensions.isEmpty() ? "" : 
-            "GROUP BY " + String.join(", ", groupByDimensions);
-        
+        String groupByClause = groupByDimensions.isEmpty() ? "" :
+            "GROUP BY " + String.join(", ", groupByDimensions) + (rollup ? " WITH ROLLUP" : "");
+
         // Build the SELECT clause for dimensions
-        String dimensionSelect = groupByDimensions.isEmpty() ? "" : 
+        String dimensionSelect = groupByDimensions.isEmpty() ? "" :
             String.join(", ", groupByDimensions) + ", ";
-        
+
         // Build the SELECT clause for metrics
         List<String> metricSelects = new ArrayList<>();
-        if (metrics.contains("spent")) {
+        if (query.getMetrics().contains("spent")) {
             metricSelects.add("sum(spent) as total_spent");
         }
-        if (metrics.contains("impressions")) {
+        if (query.getMetrics().contains("impressions")) {
             metricSelects.add("sum(impressions) as total_impressions");
         }
-        if (metrics.contains("clicks")) {
+        if (query.getMetrics().contains("clicks")) {
             metricSelects.add("sum(clicks) as total_clicks");
         }
+        for (String derived : query.getDerivedMetrics()) {
+            metricSelects.add(DERIVED_METRIC_SQL.get(derived) + " as " + derived);
+        }
         metricSelects.add("count(*) as record_count");
-        
+        if (rollup) {
+            // One bit per dimension, first dimension highest; a set bit means rolled up
+            metricSelects.add("GROUPING(" + String.join(", ", groupByDimensions) + ") as grouping_mask");
+        }
+
         String metricSelect = String.join(", ", metricSelects);
-        
-        // Build WHERE clause
+
+        String whereClause = buildWhereClause(query, params);
+
+        // Rolled-up dimensions come back as NULL instead of the type's default value
+        String settings = rollup ? "SETTINGS group_by_use_nulls = 1" : "";
+
+        return canonical(String.format(
+            "SELECT %s %s FROM appdb.ads_metrics %s %s %s %s",
+            dimensionSelect, metricSelect, whereClause, groupByClause, buildOrderByClause(query), settings
+        ));
+    }
+
+    /**
+     * Builds the WHERE clause for tenant, filters and date range and appends the
+     * matching positional parameters to {@code params}.
+     */
+    String buildWhereClause(AggregationQuery query, List<Object> params) {
         List<String> whereConditions = new ArrayList<>();
-        if (!isAdmin) {
+        if (!query.isAdmin()) {
             whereConditions.add("account_id = ?");
+            params.add(query.getAccountId());
         }
-        if (countryFilter != null && !countryFilter.equals("All")) {
+        if (AggregationQuery.isActiveFilter(query.getCountryFilter())) {
             whereConditions.add("country = ?");
+            params.add(query.getCountryFilter());
         }
-        if (campaignFilter != null && !campaignFilter.equals("All")) {
+        if (AggregationQuery.isActiveFilter(query.getCampaignFilter())) {
             whereConditions.add("campaign = ?");
+            params.add(query.getCampaignFilter());
         }
-        if (platformFilter != null && !platformFilter.equals("All")) {
+        if (AggregationQuery.isActiveFilter(query.getPlatformFilter())) {
             whereConditions.add("platform = ?");
+            params.add(query.getPlatformFilter());
         }
-        if (browserFilter != null && !browserFilter.equals("All")) {
+        if (AggregationQuery.isActiveFilter(query.getBrowserFilter())) {
             whereConditions.add("browser = ?");
+            params.add(query.getBrowserFilter());
         }
-        if (startDate != null && !startDate.isEmpty()) {
+        if (query.getStartDate() != null && !query.getStartDate().isEmpty()) {
             whereConditions.add("day >= ?");
+            params.add(query.getStartDate());
         }
-        if (endDate != null && !endDate.isEmpty()) {
+        if (query.getEndDate() != null && !query.getEndDate().isEmpty()) {
             whereConditions.add("day <= ?");
+            params.add(query.getEndDate());
         }
-        
-        String whereClause = whereConditions.isEmpty() ? "" : 
+
+        return whereConditions.isEmpty() ? "" :
             "WHERE " + String.join(" AND ", whereConditions);
-        
-        // Build ORDER BY clause
-        String orderByClause = "";
-        if (sortBy != null && !sortBy.isEmpty()) {
-            String direction = (sortDirection != null && sortDirection.equalsIgnoreCase("desc")) ? "DESC" : "ASC";
-            switch (sortBy.toLowerCase()) {
-                case "spent":
-                    orderByClause = "ORDER BY total_spent " + direction;
-                    break;
-                case "impressions":
-                    orderByClause = "ORDER BY total_impressions " + direction;
-                    break;
-                case "clicks":
-                    orderByClause = "ORDER BY total_clicks " + direction;
-                    break;
-                default:
-                    // Default to group by dimensions if invalid sort field
-                    orderByClause = groupByDimensions.isEmpty() ? "" : 
-                        "ORDER BY " + String.join(", ", groupByDimensions);
-                    break;
-            }
-        } else {
-            // Default ordering by group by dimensions
-            orderByClause = groupByDimensions.isEmpty() ? "" : 
-                "ORDER BY " + String.join(", ", groupByDimensions);
-        }
-        
-        // Build the main query
-        String sql = String.format(
-            "SELECT %s %s FROM appdb.ads_metrics %s %s %s",
-            dimensionSelect, metricSelect, whereClause, groupByClause, orderByClause
-        ).trim();
-        
-        // Get total count - count distinct groups
-        String countSql = String.format(
-            "SELECT COUNT(DISTINCT (%s)) FROM appdb.ads_metrics %s",
-            groupByDimensions.isEmpty() ? "1" : String.join(", ", groupByDimensions),
-            whereClause
-        ).trim();
-        
-        // Execute count query
-        List<Object> countParams = new ArrayList<>();
-        if (!isAdmin) {
-            countParams.add(accountId);
-        }
-        if (countryFilter != null && !countryFilter.equals("All")) {
-            countParams.add(countryFilter);
-        }
-        if (campaignFilter != null && !campaignFilter.equals("All")) {
-            countParams.add(campaignFilter);
-        }
-        if (platformFilter != null && !platformFilter.equals("All")) {
-            countParams.add(platformFilter);
-        }
-        if (browserFilter != null && !browserFilter.equals("All")) {
-            countParams.add(browserFilter);
-        }
-        if (startDate != null && !startDate.isEmpty()) {
-            countParams.add(startDate);
-        }
-        if (endDate != null && !endDate.isEmpty()) {
-            countParams.add(endDate);
-        }
-        
-        Long totalCount = jdbcTemplate.queryForObject(countSql, Long.class, countParams.toArray());
-        if (totalCount == null) totalCount = 0L;
-        
-        // Add LIMIT and OFFSET to main query
-        String paginatedSql = sql + " LIMIT ? OFFSET ?";
-        
-        // Execute paginated query
-        List<Object> params = new ArrayList<>();
-        if (!isAdmin) {
-            params.add(accountId);
-        }
-        if (countryFilter != null && !countryFilter.equals("All")) {
-            params.add(countryFilter);
-        }
-        if (campaignFilter != null && !campaignFilter.equals("All")) {
-            params.add(campaignFilter);
-        }
-        if (platformFilter != null && !platformFilter.equals("All")) {
-            params.add(platformFilter);
-        }
-        if (browserFilter != null && !browserFilter.equals("All")) {
-            params.add(browserFilter);
-        }
-        if (startDate != null && !startDate.isEmpty()) {
-            params.add(startDate);
-        }
-        if (endDate != null && !endDate.isEmpty()) {
-            params.add(endDate);
-        }
-        params.add(size);
-        params.add(offset);
-        
-        List<AggregatedMetrics> data;
-        if (isAdmin) {
-            data = jdbcTemplate.query(paginatedSql, (rs, rowNum) -> {
-                Map<String, Object> dimensions = new HashMap<>();
-                for (String dim : groupByDimensions) {
-                    dimensions.put(dim, rs.getObject(dim));
-                }
-                
-                BigDecimal totalSpent = metrics.contains("spent") ? rs.getBigDecimal("total_spent") : BigDecimal.ZERO;
-                Long totalImpressions = metrics.contains("impressions") ? rs.getLong("total_impressions") : 0L;
-                Long totalClicks = metrics.contains("clicks") ? rs.getLong("total_clicks") : 0L;
-                Long recordCount = rs.getLong("record_count");
-                
-                return new AggregatedMetrics(dimensions, totalSpent, totalImpressions, totalClicks, recordCount.intValue());
-            }, params.toArray());
-        } else {
-            data = jdbcTemplate.query(paginatedSql, (rs, rowNum) -> {
-                Map<String, Object> dimensions = new HashMap<>();
-                for (String dim : groupByDimensions) {
-                    dimensions.put(dim, rs.getObject(dim));
-                }
-                
-                BigDecimal totalSpent = metrics.contains("spent") ? rs.getBigDecimal("total_spent") : BigDecimal.ZERO;
-                Long totalImpressions = metrics.contains("impressions") ? rs.getLong("total_impressions") : 0L;
-                Long totalClicks = metrics.contains("clicks") ? rs.getLong("total_clicks") : 0L;
-                Long recordCount = rs.getLong("record_count");
-                
-                return new AggregatedMetrics(dimensions, totalSpent, totalImpressions, totalClicks, recordCount.intValue());
-            }, params.toArray());
+    }
+
+    private String buildOrderByClause(AggregationQuery query) {
+        List<String> groupByDimensions = query.getGroupBy();
+        String sortBy = query.getSortBy();
+        // Default ordering by group by dimensions
+        String defaultOrder = groupByDimensions.isEmpty() ? "" :
+            "ORDER BY " + String.join(", ", groupByDimensions);
+        if (sortBy == null || sortBy.isEmpty()) {
+            return defaultOrder;
+        }
+        String direction = (query.getSortDirection() != null && query.getSortDirection().equalsIgnoreCase("desc")) ? "DESC" : "ASC";
+        switch (sortBy.toLowerCase()) {
+            case "spent":
+                return "ORDER BY total_spent " + direction;
+            case "impressions":
+                return "ORDER BY total_impressions " + direction;
+            case "clicks":
+                return "ORDER BY total_clicks " + direction;
+            case "ctr":
+            case "cpc":
+            case "cpm":
+                // Sorted by expression so the ratio need not be selected; NULLs (no denominator) go last
+                return "ORDER BY " + DERIVED_METRIC_SQL.get(sortBy.toLowerCase()) + " " + direction + " NULLS LAST";
+            default:
+                // Default to group by dimensions if invalid sort field
+                return defaultOrder;
         }
-        
-        int totalPages = (int) Math.ceil((double) totalCount / size);
-        return new PaginatedResponse<>(data, page, totalPages, totalCount.longValue(), size);
     }
-}
\ No newline at end of file
+
+    private RowMapper<AggregatedMetrics> rowMapper(AggregationQuery query) {
+        return rowMapper(query, false);
+    }
+
+    private RowMapper<AggregatedMetrics> rowMapper(AggregationQuery query, boolean rollup) {
+        return new AggregatedMetricsDecoder(query, rollup);
+    }
+}
@@ -1,8 +1,7 @@
 package com.example.demo.service;
 
 import com.example.demo.model.Account;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import com.example.demo.security.PasswordHasher;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -10,34 +9,32 @@ import java.util.UUID;
 
 @Service
 public class AuthService {
-    private final JdbcTemplate jdbcTemplate;
-    private final PasswordEncoder passwordEncoder;
+    private final AccountStore accountStore;
+    private final PasswordHasher passwordHasher;
 
-    public AuthService(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder) {
-        this.jdbcTemplate = jdbcTemplate;
-        this.passwordEncoder = passwordEncoder;
+    public AuthService(AccountStore accountStore, PasswordHasher passwordHasher) {
+        this.accountStore = accountStore;
+        this.passwordHasher = passwordHasher;
     }
 
     public Optional<Account> findByEmail(String email) {
-        return jdbcTemplate.query("SELECT id, email, password_hash, toString(created_at) created_at FROM appdb.accounts WHERE email = ? LIMIT 1",
-                rs -> rs.next() ? Optional.of(new Account(
-                        UUID.fromString(rs.getString("id")),
-                        rs.getString("email"),
-                        rs.getString("password_hash"),
-                        rs.getString("created_at")
-                )) : Optional.empty(), email);
+        return accountStore.findByEmail(email);
     }
 
+    /**
+     * @throws org.springframework.dao.DuplicateKeyException if the email was registered concurrently
+     * @throws java.util.concurrent.RejectedExecutionException if the hashing pool is saturated
+     */
     public Account register(String email, String rawPassword) {
-        String hash = passwordEncoder.encode(rawPassword);
+        String hash = passwordHasher.encode(rawPassword);
         UUID id = UUID.randomUUID();
-        jdbcTemplate.update("INSERT INTO appdb.accounts (id, email, password_hash) VALUES (?, ?, ?)", id.toString(), email, hash);
-        return new Account(id, email, hash, "");
+        return accountStore.create(new Account(id, email, hash, ""));
     }
 
+    /**
+     * @throws java.util.concurrent.RejectedExecutionException if the hashing pool is saturated
+     */
     public boolean verifyPassword(String rawPassword, String hash) {
-        return passwordEncoder.matches(rawPassword, hash);
+        return passwordHasher.matches(rawPassword, hash);
     }
 }
-
-
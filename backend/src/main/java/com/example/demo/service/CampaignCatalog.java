@@ -0,0 +1,142 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.CursorPage;
+import jakarta.annotation.PostConstruct;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Searchable campaign names per account (and across accounts for admins), kept in
+ * sorted in-memory indexes so typeahead never lists or scans the whole catalog.
+ * Entries are ordered by lower-cased name, which turns a case-insensitive prefix
+ * search into a range lookup; substring search walks the index from the cursor
+ * and stops as soon as the page is full or {@link #MAX_EXAMINED} entries were
+ * examined, so a rare needle costs a bounded scan per request. Such a page may be
+ * short, even empty, while {@code nextCursor} resumes the scan. Built at startup
+ * and extended on ingest.
+ */
+@Service
+public class CampaignCatalog implements IngestListener {
+    public enum Mode { PREFIX, SUBSTRING }
+
+    public static final int MAX_LIMIT = 200;
+    // Entries a substring search examines per page
+    public static final int MAX_EXAMINED = 10_000;
+
+    // Separates the folded sort key from the original name inside an index key
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NavigableMap<String, String> global = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<UUID, NavigableMap<String, String>> byAccount = new ConcurrentHashMap<>();
+
+    public CampaignCatalog(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void warm() {
+        jdbcTemplate.query("SELECT account_id, groupUniqArray(campaign) AS campaigns FROM appdb.ads_metrics GROUP BY account_id",
+            rs -> {
+                UUID accountId = UUID.fromString(rs.getString("account_id"));
+                Array campaigns = rs.getArray("campaigns");
+                if (campaigns != null) {
+                    for (Object campaign : (Object[]) campaigns.getArray()) {
+                        add(accountId, String.valueOf(campaign));
+                    }
+                }
+            });
+    }
+
+    @Override
+    public void onIngested(List<AdEvent> events) {
+        for (AdEvent event : events) {
+            add(event.getAccountId(), event.getCampaign());
+        }
+    }
+
+    /**
+     * Case-insensitive campaign search, in alphabetical order.
+     *
+     * @param accountId account to search, or null for all accounts
+     * @param cursor {@code nextCursor} from the previous page, or null for the first
+     */
+    public CursorPage<String> search(UUID accountId, String query, Mode mode, int limit, String cursor) {
+        NavigableMap<String, String> index = accountId == null ? global : byAccount.get(accountId);
+        if (index == null) {
+            return new CursorPage<>(List.of(), null);
+        }
+        String needle = query == null ? "" : fold(query);
+        int pageSize = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        NavigableMap<String, String> range = index;
+        if (mode == Mode.PREFIX && !needle.isEmpty()) {
+            range = index.subMap(needle, true, needle + Character.MAX_VALUE, false);
+        }
+        if (cursor != null && !cursor.isEmpty()) {
+            range = range.tailMap(decodeCursor(cursor), false);
+        }
+
+        List<String> items = new ArrayList<>(pageSize);
+        String lastKey = null;
+        boolean more = false;
+        int examined = 0;
+        for (Map.Entry<String, String> entry : range.entrySet()) {
+            if (mode == Mode.SUBSTRING) {
+                if (examined == MAX_EXAMINED) {
+                    // Resume after the last entry examined, matching or not
+                    more = true;
+                    break;
+                }
+                examined++;
+                if (!entry.getKey().substring(0, entry.getKey().indexOf(KEY_SEPARATOR)).contains(needle)) {
+                    lastKey = entry.getKey();
+                    continue;
+                }
+            }
+            if (items.size() == pageSize) {
+                more = true;
+                break;
+            }
+            items.add(entry.getValue());
+            lastKey = entry.getKey();
+        }
+        return new CursorPage<>(items, more ? encodeCursor(lastKey) : null);
+    }
+
+    private void add(UUID accountId, String campaign) {
+        String key = fold(campaign) + KEY_SEPARATOR + campaign;
+        byAccount.computeIfAbsent(accountId, id -> new ConcurrentSkipListMap<>()).put(key, campaign);
+        global.put(key, campaign);
+    }
+
+    private static String fold(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static String encodeCursor(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
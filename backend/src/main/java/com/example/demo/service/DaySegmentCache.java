@@ -0,0 +1,330 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-day partial aggregates keyed by query shape (tenant, grouping, filters)
+ * and day. A range query is answered by merging the cached days in the JVM and
+ * scanning ClickHouse only for days not cached yet, so a sliding dashboard range
+ * costs one new day per step once warm.
+ * <p>
+ * Only sealed days are cached: days before the watermark (today minus
+ * {@code late-days}). Rows ingested for a sealed day evict that day's segments,
+ * so late data is picked up on the next query. Writes that bypass
+ * {@link AdEventIngestService} are not seen.
+ * <p>
+ * Memory is bounded by the total number of groups held ({@code max-groups}),
+ * since a segment ranges from one group to {@code max-groups-per-segment}. A
+ * range missing more than {@code max-missing-days} days is not worth a per-day
+ * load and goes to ClickHouse as one aggregation instead.
+ */
+@Component
+public class DaySegmentCache implements IngestListener {
+    private final ConcurrentSkipListMap<LocalDate, ConcurrentMap<String, DaySegment>> byDay = new ConcurrentSkipListMap<>();
+    // Shapes whose days have too many groups to be worth caching
+    private final Set<String> oversizedShapes = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong groups = new AtomicLong();
+    // Bumped on every eviction caused by ingest; loads that raced with one are not stored
+    private final AtomicLong generation = new AtomicLong();
+    private final boolean enabled;
+    private final long maxGroups;
+    private final int maxGroupsPerSegment;
+    private final int maxRangeDays;
+    private final int maxMissingDays;
+    private final int lateDays;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public DaySegmentCache(@Value("${app.segment-cache.enabled:true}") boolean enabled,
+                           @Value("${app.segment-cache.max-groups:2000000}") long maxGroups,
+                           @Value("${app.segment-cache.max-groups-per-segment:5000}") int maxGroupsPerSegment,
+                           @Value("${app.segment-cache.max-range-days:400}") int maxRangeDays,
+                           @Value("${app.segment-cache.max-missing-days:31}") int maxMissingDays,
+                           @Value("${app.segment-cache.late-days:0}") int lateDays,
+                           MeterRegistry meterRegistry) {
+        this(enabled, maxGroups, maxGroupsPerSegment, maxRangeDays, maxMissingDays, lateDays, Clock.systemUTC(),
+            meterRegistry);
+    }
+
+    DaySegmentCache(boolean enabled, long maxGroups, int maxGroupsPerSegment, int maxRangeDays, int maxMissingDays,
+                    int lateDays, Clock clock, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxGroups = maxGroups;
+        this.maxGroupsPerSegment = maxGroupsPerSegment;
+        this.maxRangeDays = maxRangeDays;
+        this.maxMissingDays = maxMissingDays;
+        this.lateDays = lateDays;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("query.segment_cache.segments", size);
+        meterRegistry.gauge("query.segment_cache.groups", groups);
+    }
+
+    /** True if the query has a bounded date range and a shape worth caching. */
+    public boolean supports(AggregationQuery query) {
+        if (!enabled || oversizedShapes.contains(shapeKey(query))) {
+            return false;
+        }
+        try {
+            long days = ChronoUnit.DAYS.between(LocalDate.parse(query.getStartDate()), LocalDate.parse(query.getEndDate())) + 1;
+            return days >= 1 && days <= maxRangeDays;
+        } catch (DateTimeParseException | NullPointerException e) {
+            return false;
+        }
+    }
+
+    /** True if loading this many uncached days one segment each beats a single aggregation. */
+    public boolean fillable(int missingDays) {
+        return missingDays <= maxMissingDays;
+    }
+
+    /** Everything that determines a day's partial aggregate except the day itself. */
+    public String shapeKey(AggregationQuery query) {
+        String tenant = query.isAdmin() ? "admin" : String.valueOf(query.getAccountId());
+        return tenant + "|" + query.getGroupBy() + "|" + query.getCountryFilter() + "|" + query.getCampaignFilter()
+            + "|" + query.getPlatformFilter() + "|" + query.getBrowserFilter();
+    }
+
+    /** Days strictly before the watermark no longer change, except through late ingest. */
+    public LocalDate watermark() {
+        return LocalDate.now(clock).minusDays(lateDays);
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    /** Cached segment for the day, or null. */
+    public DaySegment get(String shape, LocalDate day) {
+        ConcurrentMap<String, DaySegment> segments = byDay.get(day);
+        DaySegment segment = segments == null ? null : segments.get(shape);
+        meterRegistry.counter("query.segment_cache.requests", "result", segment == null ? "miss" : "hit").increment();
+        return segment;
+    }
+
+    /**
+     * Stores a segment loaded while {@link #generation()} was {@code loadedAt}.
+     * Mutable days and segments that raced with an ingest eviction are dropped.
+     */
+    public void put(String shape, LocalDate day, DaySegment segment, long loadedAt) {
+        if (!day.isBefore(watermark()) || generation.get() != loadedAt) {
+            return;
+        }
+        if (segment.groups.size() > maxGroupsPerSegment) {
+            oversizedShapes.add(shape);
+            return;
+        }
+        ConcurrentMap<String, DaySegment> segments = byDay.computeIfAbsent(day, d -> new ConcurrentHashMap<>());
+        DaySegment replaced = segments.put(shape, segment);
+        if (replaced != null) {
+            release(replaced);
+        }
+        size.incrementAndGet();
+        groups.addAndGet(segment.weight());
+        if (generation.get() != loadedAt) {
+            // An ingest evicted this day while we were storing it; if it already dropped the
+            // day's map, it released this segment with it
+            if (byDay.get(day) == segments && segments.remove(shape, segment)) {
+                release(segment);
+            }
+            return;
+        }
+        // Sliding ranges move forward, so the oldest days are the least likely to be read again
+        while (groups.get() > maxGroups) {
+            Map.Entry<LocalDate, ConcurrentMap<String, DaySegment>> oldest = byDay.pollFirstEntry();
+            if (oldest == null) {
+                break;
+            }
+            oldest.getValue().values().forEach(this::release);
+        }
+    }
+
+    private void release(DaySegment segment) {
+        size.decrementAndGet();
+        groups.addAndGet(-segment.weight());
+    }
+
+    @Override
+    public void onIngested(List<AdEvent> events) {
+        LocalDate watermark = watermark();
+        Set<LocalDate> lateDaysSeen = new HashSet<>();
+        for (AdEvent event : events) {
+            LocalDate day = event.getEventTime().toLocalDate();
+            if (day.isBefore(watermark)) {
+                lateDaysSeen.add(day);
+            }
+        }
+        for (LocalDate day : lateDaysSeen) {
+            // Admin segments span all accounts, so the whole day goes
+            generation.incrementAndGet();
+            ConcurrentMap<String, DaySegment> evicted = byDay.remove(day);
+            if (evicted != null) {
+                evicted.values().forEach(this::release);
+            }
+        }
+    }
+
+    /**
+     * Sums the day segments per group and orders the result like the SQL
+     * aggregation would ({@code sortBy}, else the grouped dimensions).
+     */
+    public List<AggregatedMetrics> merge(AggregationQuery query, Collection<DaySegment> segments) {
+        Map<List<Object>, Partial> merged = new LinkedHashMap<>();
+        for (DaySegment segment : segments) {
+            for (Map.Entry<List<Object>, Partial> group : segment.groups.entrySet()) {
+                merged.computeIfAbsent(group.getKey(), k -> new Partial()).add(group.getValue());
+            }
+        }
+
+        return toRows(query, merged);
+    }
+
+    /**
+     * Turns merged groups (keys hold dimension values in groupBy order) into
+     * result rows, ordered like the SQL aggregation.
+     */
+    static List<AggregatedMetrics> toRows(AggregationQuery query, Map<List<Object>, Partial> merged) {
+        // Sorted before the unrequested metrics are zeroed out, since a ratio sort may need them
+        List<Map.Entry<List<Object>, Partial>> groups = new ArrayList<>(merged.entrySet());
+        groups.sort(ordering(query));
+
+        List<String> groupBy = query.getGroupBy();
+        List<String> metrics = query.getMetrics();
+        List<AggregatedMetrics> rows = new ArrayList<>(groups.size());
+        for (Map.Entry<List<Object>, Partial> group : groups) {
+            Partial total = group.getValue();
+            Map<String, Object> dimensions = new HashMap<>();
+            for (int i = 0; i < groupBy.size(); i++) {
+                dimensions.put(groupBy.get(i), group.getKey().get(i));
+            }
+            Map<String, Double> derived = new LinkedHashMap<>();
+            for (String name : query.getDerivedMetrics()) {
+                derived.put(name, total.derived(name));
+            }
+            rows.add(new AggregatedMetrics(dimensions,
+                metrics.contains("spent") ? total.spent : BigDecimal.ZERO,
+                metrics.contains("impressions") ? total.impressions : 0L,
+                metrics.contains("clicks") ? total.clicks : 0L,
+                (int) total.count, derived));
+        }
+        // A grand total exists even over an empty range, as with SQL aggregation without GROUP BY
+        if (rows.isEmpty() && groupBy.isEmpty()) {
+            rows.add(new AggregatedMetrics(Map.of(), BigDecimal.ZERO, 0L, 0L, 0, new LinkedHashMap<>()));
+        }
+        return rows;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<Map.Entry<List<Object>, Partial>> ordering(AggregationQuery query) {
+        // Group keys hold the dimension values in groupBy order
+        Comparator<Map.Entry<List<Object>, Partial>> byDimensions = (a, b) -> {
+            for (int i = 0; i < a.getKey().size(); i++) {
+                int c = Comparator.nullsFirst(Comparator.<Comparable>naturalOrder())
+                    .compare((Comparable) a.getKey().get(i), (Comparable) b.getKey().get(i));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        };
+        String sortBy = query.getSortBy() == null ? "" : query.getSortBy().toLowerCase();
+        boolean desc = query.getSortDirection() != null && query.getSortDirection().equalsIgnoreCase("desc");
+        Comparator<Map.Entry<List<Object>, Partial>> byMetric;
+        switch (sortBy) {
+            case "spent":
+                byMetric = Comparator.comparing(group -> group.getValue().spent);
+                break;
+            case "impressions":
+                byMetric = Comparator.comparingLong(group -> group.getValue().impressions);
+                break;
+            case "clicks":
+                byMetric = Comparator.comparingLong(group -> group.getValue().clicks);
+                break;
+            case "ctr":
+            case "cpc":
+            case "cpm":
+                Comparator<Double> values = desc ? Comparator.reverseOrder() : Comparator.naturalOrder();
+                return Comparator.comparing(group -> group.getValue().derived(sortBy), Comparator.nullsLast(values));
+            default:
+                return byDimensions;
+        }
+        return desc ? byMetric.reversed() : byMetric;
+    }
+
+    /** One day's groups for one query shape. Immutable once built. */
+    public static final class DaySegment {
+        private final Map<List<Object>, Partial> groups;
+
+        public DaySegment(Map<List<Object>, Partial> groups) {
+            this.groups = Collections.unmodifiableMap(groups);
+        }
+
+        public int groupCount() {
+            return groups.size();
+        }
+
+        // Empty days are cached too and still cost an entry
+        private int weight() {
+            return Math.max(1, groups.size());
+        }
+    }
+
+    /** Summable metrics of one group; derived ratios are computed from these after merging. */
+    public static final class Partial {
+        private BigDecimal spent = BigDecimal.ZERO;
+        private long impressions;
+        private long clicks;
+        private long count;
+
+        public Partial() {
+        }
+
+        public Partial(BigDecimal spent, long impressions, long clicks, long count) {
+            this.spent = spent;
+            this.impressions = impressions;
+            this.clicks = clicks;
+            this.count = count;
+        }
+
+        void add(Partial other) {
+            spent = spent.add(other.spent);
+            impressions += other.impressions;
+            clicks += other.clicks;
+            count += other.count;
+        }
+
+        // Same formulas as the SQL path; null where the denominator is zero
+        Double derived(String name) {
+            switch (name) {
+                case "ctr":
+                    return impressions == 0 ? null : (double) clicks / impressions;
+                case "cpc":
+                    return clicks == 0 ? null : spent.doubleValue() / clicks;
+                case "cpm":
+                    return impressions == 0 ? null : spent.doubleValue() * 1000 / impressions;
+                default:
+                    throw new IllegalArgumentException("Unknown metric: " + name);
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent aggregation results kept in columnar form so that a coarser request
+ * over the same tenant and range (e.g. {@code week, campaign} after
+ * {@code day, campaign}) is re-aggregated in memory instead of queried again.
+ * All base metrics are sums, so rolling up is exact.
+ * <p>
+ * A cached result can answer a request if every requested dimension is one of
+ * its dimensions (week and month can also be derived from day), every extra
+ * filter is on one of its dimensions, and it holds the metrics the request
+ * needs. Entries expire after {@code ttl-seconds} and are dropped when rows are
+ * ingested into their range.
+ */
+@Component
+public class DrillDownCache implements IngestListener {
+    private final int maxEntries;
+    private final int maxRows;
+    private final long ttlNanos;
+    private final MeterRegistry meterRegistry;
+    // Access-ordered for LRU eviction; guarded by itself
+    private final LinkedHashMap<AggregationQueryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public DrillDownCache(@Value("${app.drilldown.max-entries:256}") int maxEntries,
+                          @Value("${app.drilldown.max-rows:50000}") int maxRows,
+                          @Value("${app.drilldown.ttl-seconds:60}") long ttlSeconds,
+                          MeterRegistry meterRegistry) {
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /** Keeps a freshly computed result for later roll-ups. */
+    public void remember(AggregationQuery query, List<AggregatedMetrics> rows) {
+        if (maxEntries <= 0 || rows.size() > maxRows || !hasDateRange(query)) {
+            return;
+        }
+        Entry entry = new Entry(query, rows);
+        synchronized (entries) {
+            entries.put(new AggregationQueryKey(query), entry);
+            Iterator<Entry> oldest = entries.values().iterator();
+            while (entries.size() > maxEntries && oldest.hasNext()) {
+                oldest.next();
+                oldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Answers the query by rolling up the smallest cached result it can be
+     * derived from.
+     *
+     * @return empty if no cached result covers it
+     */
+    public Optional<List<AggregatedMetrics>> rollUp(AggregationQuery query) {
+        if (maxEntries <= 0 || !hasDateRange(query)) {
+            return Optional.empty();
+        }
+        Entry best = null;
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (now - entry.createdNanos > ttlNanos) {
+                    it.remove();
+                } else if (entry.covers(query) && (best == null || entry.size < best.size)) {
+                    best = entry;
+                }
+            }
+        }
+        meterRegistry.counter("query.drilldown.requests", "result", best == null ? "miss" : "hit").increment();
+        if (best == null) {
+            return Optional.empty();
+        }
+        return Optional.of(DaySegmentCache.toRows(query, best.aggregate(query)));
+    }
+
+    @Override
+    public void onIngested(List<AdEvent> events) {
+        Set<LocalDate> days = new HashSet<>();
+        for (AdEvent event : events) {
+            days.add(event.getEventTime().toLocalDate());
+        }
+        synchronized (entries) {
+            entries.values().removeIf(entry -> entry.overlaps(days));
+        }
+    }
+
+    private static boolean hasDateRange(AggregationQuery query) {
+        try {
+            LocalDate.parse(query.getStartDate());
+            LocalDate.parse(query.getEndDate());
+            return true;
+        } catch (DateTimeParseException | NullPointerException e) {
+            return false;
+        }
+    }
+
+    /** Metrics a query reads: requested sums plus the inputs of its ratios and sort. */
+    private static Set<String> neededMetrics(AggregationQuery query) {
+        Set<String> needed = new HashSet<>(query.getBaseMetrics());
+        List<String> ratios = new ArrayList<>(query.getDerivedMetrics());
+        if (query.getSortBy() != null) {
+            String sortBy = query.getSortBy().toLowerCase();
+            if (AggregationQuery.METRICS.contains(sortBy)) {
+                needed.add(sortBy);
+            } else if (AggregationQuery.DERIVED_METRICS.contains(sortBy)) {
+                ratios.add(sortBy);
+            }
+        }
+        for (String ratio : ratios) {
+            switch (ratio) {
+                case "ctr": needed.add("clicks"); needed.add("impressions"); break;
+                case "cpc": needed.add("spent"); needed.add("clicks"); break;
+                default: needed.add("spent"); needed.add("impressions"); break;
+            }
+        }
+        return needed;
+    }
+
+    private static String filter(AggregationQuery query, String dim) {
+        switch (dim) {
+            case "campaign": return query.getCampaignFilter();
+            case "country": return query.getCountryFilter();
+            case "platform": return query.getPlatformFilter();
+            case "browser": return query.getBrowserFilter();
+            default: return null;
+        }
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        return LocalDate.parse(String.valueOf(value));
+    }
+
+    /** Identity of a cached result: tenant, range, filters, grouping and metrics. */
+    private static final class AggregationQueryKey {
+        private final List<Object> parts;
+
+        AggregationQueryKey(AggregationQuery query) {
+            parts = Arrays.asList(query.isAdmin(), query.getAccountId(), query.getStartDate(), query.getEndDate(),
+                query.getCountryFilter(), query.getCampaignFilter(), query.getPlatformFilter(), query.getBrowserFilter(),
+                query.getGroupBy(), new HashSet<>(query.getBaseMetrics()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof AggregationQueryKey && parts.equals(((AggregationQueryKey) o).parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return parts.hashCode();
+        }
+    }
+
+    /** One cached result as columns: dimension values per grouped dimension plus summed metrics. */
+    private static final class Entry {
+        final AggregationQuery query;
+        final long createdNanos = System.nanoTime();
+        final LocalDate start;
+        final LocalDate end;
+        final Set<String> metrics;
+        final int size;
+        final Object[][] dimensions;
+        final long[] spentMicros;
+        final long[] impressions;
+        final long[] clicks;
+        final long[] counts;
+
+        Entry(AggregationQuery query, List<AggregatedMetrics> rows) {
+            this.query = query;
+            this.start = LocalDate.parse(query.getStartDate());
+            this.end = LocalDate.parse(query.getEndDate());
+            this.metrics = new HashSet<>(query.getBaseMetrics());
+            this.size = rows.size();
+            List<String> groupBy = query.getGroupBy();
+            dimensions = new Object[groupBy.size()][size];
+            spentMicros = new long[size];
+            impressions = new long[size];
+            clicks = new long[size];
+            counts = new long[size];
+            for (int r = 0; r < size; r++) {
+                AggregatedMetrics row = rows.get(r);
+                for (int d = 0; d < groupBy.size(); d++) {
+                    dimensions[d][r] = row.getDimensions().get(groupBy.get(d));
+                }
+                spentMicros[r] = row.getTotalSpent().setScale(6, RoundingMode.HALF_UP).unscaledValue().longValue();
+                impressions[r] = row.getTotalImpressions();
+                clicks[r] = row.getTotalClicks();
+                counts[r] = row.getRecordCount();
+            }
+        }
+
+        boolean overlaps(Set<LocalDate> days) {
+            for (LocalDate day : days) {
+                if (!day.isBefore(start) && !day.isAfter(end)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean covers(AggregationQuery other) {
+            if (query.isAdmin() != other.isAdmin() || !Objects.equals(query.getAccountId(), other.getAccountId())
+                || !query.getStartDate().equals(other.getStartDate()) || !query.getEndDate().equals(other.getEndDate())
+                || !metrics.containsAll(neededMetrics(other))) {
+                return false;
+            }
+            List<String> groupBy = query.getGroupBy();
+            for (String dim : List.of("campaign", "country", "platform", "browser")) {
+                String mine = filter(query, dim);
+                String theirs = filter(other, dim);
+                if (AggregationQuery.isActiveFilter(mine)) {
+                    // A filter cannot be undone or replaced
+                    if (!mine.equals(theirs)) {
+                        return false;
+                    }
+                } else if (AggregationQuery.isActiveFilter(theirs) && !groupBy.contains(dim)) {
+                    return false;
+                }
+            }
+            for (String dim : other.getGroupBy()) {
+                boolean derivable = groupBy.contains(dim)
+                    || ((dim.equals("week") || dim.equals("month")) && groupBy.contains("day"));
+                if (!derivable) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Hash-aggregates the cached rows passing the extra filters into the other query's groups. */
+        Map<List<Object>, DaySegmentCache.Partial> aggregate(AggregationQuery other) {
+            List<String> groupBy = query.getGroupBy();
+            List<String> target = other.getGroupBy();
+            int dayColumn = groupBy.indexOf("day");
+            int[] source = new int[target.size()];
+            for (int t = 0; t < target.size(); t++) {
+                source[t] = groupBy.indexOf(target.get(t));
+            }
+            List<Object[]> filterColumns = new ArrayList<>();
+            List<String> filterValues = new ArrayList<>();
+            for (int d = 0; d < groupBy.size(); d++) {
+                String value = filter(other, groupBy.get(d));
+                if (AggregationQuery.isActiveFilter(value) && !AggregationQuery.isActiveFilter(filter(query, groupBy.get(d)))) {
+                    filterColumns.add(dimensions[d]);
+                    filterValues.add(value);
+                }
+            }
+
+            // Group index per distinct key, sums accumulated in parallel primitive arrays
+            Map<List<Object>, Integer> groupIndex = new LinkedHashMap<>();
+            long[] sumSpent = new long[size];
+            long[] sumImpressions = new long[size];
+            long[] sumClicks = new long[size];
+            long[] sumCounts = new long[size];
+            rows:
+            for (int r = 0; r < size; r++) {
+                for (int f = 0; f < filterColumns.size(); f++) {
+                    if (!filterValues.get(f).equals(String.valueOf(filterColumns.get(f)[r]))) {
+                        continue rows;
+                    }
+                }
+                List<Object> key = new ArrayList<>(target.size());
+                for (int t = 0; t < target.size(); t++) {
+                    if (source[t] >= 0) {
+                        key.add(dimensions[source[t]][r]);
+                    } else {
+                        LocalDate day = toLocalDate(dimensions[dayColumn][r]);
+                        key.add(target.get(t).equals("week") ? day.with(DayOfWeek.MONDAY) : day.withDayOfMonth(1));
+                    }
+                }
+                Integer g = groupIndex.get(key);
+                if (g == null) {
+                    g = groupIndex.size();
+                    groupIndex.put(key, g);
+                }
+                sumSpent[g] += spentMicros[r];
+                sumImpressions[g] += impressions[r];
+                sumClicks[g] += clicks[r];
+                sumCounts[g] += counts[r];
+            }
+
+            Map<List<Object>, DaySegmentCache.Partial> groups = new LinkedHashMap<>();
+            for (Map.Entry<List<Object>, Integer> group : groupIndex.entrySet()) {
+                int g = group.getValue();
+                groups.put(group.getKey(), new DaySegmentCache.Partial(BigDecimal.valueOf(sumSpent[g], 6),
+                    sumImpressions[g], sumClicks[g], sumCounts[g]));
+            }
+            return groups;
+        }
+    }
+}
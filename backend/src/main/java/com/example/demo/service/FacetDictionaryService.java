@@ -0,0 +1,112 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import jakarta.annotation.PostConstruct;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory sets of the distinct filter values (country, campaign, platform,
+ * browser) per account and across all accounts. Built once at startup from a
+ * per-account rollup and extended as rows are ingested, so filter lists are
+ * served without touching ClickHouse. Values are only ever added, which matches
+ * the append-only metrics table.
+ */
+@Service
+public class FacetDictionaryService implements IngestListener {
+    private final JdbcTemplate jdbcTemplate;
+    private final Facets global = new Facets();
+    private final ConcurrentMap<UUID, Facets> byAccount = new ConcurrentHashMap<>();
+
+    public FacetDictionaryService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void warm() {
+        // One row per account instead of one per distinct combination
+        jdbcTemplate.query(
+            "SELECT account_id, groupUniqArray(country) AS country, groupUniqArray(campaign) AS campaign, " +
+            "groupUniqArray(platform) AS platform, groupUniqArray(browser) AS browser " +
+            "FROM appdb.ads_metrics GROUP BY account_id",
+            rs -> {
+                UUID accountId = UUID.fromString(rs.getString("account_id"));
+                Facets facets = byAccount.computeIfAbsent(accountId, id -> new Facets());
+                for (String dim : AdMetricsService.FACET_DIMENSIONS) {
+                    List<String> values = toList(rs.getArray(dim));
+                    facets.get(dim).addAll(values);
+                    global.get(dim).addAll(values);
+                }
+            });
+    }
+
+    @Override
+    public void onIngested(List<AdEvent> events) {
+        for (AdEvent event : events) {
+            Facets facets = byAccount.computeIfAbsent(event.getAccountId(), id -> new Facets());
+            facets.add(event);
+            global.add(event);
+        }
+    }
+
+    /**
+     * Sorted distinct values of a filter dimension.
+     *
+     * @param accountId account to scope to, or null for all accounts
+     */
+    public List<String> values(UUID accountId, String dimension) {
+        Facets facets = accountId == null ? global : byAccount.get(accountId);
+        if (facets == null) {
+            return List.of();
+        }
+        return new ArrayList<>(facets.get(dimension));
+    }
+
+    private static List<String> toList(Array array) throws SQLException {
+        if (array == null) {
+            return List.of();
+        }
+        List<String> values = new ArrayList<>();
+        for (Object value : (Object[]) array.getArray()) {
+            values.add(String.valueOf(value));
+        }
+        return values;
+    }
+
+    private static class Facets {
+        private final Map<String, NavigableSet<String>> byDimension = new ConcurrentHashMap<>();
+
+        Facets() {
+            for (String dim : AdMetricsService.FACET_DIMENSIONS) {
+                byDimension.put(dim, new ConcurrentSkipListSet<>());
+            }
+        }
+
+        Collection<String> get(String dimension) {
+            NavigableSet<String> values = byDimension.get(dimension);
+            if (values == null) {
+                throw new IllegalArgumentException("Unknown facet dimension: " + dimension);
+            }
+            return values;
+        }
+
+        void add(AdEvent event) {
+            byDimension.get("country").add(event.getCountry());
+            byDimension.get("campaign").add(event.getCampaign());
+            byDimension.get("platform").add(event.getPlatform());
+            byDimension.get("browser").add(event.getBrowser());
+        }
+    }
+}
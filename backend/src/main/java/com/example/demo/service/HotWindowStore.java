@@ -0,0 +1,882 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import com.example.demo.model.FacetValue;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Optional in-process columnar copy of the most recent {@code window-days} of
+ * {@code ads_metrics}, answering plain group-by/filter aggregations without a
+ * ClickHouse round trip.
+ * <p>
+ * Rows live off-heap in direct buffers, one column per field and one block per
+ * account (so a tenant query reads one contiguous block). Dimensions are
+ * dictionary-encoded (campaign as int, the low-cardinality ones as unsigned
+ * short), spend is fixed-point micros in a long. Scans split blocks into chunks
+ * that run in parallel on a dedicated pool, each aggregating into its own
+ * open-addressing table keyed by a mixed-radix encoding of the grouped codes.
+ * <p>
+ * Warmed from ClickHouse at startup and kept current from the ingest path;
+ * writes that bypass {@link AdEventIngestService} are not seen. Record counts
+ * are rows as written, which can exceed ClickHouse's after background merges.
+ */
+@Component
+public class HotWindowStore implements IngestListener {
+    /** day, campaign, country, platform, browser, spent, impressions, clicks. */
+    static final int BYTES_PER_ROW = 4 + 4 + 2 + 2 + 2 + 8 + 8 + 8;
+    static final int CHUNK_ROWS = 1 << 16;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int WARM_BATCH_ROWS = 4096;
+    private static final int MAX_SHORT_CODES = 1 << 16;
+    // Bitmap index slots per block; day bitmaps are keyed by epoch day, the rest by dictionary code
+    private static final int DAY_INDEX = 0, CAMPAIGN_INDEX = 1, COUNTRY_INDEX = 2, PLATFORM_INDEX = 3, BROWSER_INDEX = 4;
+    // Facet dimensions in AdMetricsService.FACET_DIMENSIONS order
+    private static final int[] FACET_INDEXES = {COUNTRY_INDEX, CAMPAIGN_INDEX, PLATFORM_INDEX, BROWSER_INDEX};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int windowDays;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final ForkJoinPool scanPool;
+    private final ScheduledExecutorService compactor;
+    private final ConcurrentMap<UUID, AccountBlock> byAccount = new ConcurrentHashMap<>();
+    private final Dictionary campaigns = new Dictionary(Integer.MAX_VALUE);
+    private final Dictionary countries = new Dictionary(MAX_SHORT_CODES);
+    private final Dictionary platforms = new Dictionary(MAX_SHORT_CODES);
+    private final Dictionary browsers = new Dictionary(MAX_SHORT_CODES);
+    private volatile boolean ready;
+
+    @Autowired
+    public HotWindowStore(JdbcTemplate jdbcTemplate,
+                          @Value("${app.hot-window.enabled:false}") boolean enabled,
+                          @Value("${app.hot-window.days:30}") int windowDays,
+                          @Value("${app.hot-window.scan-threads:0}") int scanThreads,
+                          MeterRegistry meterRegistry) {
+        this(jdbcTemplate, enabled, windowDays, scanThreads, Clock.systemUTC(), meterRegistry);
+    }
+
+    HotWindowStore(JdbcTemplate jdbcTemplate, boolean enabled, int windowDays, int scanThreads, Clock clock,
+                   MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.windowDays = windowDays;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.scanPool = new ForkJoinPool(scanThreads > 0 ? scanThreads : Runtime.getRuntime().availableProcessors());
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hot-window-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled) {
+            compactor.scheduleWithFixedDelay(this::compact, 1, 1, TimeUnit.HOURS);
+        }
+        meterRegistry.gauge("hot_window.rows", this, HotWindowStore::rows);
+        meterRegistry.gauge("hot_window.allocated_bytes", this, HotWindowStore::allocatedBytes);
+        meterRegistry.gauge("hot_window.index_bytes", this, HotWindowStore::indexBytes);
+        meterRegistry.gauge("hot_window.bytes_per_row", this, HotWindowStore::bytesPerRow);
+    }
+
+    @PostConstruct
+    public void warm() {
+        if (!enabled) {
+            return;
+        }
+        Map<UUID, List<Row>> pending = new HashMap<>();
+        try {
+            QuerySettings.run(QuerySettings.EXPORT, () -> jdbcTemplate.query(
+                "SELECT toInt32(day) AS day_number, account_id, campaign, country, platform, browser, spent, " +
+                "impressions, clicks FROM appdb.ads_metrics WHERE day >= ?",
+                rs -> {
+                    UUID accountId = UUID.fromString(rs.getString("account_id"));
+                    List<Row> rows = pending.computeIfAbsent(accountId, id -> new ArrayList<>());
+                    rows.add(new Row(rs.getInt("day_number"),
+                        campaigns.encode(rs.getString("campaign")), countries.encode(rs.getString("country")),
+                        platforms.encode(rs.getString("platform")), browsers.encode(rs.getString("browser")),
+                        toMicros(rs.getBigDecimal("spent")), rs.getLong("impressions"), rs.getLong("clicks")));
+                    if (rows.size() >= WARM_BATCH_ROWS) {
+                        append(accountId, rows);
+                        pending.remove(accountId);
+                    }
+                }, windowStart().toString()));
+            for (Map.Entry<UUID, List<Row>> entry : pending.entrySet()) {
+                append(entry.getKey(), entry.getValue());
+            }
+            ready = true;
+        } catch (DataAccessException | IllegalStateException e) {
+            // Stays unused; queries go to ClickHouse as before
+            System.err.println("Hot window store not loaded: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onIngested(List<AdEvent> events) {
+        if (!enabled) {
+            return;
+        }
+        long start = windowStart().toEpochDay();
+        Map<UUID, List<Row>> rowsByAccount = new HashMap<>();
+        try {
+            for (AdEvent event : events) {
+                long day = event.getEventTime().toLocalDate().toEpochDay();
+                if (day >= start) {
+                    rowsByAccount.computeIfAbsent(event.getAccountId(), id -> new ArrayList<>()).add(new Row((int) day,
+                        campaigns.encode(event.getCampaign()), countries.encode(event.getCountry()),
+                        platforms.encode(event.getPlatform()), browsers.encode(event.getBrowser()),
+                        toMicros(event.getSpent()), event.getImpressions(), event.getClicks()));
+                }
+            }
+        } catch (IllegalStateException e) {
+            // A dictionary is full; the store would go stale, so stop answering from it
+            ready = false;
+            System.err.println("Hot window store disabled: " + e.getMessage());
+            return;
+        }
+        for (Map.Entry<UUID, List<Row>> entry : rowsByAccount.entrySet()) {
+            append(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Answers the query from memory if its range lies inside the window.
+     *
+     * @return empty if the query cannot be answered here
+     */
+    public Optional<List<AggregatedMetrics>> aggregate(AggregationQuery query) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        LocalDate start;
+        LocalDate end;
+        try {
+            start = LocalDate.parse(query.getStartDate());
+            end = LocalDate.parse(query.getEndDate());
+        } catch (DateTimeParseException | NullPointerException e) {
+            return Optional.empty();
+        }
+        if (start.isBefore(windowStart())) {
+            meterRegistry.counter("hot_window.queries", "result", "outside_window").increment();
+            return Optional.empty();
+        }
+
+        Scan scan = new Scan(query, start, end, this);
+        // Blocks first, then dictionary sizes: every code in a visible row is below the size read after it
+        List<View> views = new ArrayList<>();
+        for (AccountBlock block : blocks(query.isAdmin() ? null : query.getAccountId())) {
+            View view = block.select(scan);
+            if (view.rows() > 0) {
+                views.add(view);
+            }
+        }
+        if (!scan.layout(query, this)) {
+            meterRegistry.counter("hot_window.queries", "result", "unsupported").increment();
+            return Optional.empty();
+        }
+        meterRegistry.counter("hot_window.queries", "result", "hit").increment();
+
+        int[] sizes = new int[views.size()];
+        for (int v = 0; v < sizes.length; v++) {
+            sizes[v] = views.get(v).snapshot.size;
+        }
+        List<List<int[]>> tasks = splitTasks(sizes);
+        GroupTable total;
+        try {
+            total = scanPool.submit(() -> tasks.parallelStream()
+                .map(ranges -> {
+                    GroupTable table = new GroupTable();
+                    for (int[] range : ranges) {
+                        View view = views.get(range[0]);
+                        scan.run(view.snapshot.columns, view.matching, range[1], range[2], table);
+                    }
+                    return table;
+                })
+                .reduce(GroupTable::mergeInto)
+                .orElseGet(GroupTable::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryCancelledException(QueryTracker.Reason.DEADLINE, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return Optional.of(DaySegmentCache.toRows(query, scan.decode(total)));
+    }
+
+    /**
+     * Splits the row ids of each view into tasks of about CHUNK_ROWS ids each;
+     * small accounts share a task (and its group table).
+     *
+     * @return per task, {view, from, to} ranges covering every row id once
+     */
+    static List<List<int[]>> splitTasks(int[] viewSizes) {
+        List<List<int[]>> tasks = new ArrayList<>();
+        List<int[]> task = new ArrayList<>();
+        int taskRows = 0;
+        for (int v = 0; v < viewSizes.length; v++) {
+            int from = 0;
+            while (from < viewSizes[v]) {
+                int to = Math.min(viewSizes[v], from + CHUNK_ROWS - taskRows);
+                task.add(new int[] {v, from, to});
+                taskRows += to - from;
+                if (taskRows == CHUNK_ROWS) {
+                    tasks.add(task);
+                    task = new ArrayList<>();
+                    taskRows = 0;
+                }
+                from = to;
+            }
+        }
+        if (!task.isEmpty()) {
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * Distinct values per facet dimension with row counts over a date range
+     * inside the window, from bitmap cardinalities (no row scan).
+     *
+     * @param accountId null for all accounts
+     * @return empty if the range is not inside the window
+     */
+    public Optional<Map<String, List<FacetValue>>> facets(UUID accountId, String startDate, String endDate,
+                                                         boolean withCounts) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        LocalDate start;
+        LocalDate end;
+        try {
+            start = LocalDate.parse(startDate);
+            end = endDate == null || endDate.isEmpty() ? LocalDate.now(clock) : LocalDate.parse(endDate);
+        } catch (DateTimeParseException | NullPointerException e) {
+            return Optional.empty();
+        }
+        if (start.isBefore(windowStart())) {
+            return Optional.empty();
+        }
+        List<Map<Integer, Long>> counts = new ArrayList<>();
+        for (int i = 0; i < FACET_INDEXES.length; i++) {
+            counts.add(new HashMap<>());
+        }
+        for (AccountBlock block : blocks(accountId)) {
+            block.countValues((int) start.toEpochDay(), (int) end.toEpochDay(), counts);
+        }
+
+        Map<String, List<FacetValue>> facets = new LinkedHashMap<>();
+        for (int i = 0; i < FACET_INDEXES.length; i++) {
+            String[] values = dictionary(FACET_INDEXES[i]).values();
+            // Sorted by value like the ClickHouse facet query
+            Map<String, Long> sorted = new TreeMap<>();
+            for (Map.Entry<Integer, Long> entry : counts.get(i).entrySet()) {
+                sorted.put(values[entry.getKey()], entry.getValue());
+            }
+            List<FacetValue> facet = new ArrayList<>(sorted.size());
+            for (Map.Entry<String, Long> entry : sorted.entrySet()) {
+                facet.add(new FacetValue(entry.getKey(), withCounts ? entry.getValue() : null));
+            }
+            facets.put(AdMetricsService.FACET_DIMENSIONS.get(i), facet);
+        }
+        return Optional.of(facets);
+    }
+
+    private Collection<AccountBlock> blocks(UUID accountId) {
+        if (accountId == null) {
+            return byAccount.values();
+        }
+        AccountBlock block = byAccount.get(accountId);
+        return block == null ? List.of() : List.of(block);
+    }
+
+    private Dictionary dictionary(int index) {
+        switch (index) {
+            case CAMPAIGN_INDEX: return campaigns;
+            case COUNTRY_INDEX: return countries;
+            case PLATFORM_INDEX: return platforms;
+            default: return browsers;
+        }
+    }
+
+    /** First day kept in memory; the window ends today. */
+    LocalDate windowStart() {
+        return LocalDate.now(clock).minusDays(windowDays - 1);
+    }
+
+    public long rows() {
+        long rows = 0;
+        for (AccountBlock block : byAccount.values()) {
+            rows += block.snapshot.size;
+        }
+        return rows;
+    }
+
+    /** Off-heap bytes reserved for columns (excluding dictionaries). */
+    public long allocatedBytes() {
+        long bytes = 0;
+        for (AccountBlock block : byAccount.values()) {
+            bytes += (long) block.snapshot.columns.capacity * BYTES_PER_ROW;
+        }
+        return bytes;
+    }
+
+    /** Heap bytes held by the bitmap indexes. */
+    public long indexBytes() {
+        long bytes = 0;
+        for (AccountBlock block : byAccount.values()) {
+            bytes += block.indexBytes();
+        }
+        return bytes;
+    }
+
+    /** Column and index bytes per stored row, including growth headroom. */
+    public double bytesPerRow() {
+        long rows = rows();
+        return rows == 0 ? 0 : (double) (allocatedBytes() + indexBytes()) / rows;
+    }
+
+    /** Drops rows that have slid out of the window and trims unused capacity. */
+    void compact() {
+        int start = (int) windowStart().toEpochDay();
+        for (AccountBlock block : byAccount.values()) {
+            block.retainFrom(start);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        compactor.shutdownNow();
+        scanPool.shutdownNow();
+    }
+
+    private void append(UUID accountId, List<Row> rows) {
+        byAccount.computeIfAbsent(accountId, id -> new AccountBlock()).append(rows);
+    }
+
+    private static long toMicros(BigDecimal spent) {
+        return spent.movePointRight(6).longValue();
+    }
+
+    /** Assigns dense codes to values in first-seen order. */
+    private static final class Dictionary {
+        private final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final int maxCodes;
+        private volatile String[] snapshot = new String[0];
+
+        Dictionary(int maxCodes) {
+            this.maxCodes = maxCodes;
+        }
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            return code != null ? code : add(value);
+        }
+
+        private synchronized int add(String value) {
+            Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            if (values.size() >= maxCodes) {
+                throw new IllegalStateException("Too many distinct values for the hot window dictionary");
+            }
+            values.add(value);
+            snapshot = values.toArray(new String[0]);
+            codes.put(value, values.size() - 1);
+            return values.size() - 1;
+        }
+
+        /** Code of a known value, or -1. */
+        int lookup(String value) {
+            Integer code = codes.get(value);
+            return code == null ? -1 : code;
+        }
+
+        String[] values() {
+            return snapshot;
+        }
+    }
+
+    private static final class Row {
+        final int day;
+        final int campaign;
+        final int country;
+        final int platform;
+        final int browser;
+        final long spent;
+        final long impressions;
+        final long clicks;
+
+        Row(int day, int campaign, int country, int platform, int browser, long spent, long impressions, long clicks) {
+            this.day = day;
+            this.campaign = campaign;
+            this.country = country;
+            this.platform = platform;
+            this.browser = browser;
+            this.spent = spent;
+            this.impressions = impressions;
+            this.clicks = clicks;
+        }
+    }
+
+    /** Direct buffers holding {@code capacity} rows; only the owner's writer appends. */
+    private static final class Columns {
+        final int capacity;
+        final IntBuffer day;
+        final IntBuffer campaign;
+        final ShortBuffer country;
+        final ShortBuffer platform;
+        final ShortBuffer browser;
+        final LongBuffer spent;
+        final LongBuffer impressions;
+        final LongBuffer clicks;
+
+        Columns(int capacity) {
+            this.capacity = capacity;
+            this.day = allocate(capacity, 4).asIntBuffer();
+            this.campaign = allocate(capacity, 4).asIntBuffer();
+            this.country = allocate(capacity, 2).asShortBuffer();
+            this.platform = allocate(capacity, 2).asShortBuffer();
+            this.browser = allocate(capacity, 2).asShortBuffer();
+            this.spent = allocate(capacity, 8).asLongBuffer();
+            this.impressions = allocate(capacity, 8).asLongBuffer();
+            this.clicks = allocate(capacity, 8).asLongBuffer();
+        }
+
+        private static ByteBuffer allocate(int rows, int width) {
+            return ByteBuffer.allocateDirect(rows * width).order(ByteOrder.nativeOrder());
+        }
+
+        void copyRow(Columns from, int src, int dst) {
+            day.put(dst, from.day.get(src));
+            campaign.put(dst, from.campaign.get(src));
+            country.put(dst, from.country.get(src));
+            platform.put(dst, from.platform.get(src));
+            browser.put(dst, from.browser.get(src));
+            spent.put(dst, from.spent.get(src));
+            impressions.put(dst, from.impressions.get(src));
+            clicks.put(dst, from.clicks.get(src));
+        }
+    }
+
+    /** Rows [0, size) of columns; published as one object so readers never see a torn pair. */
+    private static final class Snapshot {
+        final Columns columns;
+        final int size;
+
+        Snapshot(Columns columns, int size) {
+            this.columns = columns;
+            this.size = size;
+        }
+    }
+
+    /** The rows of a block visible to one query, and the ones matching its filters (null = all). */
+    private static final class View {
+        final Snapshot snapshot;
+        final RoaringBitmap matching;
+
+        View(Snapshot snapshot, RoaringBitmap matching) {
+            this.snapshot = snapshot;
+            this.matching = matching;
+        }
+
+        long rows() {
+            return matching == null ? snapshot.size : matching.getLongCardinality();
+        }
+    }
+
+    /**
+     * One account's rows plus a bitmap index of row ids per day and per
+     * dimension value. Columns are read lock-free through snapshots; bitmaps are
+     * mutable, so they are only touched under the lock.
+     */
+    private static final class AccountBlock {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private List<Map<Integer, RoaringBitmap>> index = newIndex();
+        volatile Snapshot snapshot = new Snapshot(new Columns(INITIAL_CAPACITY), 0);
+
+        private static List<Map<Integer, RoaringBitmap>> newIndex() {
+            // Days are range-queried, so they are kept sorted
+            return List.of(new TreeMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+        }
+
+        void append(List<Row> rows) {
+            lock.writeLock().lock();
+            try {
+                Snapshot current = snapshot;
+                Columns columns = current.columns;
+                int size = current.size;
+                if (size + rows.size() > columns.capacity) {
+                    // Readers keep the old buffers; rows below their size are never rewritten
+                    Columns grown = new Columns(Math.max(columns.capacity * 2, size + rows.size()));
+                    for (int i = 0; i < size; i++) {
+                        grown.copyRow(columns, i, i);
+                    }
+                    columns = grown;
+                }
+                for (Row row : rows) {
+                    columns.day.put(size, row.day);
+                    columns.campaign.put(size, row.campaign);
+                    columns.country.put(size, (short) row.country);
+                    columns.platform.put(size, (short) row.platform);
+                    columns.browser.put(size, (short) row.browser);
+                    columns.spent.put(size, row.spent);
+                    columns.impressions.put(size, row.impressions);
+                    columns.clicks.put(size, row.clicks);
+                    indexRow(row.day, row.campaign, row.country, row.platform, row.browser, size);
+                    size++;
+                }
+                snapshot = new Snapshot(columns, size);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void indexRow(int day, int campaign, int country, int platform, int browser, int rowId) {
+            index.get(DAY_INDEX).computeIfAbsent(day, k -> new RoaringBitmap()).add(rowId);
+            index.get(CAMPAIGN_INDEX).computeIfAbsent(campaign, k -> new RoaringBitmap()).add(rowId);
+            index.get(COUNTRY_INDEX).computeIfAbsent(country, k -> new RoaringBitmap()).add(rowId);
+            index.get(PLATFORM_INDEX).computeIfAbsent(platform, k -> new RoaringBitmap()).add(rowId);
+            index.get(BROWSER_INDEX).computeIfAbsent(browser, k -> new RoaringBitmap()).add(rowId);
+        }
+
+        /** Snapshot plus the rows passing the scan's day range and filters, as one consistent pair. */
+        View select(Scan scan) {
+            lock.readLock().lock();
+            try {
+                List<RoaringBitmap> conditions = new ArrayList<>();
+                NavigableMap<Integer, RoaringBitmap> days = (NavigableMap<Integer, RoaringBitmap>) index.get(DAY_INDEX);
+                if (!days.isEmpty() && (days.firstKey() < scan.startDay || days.lastKey() > scan.endDay)) {
+                    conditions.add(FastAggregation.or(days.subMap(scan.startDay, true, scan.endDay, true).values().iterator()));
+                }
+                for (int slot = CAMPAIGN_INDEX; slot <= BROWSER_INDEX; slot++) {
+                    int[] codes = scan.filters[slot];
+                    if (codes == null) {
+                        continue;
+                    }
+                    // Multi-valued filters are the union of their values' bitmaps
+                    List<RoaringBitmap> values = new ArrayList<>();
+                    for (int code : codes) {
+                        RoaringBitmap bitmap = index.get(slot).get(code);
+                        if (bitmap != null) {
+                            values.add(bitmap);
+                        }
+                    }
+                    conditions.add(FastAggregation.or(values.iterator()));
+                }
+                // Fresh bitmap: the index keeps changing after the lock is released
+                RoaringBitmap matching = conditions.isEmpty() ? null
+                    : conditions.size() == 1 ? conditions.get(0).clone() : FastAggregation.and(conditions.iterator());
+                return new View(snapshot, matching);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /** Adds per-value row counts within the day range, per facet dimension. */
+        void countValues(int startDay, int endDay, List<Map<Integer, Long>> counts) {
+            lock.readLock().lock();
+            try {
+                NavigableMap<Integer, RoaringBitmap> days = (NavigableMap<Integer, RoaringBitmap>) index.get(DAY_INDEX);
+                RoaringBitmap inRange = FastAggregation.or(days.subMap(startDay, true, endDay, true).values().iterator());
+                if (inRange.isEmpty()) {
+                    return;
+                }
+                for (int i = 0; i < FACET_INDEXES.length; i++) {
+                    for (Map.Entry<Integer, RoaringBitmap> value : index.get(FACET_INDEXES[i]).entrySet()) {
+                        long count = RoaringBitmap.andCardinality(value.getValue(), inRange);
+                        if (count > 0) {
+                            counts.get(i).merge(value.getKey(), count, Long::sum);
+                        }
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long indexBytes() {
+            lock.readLock().lock();
+            try {
+                long bytes = 0;
+                for (Map<Integer, RoaringBitmap> slot : index) {
+                    for (RoaringBitmap bitmap : slot.values()) {
+                        bytes += bitmap.getLongSizeInBytes();
+                    }
+                }
+                return bytes;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void retainFrom(int startDay) {
+            lock.writeLock().lock();
+            try {
+                Snapshot current = snapshot;
+                int kept = 0;
+                for (int i = 0; i < current.size; i++) {
+                    if (current.columns.day.get(i) >= startDay) {
+                        kept++;
+                    }
+                }
+                if (kept == current.size && current.columns.capacity <= Math.max(INITIAL_CAPACITY, kept * 2)) {
+                    return;
+                }
+                // Row ids change, so the index is rebuilt along with the columns
+                Columns compacted = new Columns(Math.max(INITIAL_CAPACITY, kept + kept / 4));
+                index = newIndex();
+                int dst = 0;
+                for (int i = 0; i < current.size; i++) {
+                    if (current.columns.day.get(i) >= startDay) {
+                        compacted.copyRow(current.columns, i, dst);
+                        indexRow(compacted.day.get(dst), compacted.campaign.get(dst), compacted.country.get(dst) & 0xFFFF,
+                            compacted.platform.get(dst) & 0xFFFF, compacted.browser.get(dst) & 0xFFFF, dst);
+                        dst++;
+                    }
+                }
+                for (Map<Integer, RoaringBitmap> slot : index) {
+                    for (RoaringBitmap bitmap : slot.values()) {
+                        bitmap.runOptimize();
+                    }
+                }
+                snapshot = new Snapshot(compacted, dst);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * A planned scan: day range, filter codes and the mixed-radix group key
+     * layout, fixed against the dictionary sizes at planning time. Row
+     * selection itself is done with the blocks' bitmaps.
+     */
+    private static final class Scan {
+        // Indexes into AggregationQuery.DIMENSIONS
+        private static final int DAY = 0, WEEK = 1, MONTH = 2, CAMPAIGN = 3, COUNTRY = 4, PLATFORM = 5, BROWSER = 6;
+
+        final int startDay;
+        final int endDay;
+        // Filter codes per bitmap index slot; null where the dimension is not filtered
+        final int[][] filters = new int[BROWSER_INDEX + 1][];
+        final int timeBase;
+        int[] dims;
+        long[] strides;
+        long[] radixes;
+        String[][] dictionaries;
+
+        Scan(AggregationQuery query, LocalDate start, LocalDate end, HotWindowStore store) {
+            startDay = (int) start.toEpochDay();
+            endDay = (int) end.toEpochDay();
+            filters[CAMPAIGN_INDEX] = filterCodes(store.campaigns, query.getCampaignFilter());
+            filters[COUNTRY_INDEX] = filterCodes(store.countries, query.getCountryFilter());
+            filters[PLATFORM_INDEX] = filterCodes(store.platforms, query.getPlatformFilter());
+            filters[BROWSER_INDEX] = filterCodes(store.browsers, query.getBrowserFilter());
+            // A week or month bucket can start up to 30 days before the first day in range
+            timeBase = startDay - 31;
+        }
+
+        /**
+         * Fixes the group key layout against the current dictionary sizes.
+         *
+         * @return false if the possible groups do not fit a long key
+         */
+        boolean layout(AggregationQuery query, HotWindowStore store) {
+            dictionaries = new String[][] {null, null, null, store.campaigns.values(), store.countries.values(),
+                store.platforms.values(), store.browsers.values()};
+            List<String> groupBy = query.getGroupBy();
+            dims = new int[groupBy.size()];
+            strides = new long[groupBy.size()];
+            radixes = new long[groupBy.size()];
+            long stride = 1;
+            try {
+                for (int i = groupBy.size() - 1; i >= 0; i--) {
+                    int dim = AggregationQuery.DIMENSIONS.indexOf(groupBy.get(i));
+                    if (dim < 0) {
+                        return false;
+                    }
+                    dims[i] = dim;
+                    radixes[i] = dim <= MONTH ? endDay - timeBase + 1 : Math.max(1, dictionaries[dim].length);
+                    strides[i] = stride;
+                    stride = Math.multiplyExact(stride, radixes[i]);
+                }
+            } catch (ArithmeticException e) {
+                return false;
+            }
+            return true;
+        }
+
+        private static int[] filterCodes(Dictionary dictionary, String value) {
+            if (!AggregationQuery.isActiveFilter(value)) {
+                return null;
+            }
+            // An unknown value matches nothing
+            int code = dictionary.lookup(value);
+            return code < 0 ? new int[0] : new int[] {code};
+        }
+
+        /** Aggregates rows [from, to) that are in {@code matching} (all of them if null). */
+        void run(Columns c, RoaringBitmap matching, int from, int to, GroupTable table) {
+            if (matching == null) {
+                for (int i = from; i < to; i++) {
+                    addRow(c, i, table);
+                }
+                return;
+            }
+            PeekableIntIterator rows = matching.getIntIterator();
+            rows.advanceIfNeeded(from);
+            while (rows.hasNext() && rows.peekNext() < to) {
+                addRow(c, rows.next(), table);
+            }
+        }
+
+        private void addRow(Columns c, int i, GroupTable table) {
+            int day = c.day.get(i);
+            long key = 0;
+            for (int d = 0; d < dims.length; d++) {
+                key += strides[d] * component(c, i, day, dims[d]);
+            }
+            table.add(key, c.spent.get(i), c.impressions.get(i), c.clicks.get(i), 1);
+        }
+
+        private long component(Columns c, int i, int day, int dim) {
+            switch (dim) {
+                case DAY: return day - timeBase;
+                case WEEK: return LocalDate.ofEpochDay(day).with(DayOfWeek.MONDAY).toEpochDay() - timeBase;
+                case MONTH: return LocalDate.ofEpochDay(day).withDayOfMonth(1).toEpochDay() - timeBase;
+                case CAMPAIGN: return c.campaign.get(i);
+                case COUNTRY: return c.country.get(i) & 0xFFFF;
+                case PLATFORM: return c.platform.get(i) & 0xFFFF;
+                default: return c.browser.get(i) & 0xFFFF;
+            }
+        }
+
+        Map<List<Object>, DaySegmentCache.Partial> decode(GroupTable table) {
+            Map<List<Object>, DaySegmentCache.Partial> groups = new LinkedHashMap<>();
+            if (dims.length == 0 && table.size == 0) {
+                return groups;
+            }
+            for (int slot = 0; slot < table.keys.length; slot++) {
+                long key = table.keys[slot];
+                if (key == GroupTable.FREE) {
+                    continue;
+                }
+                List<Object> values = new ArrayList<>(dims.length);
+                for (int d = 0; d < dims.length; d++) {
+                    int code = (int) ((key / strides[d]) % radixes[d]);
+                    values.add(dims[d] <= MONTH ? LocalDate.ofEpochDay(timeBase + code) : dictionaries[dims[d]][code]);
+                }
+                groups.put(values, new DaySegmentCache.Partial(BigDecimal.valueOf(table.spent[slot], 6),
+                    table.impressions[slot], table.clicks[slot], table.count[slot]));
+            }
+            return groups;
+        }
+    }
+
+    /** Open-addressing map from packed group key to summed metrics. */
+    static final class GroupTable {
+        static final long FREE = -1;
+
+        long[] keys;
+        long[] spent;
+        long[] impressions;
+        long[] clicks;
+        long[] count;
+        int size;
+
+        GroupTable() {
+            allocate(16);
+        }
+
+        private void allocate(int slots) {
+            keys = new long[slots];
+            Arrays.fill(keys, FREE);
+            spent = new long[slots];
+            impressions = new long[slots];
+            clicks = new long[slots];
+            count = new long[slots];
+        }
+
+        void add(long key, long spentValue, long impressionsValue, long clicksValue, long rows) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (keys[slot] != FREE && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == FREE) {
+                keys[slot] = key;
+                size++;
+            }
+            spent[slot] += spentValue;
+            impressions[slot] += impressionsValue;
+            clicks[slot] += clicksValue;
+            count[slot] += rows;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys, oldSpent = spent, oldImpressions = impressions, oldClicks = clicks, oldCount = count;
+            allocate(keys.length * 2);
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != FREE) {
+                    add(oldKeys[slot], oldSpent[slot], oldImpressions[slot], oldClicks[slot], oldCount[slot]);
+                }
+            }
+        }
+
+        /** Adds the smaller table into the larger one and returns it; both are consumed. */
+        static GroupTable mergeInto(GroupTable target, GroupTable other) {
+            GroupTable larger = target.size >= other.size ? target : other;
+            GroupTable smaller = larger == target ? other : target;
+            for (int slot = 0; slot < smaller.keys.length; slot++) {
+                if (smaller.keys[slot] != FREE) {
+                    larger.add(smaller.keys[slot], smaller.spent[slot], smaller.impressions[slot],
+                        smaller.clicks[slot], smaller.count[slot]);
+                }
+            }
+            return larger;
+        }
+
+        private static long mix(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return key ^ (key >>> 32);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Account;
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Account store that keeps every account in an in-memory index keyed by email.
+ * The index is warmed from ClickHouse on startup and written through on signup,
+ * so lookups never hit the database. Uniqueness is enforced by reserving the
+ * email in the index before the insert is issued.
+ */
+@Component
+@ConditionalOnProperty(name = "app.accounts.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryAccountStore implements AccountStore {
+    private static final DateTimeFormatter CREATED_AT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentMap<String, Account> accountsByEmail = new ConcurrentHashMap<>();
+
+    public InMemoryAccountStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void warm() {
+        // Oldest row wins if the table already contains duplicate emails
+        QuerySettings.run(QuerySettings.AUTH, () -> jdbcTemplate.query(
+                "SELECT id, email, password_hash, toString(created_at) created_at FROM appdb.accounts ORDER BY created_at",
+                rs -> {
+                    Account account = new Account(
+                            UUID.fromString(rs.getString("id")),
+                            rs.getString("email"),
+                            rs.getString("password_hash"),
+                            rs.getString("created_at")
+                    );
+                    accountsByEmail.putIfAbsent(account.getEmail(), account);
+                }));
+    }
+
+    @Override
+    public Optional<Account> findByEmail(String email) {
+        return Optional.ofNullable(accountsByEmail.get(email));
+    }
+
+    @Override
+    public Account create(Account account) {
+        Account stored = account.getCreatedAt() == null || account.getCreatedAt().isEmpty()
+                ? new Account(account.getId(), account.getEmail(), account.getPasswordHash(), LocalDateTime.now().format(CREATED_AT_FORMAT))
+                : account;
+        if (accountsByEmail.putIfAbsent(stored.getEmail(), stored) != null) {
+            throw new DuplicateKeyException("Email already registered: " + stored.getEmail());
+        }
+        try {
+            QuerySettings.run(QuerySettings.AUTH, () -> jdbcTemplate.update(
+                    "INSERT INTO appdb.accounts (id, email, password_hash) VALUES (?, ?, ?)",
+                    stored.getId().toString(), stored.getEmail(), stored.getPasswordHash()));
+        } catch (RuntimeException e) {
+            // Release the reservation so the user can retry
+            accountsByEmail.remove(stored.getEmail(), stored);
+            throw e;
+        }
+        return stored;
+    }
+}
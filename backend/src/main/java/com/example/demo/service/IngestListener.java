@@ -0,0 +1,14 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+
+import java.util.List;
+
+/**
+ * Notified by {@link AdEventIngestService} after a batch of rows has been written,
+ * so in-memory structures derived from {@code ads_metrics} can stay current
+ * without re-reading the table.
+ */
+public interface IngestListener {
+    void onIngested(List<AdEvent> events);
+}
@@ -0,0 +1,59 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Account;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Account store that goes to ClickHouse for every lookup. Kept for deployments
+ * running several backend replicas without a shared account cache.
+ */
+@Component
+@ConditionalOnProperty(name = "app.accounts.store", havingValue = "clickhouse")
+public class JdbcAccountStore implements AccountStore {
+    private final JdbcTemplate jdbcTemplate;
+    // Emails with a signup in progress on this instance
+    private final Set<String> pendingEmails = ConcurrentHashMap.newKeySet();
+
+    public JdbcAccountStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Optional<Account> findByEmail(String email) {
+        return QuerySettings.run(QuerySettings.AUTH, () -> jdbcTemplate.query(
+                "SELECT id, email, password_hash, toString(created_at) created_at FROM appdb.accounts WHERE email = ? LIMIT 1",
+                rs -> rs.next() ? Optional.of(new Account(
+                        UUID.fromString(rs.getString("id")),
+                        rs.getString("email"),
+                        rs.getString("password_hash"),
+                        rs.getString("created_at")
+                )) : Optional.<Account>empty(), email));
+    }
+
+    @Override
+    public Account create(Account account) {
+        String email = account.getEmail();
+        if (!pendingEmails.add(email)) {
+            throw new DuplicateKeyException("Email already registered: " + email);
+        }
+        try {
+            if (findByEmail(email).isPresent()) {
+                throw new DuplicateKeyException("Email already registered: " + email);
+            }
+            QuerySettings.run(QuerySettings.AUTH, () -> jdbcTemplate.update(
+                    "INSERT INTO appdb.accounts (id, email, password_hash) VALUES (?, ?, ?)",
+                    account.getId().toString(), email, account.getPasswordHash()));
+            return account;
+        } finally {
+            pendingEmails.remove(email);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import com.example.demo.model.ProgressiveFrame;
+import com.example.demo.ratelimit.TenantRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Online aggregation for long ranges: the range is split along the table's
+ * monthly partitions, the months are aggregated concurrently, and after each one
+ * completes the merged result so far is handed to the caller. Months run on as
+ * many lanes as the tenant has in-flight slots to spare, up to the pool size. The first frame
+ * arrives after one month's latency; the last one covers the whole range.
+ * <p>
+ * Every month goes through {@link AggregationService} and is admitted, tracked
+ * and cancelled like any other query of the request.
+ */
+@Component
+public class ProgressiveAggregationService {
+    private final AggregationService aggregationService;
+    private final QueryTracker queryTracker;
+    private final TenantRateLimiter tenantRateLimiter;
+    private final int threads;
+    private final ThreadPoolExecutor executor;
+    private final MeterRegistry meterRegistry;
+
+    public ProgressiveAggregationService(AggregationService aggregationService, QueryTracker queryTracker,
+                                         TenantRateLimiter tenantRateLimiter,
+                                         @Value("${app.progressive.threads:4}") int threads,
+                                         MeterRegistry meterRegistry) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.aggregationService = aggregationService;
+        this.queryTracker = queryTracker;
+        this.tenantRateLimiter = tenantRateLimiter;
+        this.threads = threads;
+        this.meterRegistry = meterRegistry;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "progressive-aggregation-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        meterRegistry.gauge("query.progressive.queue", executor, e -> e.getQueue().size());
+    }
+
+    /**
+     * Starts aggregating the query month by month. {@code onFrame} is called once
+     * per completed month, one call at a time, the last call with the complete
+     * result. Must be called on the request thread so the months are tracked
+     * under the request.
+     *
+     * @return completes after the last frame, or exceptionally with the first failure
+     */
+    public CompletableFuture<Void> aggregate(AggregationQuery query, Consumer<ProgressiveFrame> onFrame) {
+        List<AggregationQuery> partitions = partitions(query);
+        QueryTracker.TrackedRequest tracked = queryTracker.current();
+        Map<List<Object>, DaySegmentCache.Partial> merged = new HashMap<>();
+        List<String> covered = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        long started = System.nanoTime();
+
+        // The request already holds one of the tenant's in-flight slots; every further
+        // month running concurrently needs its own, so the fan-out never exceeds the
+        // tenant's remaining allowance
+        int lanes = 1;
+        while (lanes < Math.min(threads, partitions.size())
+                && tenantRateLimiter.tryAcquireInFlight(query.getAccountId(), query.isAdmin())) {
+            lanes++;
+        }
+        Queue<AggregationQuery> pending = new ConcurrentLinkedQueue<>(partitions);
+        List<CompletableFuture<Void>> months = new ArrayList<>();
+        for (int lane = 0; lane < lanes; lane++) {
+            boolean extraSlot = lane > 0;
+            months.add(CompletableFuture.runAsync(() -> {
+                queryTracker.attach(tracked);
+                try {
+                    AggregationQuery partition;
+                    // After a failure the result is lost anyway, so the remaining months are skipped
+                    while (!failed.get() && (partition = pending.poll()) != null) {
+                        List<AggregatedMetrics> rows = aggregationService.getAggregatedData(partition);
+                        publish(query, partition, rows, merged, covered, partitions.size(), failed, started, onFrame);
+                    }
+                } catch (RuntimeException e) {
+                    failed.set(true);
+                    throw e;
+                } finally {
+                    queryTracker.attach(null);
+                    if (extraSlot) {
+                        tenantRateLimiter.release(query.getAccountId());
+                    }
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(months.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((ignored, e) -> meterRegistry.timer("query.progressive.total", "result", e == null ? "ok" : "error")
+                        .record(System.nanoTime() - started, TimeUnit.NANOSECONDS));
+    }
+
+    private void publish(AggregationQuery query, AggregationQuery partition, List<AggregatedMetrics> rows,
+                         Map<List<Object>, DaySegmentCache.Partial> merged, List<String> covered, int months,
+                         AtomicBoolean failed, long started, Consumer<ProgressiveFrame> onFrame) {
+        synchronized (merged) {
+            if (failed.get()) {
+                return;
+            }
+            merge(query, rows, merged);
+            covered.add(partition.getStartDate() + ".." + partition.getEndDate());
+            if (covered.size() == 1) {
+                meterRegistry.timer("query.progressive.first_frame")
+                        .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+            onFrame.accept(new ProgressiveFrame(DaySegmentCache.toRows(query, merged), covered.size(),
+                    months, new ArrayList<>(covered)));
+        }
+    }
+
+    /** Unwraps the failure of {@link #aggregate}'s future to the exception a month threw. */
+    public static Throwable cause(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * The query clipped to each calendar month it touches. Months ask for every
+     * base metric so ratios and ratio sorts can be recomputed after merging.
+     */
+    static List<AggregationQuery> partitions(AggregationQuery query) {
+        LocalDate start = LocalDate.parse(query.getStartDate());
+        LocalDate end = LocalDate.parse(query.getEndDate());
+        if (end.isBefore(start)) {
+            throw new IllegalArgumentException("endDate is before startDate");
+        }
+        AggregationQuery sums = new AggregationQuery(query.getAccountId(), query.isAdmin(), query.getGroupBy(),
+                AggregationQuery.METRICS, query.getCountryFilter(), query.getCampaignFilter(), query.getPlatformFilter(),
+                query.getBrowserFilter(), "", "asc", query.getStartDate(), query.getEndDate());
+        List<AggregationQuery> partitions = new ArrayList<>();
+        for (LocalDate from = start; !from.isAfter(end); from = from.with(TemporalAdjusters.firstDayOfNextMonth())) {
+            LocalDate to = from.with(TemporalAdjusters.lastDayOfMonth());
+            partitions.add(sums.withDateRange(from.toString(), (to.isAfter(end) ? end : to).toString()));
+        }
+        return partitions;
+    }
+
+    private static void merge(AggregationQuery query, List<AggregatedMetrics> rows,
+                              Map<List<Object>, DaySegmentCache.Partial> merged) {
+        for (AggregatedMetrics row : rows) {
+            List<Object> key = new ArrayList<>(query.getGroupBy().size());
+            for (String dim : query.getGroupBy()) {
+                key.add(row.getDimensions().get(dim));
+            }
+            merged.computeIfAbsent(key, k -> new DaySegmentCache.Partial()).add(new DaySegmentCache.Partial(
+                    row.getTotalSpent() == null ? BigDecimal.ZERO : row.getTotalSpent(),
+                    row.getTotalImpressions(), row.getTotalClicks(), row.getRecordCount()));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
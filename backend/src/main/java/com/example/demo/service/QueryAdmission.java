@@ -0,0 +1,95 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Admits aggregation queries into cheap/medium/heavy lanes by estimated cost,
+ * each with its own concurrency limit, so a few expensive reports cannot hold
+ * the connections interactive traffic needs. Queries over the hard budget are
+ * refused outright.
+ */
+@Component
+public class QueryAdmission {
+    public enum Lane { CHEAP, MEDIUM, HEAVY }
+
+    private final long cheapMaxCost;
+    private final long mediumMaxCost;
+    private final long interactiveBudget;
+    private final long exportBudget;
+    private final long laneWaitMs;
+    private final Map<Lane, Semaphore> lanes = new EnumMap<>(Lane.class);
+    private final MeterRegistry meterRegistry;
+
+    public QueryAdmission(@Value("${app.admission.cheap-max-cost:2000000}") long cheapMaxCost,
+                          @Value("${app.admission.medium-max-cost:50000000}") long mediumMaxCost,
+                          @Value("${app.admission.interactive-budget:500000000}") long interactiveBudget,
+                          @Value("${app.admission.export-budget:2000000000}") long exportBudget,
+                          @Value("${app.admission.cheap-concurrency:8}") int cheapConcurrency,
+                          @Value("${app.admission.medium-concurrency:3}") int mediumConcurrency,
+                          @Value("${app.admission.heavy-concurrency:1}") int heavyConcurrency,
+                          @Value("${app.admission.lane-wait-ms:2000}") long laneWaitMs,
+                          MeterRegistry meterRegistry) {
+        this.cheapMaxCost = cheapMaxCost;
+        this.mediumMaxCost = mediumMaxCost;
+        this.interactiveBudget = interactiveBudget;
+        this.exportBudget = exportBudget;
+        this.laneWaitMs = laneWaitMs;
+        this.meterRegistry = meterRegistry;
+        lanes.put(Lane.CHEAP, new Semaphore(cheapConcurrency, true));
+        lanes.put(Lane.MEDIUM, new Semaphore(mediumConcurrency, true));
+        lanes.put(Lane.HEAVY, new Semaphore(heavyConcurrency, true));
+        lanes.forEach((lane, permits) -> meterRegistry.gauge("query.admission.available",
+                Tags.of("lane", lane.name().toLowerCase()), permits, Semaphore::availablePermits));
+    }
+
+    /** Lane for a cost estimate; unknown costs (-1) are treated as medium. */
+    public Lane classify(long cost) {
+        if (cost < 0) return Lane.MEDIUM;
+        if (cost <= cheapMaxCost) return Lane.CHEAP;
+        if (cost <= mediumMaxCost) return Lane.MEDIUM;
+        return Lane.HEAVY;
+    }
+
+    /**
+     * Runs the work inside the lane matching its cost.
+     *
+     * @param export exports may exceed the interactive budget up to the export budget
+     * @throws QueryRejectedException 422 if over budget, 429 if the lane stays full
+     */
+    public <T> T execute(long cost, boolean export, Supplier<T> work) {
+        long budget = export ? exportBudget : interactiveBudget;
+        if (cost > budget) {
+            meterRegistry.counter("query.admission.rejected", "reason", "budget").increment();
+            throw new QueryRejectedException(
+                    "Query is too expensive; narrow the date range or grouping" + (export ? "" : ", or use export"), 422, 0);
+        }
+        Lane lane = classify(cost);
+        Semaphore permits = lanes.get(lane);
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(laneWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            meterRegistry.counter("query.admission.rejected", "reason", "lane_full", "lane", lane.name().toLowerCase()).increment();
+            throw new QueryRejectedException("Too many " + lane.name().toLowerCase() + " queries running, please retry later", 429, 1);
+        }
+        meterRegistry.counter("query.admission.admitted", "lane", lane.name().toLowerCase()).increment();
+        try {
+            return work.get();
+        } finally {
+            permits.release();
+        }
+    }
+}
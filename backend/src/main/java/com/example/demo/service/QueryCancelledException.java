@@ -0,0 +1,18 @@
+package com.example.demo.service;
+
+import org.springframework.dao.TransientDataAccessException;
+
+/**
+ * Raised in place of the driver error when a tracked query was killed on purpose
+ * by {@link QueryTracker}.
+ */
+public class QueryCancelledException extends TransientDataAccessException {
+    private final QueryTracker.Reason reason;
+
+    public QueryCancelledException(QueryTracker.Reason reason, Throwable cause) {
+        super("Query cancelled: " + reason.name().toLowerCase(), cause);
+        this.reason = reason;
+    }
+
+    public QueryTracker.Reason getReason() { return reason; }
+}
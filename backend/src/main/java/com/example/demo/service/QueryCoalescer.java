@@ -0,0 +1,93 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of identical concurrent queries. The first caller for
+ * a key runs the work on its own thread (keeping its {@link QueryTracker} scope
+ * and admission slot); callers arriving while it is in flight wait for the same
+ * result, each bounded by its own request deadline. Results are shared, so they
+ * must be treated as read-only.
+ */
+@Component
+public class QueryCoalescer {
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final QueryTracker queryTracker;
+    private final long defaultWaitMs;
+    private final MeterRegistry meterRegistry;
+
+    public QueryCoalescer(QueryTracker queryTracker,
+                          @Value("${app.coalescing.default-wait-ms:15000}") long defaultWaitMs,
+                          MeterRegistry meterRegistry) {
+        this.queryTracker = queryTracker;
+        this.defaultWaitMs = defaultWaitMs;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gaugeMapSize("query.coalescing.in_flight", Collections.emptyList(), inFlight);
+    }
+
+    /**
+     * Runs {@code work} unless an identical query is already in flight, in which
+     * case its result (or failure) is returned instead.
+     *
+     * @throws QueryCancelledException if this caller's deadline passes while waiting
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> work) {
+        while (true) {
+            CompletableFuture<Object> mine = new CompletableFuture<>();
+            CompletableFuture<Object> leader = inFlight.putIfAbsent(key, mine);
+            if (leader == null) {
+                meterRegistry.counter("query.coalescing.executed").increment();
+                return (T) lead(key, mine, work);
+            }
+            meterRegistry.counter("query.coalescing.joined").increment();
+            try {
+                return (T) leader.get(waitMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new QueryCancelledException(QueryTracker.Reason.DEADLINE, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new QueryCancelledException(QueryTracker.Reason.DEADLINE, e);
+            } catch (ExecutionException e) {
+                // The leader's own request was cancelled; that says nothing about
+                // this one, so run it again (most likely as the new leader)
+                if (e.getCause() instanceof QueryCancelledException) {
+                    continue;
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private Object lead(String key, CompletableFuture<Object> future, Supplier<?> work) {
+        try {
+            Object result = work.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private long waitMillis() {
+        QueryTracker.TrackedRequest request = queryTracker.current();
+        return request != null ? request.remainingMillis() : defaultWaitMs;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.demo.service;
+
+/**
+ * Thrown when a query is not admitted for execution. Carries the HTTP status the
+ * controllers should answer with and, for transient rejections, a retry hint.
+ */
+public class QueryRejectedException extends RuntimeException {
+    private final int status;
+    private final long retryAfterSeconds;
+
+    public QueryRejectedException(String message, int status, long retryAfterSeconds) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getStatus() { return status; }
+    public long getRetryAfterSeconds() { return retryAfterSeconds; }
+}
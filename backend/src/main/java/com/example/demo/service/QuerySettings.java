@@ -0,0 +1,160 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Named ClickHouse settings profiles applied to each statement, so exports run
+ * with fewer threads and lower priority than interactive requests and large
+ * group-bys spill to disk instead of failing on the memory limit.
+ * <p>
+ * API requests get their profile from {@code QueryTrackingInterceptor} (per
+ * endpoint, admin vs tenant). Account lookups and work outside a request
+ * (ingest, background builds) select one with {@link #run}. Only settings
+ * configured under {@code app.query.settings.<profile>.<setting>} are sent; the
+ * rest keep the server default. The profile also picks the connection pool.
+ * <p>
+ * Statements marked with {@link #readingUpTo} whose last day is at least
+ * {@code app.query-cache.min-age-days} old also opt into ClickHouse's query
+ * cache for the profile's {@code query-cache-ttl} seconds. Those days no longer
+ * change except through late ingest, which the TTL bounds.
+ */
+@Component
+public class QuerySettings {
+    public static final String INTERACTIVE = "interactive";
+    public static final String ADMIN = "admin";
+    public static final String EXPORT = "export";
+    public static final String INGEST = "ingest";
+    public static final String AUTH = "auth";
+    public static final List<String> PROFILES = List.of(INTERACTIVE, ADMIN, EXPORT, INGEST, AUTH);
+    static final List<String> SETTINGS = List.of("max_threads", "priority", "max_memory_usage",
+            "max_bytes_before_external_group_by", "max_result_rows", "query_cache_ttl");
+    private static final String QUERY_CACHE_TTL = "query_cache_ttl";
+
+    private static final ThreadLocal<String> SCOPED = new ThreadLocal<>();
+    private static final ThreadLocal<LocalDate> LAST_DAY_READ = new ThreadLocal<>();
+
+    private final Map<String, Map<String, Long>> profiles;
+    private final int minAgeDays;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public QuerySettings(Environment environment, @Value("${app.query-cache.min-age-days:1}") int minAgeDays,
+                         MeterRegistry meterRegistry) {
+        this(load(environment), minAgeDays, Clock.systemUTC(), meterRegistry);
+    }
+
+    QuerySettings(Map<String, Map<String, Long>> profiles, int minAgeDays, Clock clock, MeterRegistry meterRegistry) {
+        this.profiles = profiles;
+        this.minAgeDays = minAgeDays;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        for (Map.Entry<String, Map<String, Long>> profile : profiles.entrySet()) {
+            for (Map.Entry<String, Long> setting : profile.getValue().entrySet()) {
+                // Held strongly by the profile map, which lives as long as this bean
+                meterRegistry.gauge("query.settings", Tags.of("profile", profile.getKey(), "setting", setting.getKey()),
+                        setting.getValue(), Long::doubleValue);
+            }
+        }
+    }
+
+    private static Map<String, Map<String, Long>> load(Environment environment) {
+        Map<String, Map<String, Long>> profiles = new HashMap<>();
+        for (String profile : PROFILES) {
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (String setting : SETTINGS) {
+                Long value = environment.getProperty("app.query.settings." + profile + "." + setting.replace('_', '-'), Long.class);
+                if (value != null) {
+                    values.put(setting, value);
+                }
+            }
+            profiles.put(profile, Collections.unmodifiableMap(values));
+        }
+        return profiles;
+    }
+
+    /** Runs {@code work} with its statements under {@code profile}, whatever request it is part of. */
+    public static <T> T run(String profile, Supplier<T> work) {
+        String previous = SCOPED.get();
+        SCOPED.set(profile);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                SCOPED.remove();
+            } else {
+                SCOPED.set(previous);
+            }
+        }
+    }
+
+    public static void run(String profile, Runnable work) {
+        run(profile, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /** Profile selected with {@link #run} on this thread, or null. */
+    public static String scoped() {
+        return SCOPED.get();
+    }
+
+    /** Profile of a statement issued now: the one selected with {@link #run}, else the request's, or null. */
+    public static String current(QueryTracker.TrackedRequest request) {
+        String profile = SCOPED.get();
+        return profile == null && request != null ? request.getSettingsProfile() : profile;
+    }
+
+    /**
+     * Runs {@code work}, whose statements read no day after {@code lastDay}, so
+     * they may be served from the query cache once that day is old enough.
+     */
+    public static <T> T readingUpTo(LocalDate lastDay, Supplier<T> work) {
+        LocalDate previous = LAST_DAY_READ.get();
+        LAST_DAY_READ.set(lastDay);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                LAST_DAY_READ.remove();
+            } else {
+                LAST_DAY_READ.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Settings to apply to one statement run under {@code profile} on this
+     * thread; empty for unknown or null profiles.
+     */
+    public Map<String, Long> forStatement(String profile) {
+        if (profile == null) {
+            return Map.of();
+        }
+        meterRegistry.counter("query.settings.statements", "profile", profile).increment();
+        Map<String, Long> settings = new LinkedHashMap<>(profiles.getOrDefault(profile, Map.of()));
+        Long ttl = settings.remove(QUERY_CACHE_TTL);
+        LocalDate lastDay = LAST_DAY_READ.get();
+        if (ttl != null && ttl > 0 && lastDay != null && lastDay.isBefore(LocalDate.now(clock).minusDays(minAgeDays - 1L))) {
+            settings.put("use_query_cache", 1L);
+            settings.put(QUERY_CACHE_TTL, ttl);
+            meterRegistry.counter("query.settings.query_cache", "profile", profile).increment();
+        }
+        return settings;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the ClickHouse statements issued on behalf of each API request
+ * so they can be killed when the request's deadline passes or when the same
+ * client fires a newer request that supersedes it. Statement.cancel() in the
+ * ClickHouse driver issues {@code KILL QUERY} for the statement's query id, which
+ * also makes the executing thread return its pooled connection immediately.
+ */
+@Component
+public class QueryTracker {
+    public enum Reason { DEADLINE, SUPERSEDED }
+
+    private static final ThreadLocal<TrackedRequest> CURRENT = new ThreadLocal<>();
+
+    private final ConcurrentMap<String, TrackedRequest> running = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, TrackedRequest> bySupersedeKey = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService watchdog;
+    private final MeterRegistry meterRegistry;
+
+    public QueryTracker(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "query-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        watchdog.scheduleWithFixedDelay(this::cancelExpired, 200, 200, TimeUnit.MILLISECONDS);
+        meterRegistry.gaugeMapSize("query.tracked.running", Collections.emptyList(), running);
+    }
+
+    /**
+     * Starts tracking a request on the current thread.
+     *
+     * @param supersedeKey requests sharing a non-null key cancel their predecessor
+     */
+    public TrackedRequest begin(String supersedeKey, long timeoutMs) {
+        return begin(supersedeKey, timeoutMs, null);
+    }
+
+    /**
+     * @param settingsProfile {@link QuerySettings} profile for the request's statements, or null
+     */
+    public TrackedRequest begin(String supersedeKey, long timeoutMs, String settingsProfile) {
+        TrackedRequest request = new TrackedRequest(UUID.randomUUID().toString(), supersedeKey,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs), settingsProfile);
+        running.put(request.id, request);
+        if (supersedeKey != null) {
+            TrackedRequest previous = bySupersedeKey.put(supersedeKey, request);
+            if (previous != null) {
+                cancel(previous, Reason.SUPERSEDED);
+            }
+        }
+        CURRENT.set(request);
+        return request;
+    }
+
+    public void end(TrackedRequest request) {
+        running.remove(request.id);
+        if (request.supersedeKey != null) {
+            bySupersedeKey.remove(request.supersedeKey, request);
+        }
+        request.statements.clear();
+        if (CURRENT.get() == request) {
+            CURRENT.remove();
+        }
+    }
+
+    public TrackedRequest current() {
+        return CURRENT.get();
+    }
+
+    /** Binds a request to a worker thread that executes queries on its behalf. */
+    public void attach(TrackedRequest request) {
+        if (request == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(request);
+        }
+    }
+
+    void cancel(TrackedRequest request, Reason reason) {
+        if (request.cancelledReason != null) {
+            return;
+        }
+        request.cancelledReason = reason;
+        meterRegistry.counter("query.cancelled", "reason", reason.name().toLowerCase()).increment();
+        for (Statement statement : request.statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException | RuntimeException ignored) {
+                // Statement already finished or closed
+            }
+        }
+    }
+
+    private void cancelExpired() {
+        long now = System.nanoTime();
+        for (TrackedRequest request : running.values()) {
+            if (now - request.deadlineNanos > 0 && !request.statements.isEmpty()) {
+                cancel(request, Reason.DEADLINE);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    public static class TrackedRequest {
+        private final String id;
+        private final String supersedeKey;
+        private final long deadlineNanos;
+        private final String settingsProfile;
+        private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+        private volatile Reason cancelledReason;
+
+        TrackedRequest(String id, String supersedeKey, long deadlineNanos, String settingsProfile) {
+            this.id = id;
+            this.supersedeKey = supersedeKey;
+            this.deadlineNanos = deadlineNanos;
+            this.settingsProfile = settingsProfile;
+        }
+
+        public String getId() { return id; }
+        public String getSettingsProfile() { return settingsProfile; }
+        public Reason getCancelledReason() { return cancelledReason; }
+
+        /** Whole seconds left before the deadline, at least 1. */
+        public int remainingSeconds() {
+            long remaining = deadlineNanos - System.nanoTime();
+            return (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1));
+        }
+
+        /** Milliseconds left before the deadline, 0 once it has passed. */
+        public long remainingMillis() {
+            return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+        }
+
+        /**
+         * Registers a statement about to be executed.
+         *
+         * @return false if the request was already cancelled and the statement must not run
+         */
+        public boolean register(Statement statement) {
+            statements.add(statement);
+            // cancel() sets the reason before walking the statements, so either it
+            // sees this statement or this check sees the reason
+            return cancelledReason == null;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling: keeps the first and last point
+ * and, from each bucket in between, the point forming the largest triangle with
+ * the previously kept point and the next bucket's average. Peaks and dips
+ * survive, unlike with plain averaging or striding.
+ */
+public final class TimeSeriesDownsampler {
+
+    private TimeSeriesDownsampler() {
+    }
+
+    /**
+     * @param points   equally spaced points in time order (x is the index)
+     * @param maxPoints target size; values below 3 or at least {@code points.size()} return the input
+     * @param value    the y value that shape is preserved for
+     */
+    public static <T> List<T> lttb(List<T> points, int maxPoints, ToDoubleFunction<T> value) {
+        int size = points.size();
+        if (maxPoints < 3 || maxPoints >= size) {
+            return points;
+        }
+        List<T> sampled = new ArrayList<>(maxPoints);
+        double bucketSize = (double) (size - 2) / (maxPoints - 2);
+
+        int kept = 0;
+        sampled.add(points.get(0));
+        for (int i = 0; i < maxPoints - 2; i++) {
+            // Average of the next bucket (the last point for the final bucket)
+            int nextStart = (int) Math.floor((i + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * bucketSize) + 1, size);
+            if (nextStart >= nextEnd) {
+                nextStart = size - 1;
+                nextEnd = size;
+            }
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += j;
+                avgY += value.applyAsDouble(points.get(j));
+            }
+            avgX /= nextEnd - nextStart;
+            avgY /= nextEnd - nextStart;
+
+            int start = (int) Math.floor(i * bucketSize) + 1;
+            int end = (int) Math.floor((i + 1) * bucketSize) + 1;
+            double keptY = value.applyAsDouble(points.get(kept));
+            double maxArea = -1;
+            int chosen = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((kept - avgX) * (value.applyAsDouble(points.get(j)) - keptY)
+                        - (kept - j) * (avgY - keptY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+            sampled.add(points.get(chosen));
+            kept = chosen;
+        }
+        sampled.add(points.get(size - 1));
+        return sampled;
+    }
+}
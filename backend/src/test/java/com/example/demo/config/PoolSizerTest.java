@@ -0,0 +1,85 @@
+package com.example.demo.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PoolSizerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private HikariPoolMXBean interactive;
+    private HikariConfig export;
+    private HikariConfig ingest;
+    private PoolSizer sizer;
+
+    private static HikariConfig pool(int maxSize) {
+        HikariConfig config = new HikariConfig();
+        config.setMaximumPoolSize(maxSize);
+        return config;
+    }
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        interactive = mock(HikariPoolMXBean.class);
+        export = pool(4);
+        ingest = pool(2);
+        Map<String, HikariConfigMXBean> batch = new LinkedHashMap<>();
+        batch.put("export", export);
+        batch.put("ingest", ingest);
+        sizer = new PoolSizer(interactive, "clickhouse-interactive", batch, 500, meterRegistry);
+    }
+
+    @Test
+    void adjust_WhileInteractiveQueues_ShouldHalveBatchPoolsDownToOne() {
+        // Arrange
+        when(interactive.getThreadsAwaitingConnection()).thenReturn(3);
+
+        // Act
+        sizer.adjust();
+        int afterFirst = export.getMaximumPoolSize();
+        sizer.adjust();
+        sizer.adjust();
+
+        // Assert
+        assertEquals(2, afterFirst);
+        assertEquals(1, export.getMaximumPoolSize());
+        assertEquals(1, ingest.getMaximumPoolSize());
+        assertEquals(2.0, meterRegistry.counter("db.pool.resized", "pool", "export", "direction", "shrink").count());
+    }
+
+    @Test
+    void adjust_WhenInteractiveLatencyExceedsTarget_ShouldShrinkThenGrowBackToConfiguredSize() {
+        // Arrange
+        Timer usage = meterRegistry.timer("hikaricp.connections.usage", "pool", "clickhouse-interactive");
+        usage.record(900, TimeUnit.MILLISECONDS);
+        usage.record(800, TimeUnit.MILLISECONDS);
+
+        // Act
+        sizer.adjust();
+        int shrunk = export.getMaximumPoolSize();
+        usage.record(100, TimeUnit.MILLISECONDS);
+        sizer.adjust();
+        sizer.adjust();
+        sizer.adjust();
+
+        // Assert
+        assertEquals(2, shrunk);
+        // Grows one per interval and stops at the configured size
+        assertEquals(4, export.getMaximumPoolSize());
+        assertEquals(2, ingest.getMaximumPoolSize());
+        assertEquals(2.0, meterRegistry.counter("db.pool.resized", "pool", "export", "direction", "grow").count());
+    }
+}
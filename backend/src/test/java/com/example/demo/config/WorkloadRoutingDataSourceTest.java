@@ -0,0 +1,41 @@
+package com.example.demo.config;
+
+import com.example.demo.service.QuerySettings;
+import com.example.demo.service.QueryTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkloadRoutingDataSourceTest {
+
+    @Test
+    void pool_ShouldFollowSettingsProfile() {
+        // Act & Assert
+        assertEquals(WorkloadRoutingDataSource.INTERACTIVE, WorkloadRoutingDataSource.pool(QuerySettings.INTERACTIVE));
+        assertEquals(WorkloadRoutingDataSource.INTERACTIVE, WorkloadRoutingDataSource.pool(QuerySettings.ADMIN));
+        assertEquals(WorkloadRoutingDataSource.INTERACTIVE, WorkloadRoutingDataSource.pool(null));
+        assertEquals(WorkloadRoutingDataSource.EXPORT, WorkloadRoutingDataSource.pool(QuerySettings.EXPORT));
+        assertEquals(WorkloadRoutingDataSource.INGEST, WorkloadRoutingDataSource.pool(QuerySettings.INGEST));
+        assertEquals(WorkloadRoutingDataSource.AUTH, WorkloadRoutingDataSource.pool(QuerySettings.AUTH));
+    }
+
+    @Test
+    void current_ShouldPreferScopedProfileOverRequestProfile() {
+        // Arrange
+        QueryTracker tracker = new QueryTracker(new SimpleMeterRegistry());
+        QueryTracker.TrackedRequest request = tracker.begin(null, 1000, QuerySettings.EXPORT);
+        try {
+            // Act
+            String fromRequest = QuerySettings.current(tracker.current());
+            String scoped = QuerySettings.run(QuerySettings.AUTH, () -> QuerySettings.current(tracker.current()));
+
+            // Assert
+            assertEquals(QuerySettings.EXPORT, fromRequest);
+            assertEquals(QuerySettings.AUTH, scoped);
+        } finally {
+            tracker.end(request);
+        }
+        assertNull(QuerySettings.current(tracker.current()));
+    }
+}
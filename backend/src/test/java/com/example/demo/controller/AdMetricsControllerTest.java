@@ -1,9 +1,12 @@
 package com.example.demo.controller;
 
 import com.example.demo.model.AdMetrics;
+import com.example.demo.model.CursorPage;
+import com.example.demo.model.FacetValue;
 import com.example.demo.model.PaginatedResponse;
 import com.example.demo.security.UserPrincipal;
 import com.example.demo.service.AdMetricsService;
+import com.example.demo.service.CampaignCatalog;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,6 +18,7 @@ import org.springframework.security.core.Authentication;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -27,6 +31,9 @@ class AdMetricsControllerTest {
     @Mock
     private AdMetricsService adMetricsService;
 
+    @Mock
+    private CampaignCatalog campaignCatalog;
+
     @Mock
     private Authentication authentication;
 
@@ -38,7 +45,7 @@ class AdMetricsControllerTest {
 
     @BeforeEach
     void setUp() {
-        controller = new AdMetricsController(adMetricsService, adminEmail);
+        controller = new AdMetricsController(adMetricsService, campaignCatalog, adminEmail);
     }
 
     @Test
@@ -314,4 +321,72 @@ class AdMetricsControllerTest {
         verify(adMetricsService).getAvailableBrowsers();
         verify(adMetricsService, never()).getAvailableBrowsersByAccountId(any());
     }
+
+    @Test
+    void getFacets_WhenUserIsNotAdmin_ShouldScopeToAccount() {
+        // Arrange
+        UUID userId = UUID.randomUUID();
+        Map<String, List<FacetValue>> expectedFacets = Map.of("country", List.of(new FacetValue("US", 5L)));
+
+        when(authentication.getPrincipal()).thenReturn(userPrincipal);
+        when(userPrincipal.getUserId()).thenReturn(userId);
+        when(userPrincipal.getEmail()).thenReturn("user@test.com");
+        when(adMetricsService.getFacets(userId, "2024-01-01", "2024-01-31", true)).thenReturn(expectedFacets);
+
+        // Act
+        ResponseEntity<Map<String, List<FacetValue>>> result =
+                controller.getFacets(authentication, "2024-01-01", "2024-01-31", true);
+
+        // Assert
+        assertEquals(200, result.getStatusCodeValue());
+        assertEquals(expectedFacets, result.getBody());
+    }
+
+    @Test
+    void getFacets_WhenUserIsAdmin_ShouldNotScopeToAccount() {
+        // Arrange
+        when(authentication.getPrincipal()).thenReturn(userPrincipal);
+        when(userPrincipal.getEmail()).thenReturn(adminEmail);
+        when(adMetricsService.getFacets(null, null, null, false)).thenReturn(Map.of());
+
+        // Act
+        ResponseEntity<Map<String, List<FacetValue>>> result = controller.getFacets(authentication, null, null, false);
+
+        // Assert
+        assertEquals(200, result.getStatusCodeValue());
+        verify(adMetricsService).getFacets(null, null, null, false);
+    }
+
+    @Test
+    void searchCampaigns_WhenUserIsNotAdmin_ShouldSearchOwnCatalog() {
+        // Arrange
+        UUID userId = UUID.randomUUID();
+        CursorPage<String> expected = new CursorPage<>(List.of("Summer Sale"), "c1");
+
+        when(authentication.getPrincipal()).thenReturn(userPrincipal);
+        when(userPrincipal.getUserId()).thenReturn(userId);
+        when(userPrincipal.getEmail()).thenReturn("user@test.com");
+        when(campaignCatalog.search(userId, "sum", CampaignCatalog.Mode.PREFIX, 20, null)).thenReturn(expected);
+
+        // Act
+        ResponseEntity<?> result = controller.searchCampaigns(authentication, "sum", "prefix", 20, null);
+
+        // Assert
+        assertEquals(200, result.getStatusCodeValue());
+        assertEquals(expected, result.getBody());
+    }
+
+    @Test
+    void searchCampaigns_WithUnknownMode_ShouldReturnBadRequest() {
+        // Arrange
+        when(authentication.getPrincipal()).thenReturn(userPrincipal);
+        when(userPrincipal.getEmail()).thenReturn(adminEmail);
+
+        // Act
+        ResponseEntity<?> result = controller.searchCampaigns(authentication, "sum", "fuzzy", 20, null);
+
+        // Assert
+        assertEquals(400, result.getStatusCodeValue());
+        verifyNoInteractions(campaignCatalog);
+    }
 }
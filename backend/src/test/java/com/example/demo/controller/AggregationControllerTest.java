@@ -0,0 +1,162 @@
+package com.example.demo.controller;
+
+import com.example.demo.config.QueryTrackingInterceptor;
+import com.example.demo.model.ProgressiveFrame;
+import com.example.demo.ratelimit.TenantRateLimitInterceptor;
+import com.example.demo.ratelimit.TenantRateLimiter;
+import com.example.demo.security.UserPrincipal;
+import com.example.demo.service.AggregationService;
+import com.example.demo.service.ProgressiveAggregationService;
+import com.example.demo.service.QueryTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class AggregationControllerTest {
+
+    @Mock
+    private AggregationService aggregationService;
+
+    @Mock
+    private ProgressiveAggregationService progressiveAggregationService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private TenantRateLimiter tenantRateLimiter;
+    private MockMvc mockMvc;
+    private final UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
+            new UserPrincipal("user@test.com", UUID.randomUUID()), null, List.of());
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        QueryTracker queryTracker = new QueryTracker(meterRegistry);
+        tenantRateLimiter = new TenantRateLimiter(100, 100, 2, 100, 100, 3, meterRegistry);
+        AggregationController controller = new AggregationController(aggregationService,
+                progressiveAggregationService, queryTracker, "admin@test.com", 15_000);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .addInterceptors(new TenantRateLimitInterceptor(tenantRateLimiter, "admin@test.com"),
+                        new QueryTrackingInterceptor(queryTracker, "admin@test.com", 120_000, 15_000, 15_000))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private double trackedRequests() {
+        return meterRegistry.get("query.tracked.running").gauge().value();
+    }
+
+    private MvcResult startStream() throws Exception {
+        return mockMvc.perform(post("/api/aggregate/progressive")
+                        .principal(auth)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"metrics\":[\"clicks\"],\"startDate\":\"2024-01-01\",\"endDate\":\"2024-01-31\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    @Test
+    void getAggregatedDataProgressive_AfterAsyncDispatch_ShouldStreamFinalFrameAndEndTracking() throws Exception {
+        // Arrange
+        when(progressiveAggregationService.aggregate(any(), any())).thenAnswer(invocation -> {
+            Consumer<ProgressiveFrame> onFrame = invocation.getArgument(1);
+            onFrame.accept(new ProgressiveFrame(List.of(), 1, 1, List.of("2024-01-01..2024-01-31")));
+            return CompletableFuture.completedFuture(null);
+        });
+        MvcResult started = startStream();
+
+        // Act
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("event:final")));
+
+        // Assert
+        assertEquals(0.0, trackedRequests());
+    }
+
+    @Test
+    void getAggregatedDataProgressive_WhenStreamTimesOutWithoutDispatch_ShouldStillEndTracking() throws Exception {
+        // Arrange: the months never finish, so no completing dispatch reaches the interceptor
+        when(progressiveAggregationService.aggregate(any(), any())).thenReturn(new CompletableFuture<>());
+        MvcResult started = startStream();
+        assertEquals(1.0, trackedRequests());
+
+        // Act
+        MockAsyncContext asyncContext = (MockAsyncContext) started.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+
+        // Assert
+        assertEquals(0.0, trackedRequests());
+    }
+
+    @Test
+    void getAggregatedDataProgressive_WhenStreamEndsWithoutDispatch_ShouldReleaseTenantSlotOnce() throws Exception {
+        // Arrange
+        SecurityContextHolder.getContext().setAuthentication(auth);
+        UUID accountId = ((UserPrincipal) auth.getPrincipal()).getUserId();
+        when(progressiveAggregationService.aggregate(any(), any())).thenReturn(new CompletableFuture<>());
+        MvcResult started = startStream();
+        assertEquals(1, tenantRateLimiter.inFlight(accountId));
+
+        // Act: the container times the stream out and completes it; no dispatch follows
+        MockAsyncContext asyncContext = (MockAsyncContext) started.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onComplete(new AsyncEvent(asyncContext));
+        }
+
+        // Assert
+        assertEquals(0, tenantRateLimiter.inFlight(accountId));
+    }
+
+    @Test
+    void getAggregatedDataProgressive_WithNoMetrics_ShouldRejectAndEndTracking() throws Exception {
+        // Act
+        MvcResult started = mockMvc.perform(post("/api/aggregate/progressive")
+                        .principal(auth)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"metrics\":[],\"startDate\":\"2024-01-01\",\"endDate\":\"2024-01-31\"}"))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(containsString("event:error")));
+
+        // Assert
+        assertEquals(0.0, trackedRequests());
+    }
+}
@@ -2,6 +2,7 @@ package com.example.demo.controller;
 
 import com.example.demo.model.Account;
 import com.example.demo.security.JwtUtil;
+import com.example.demo.security.LoginThrottle;
 import com.example.demo.security.UserPrincipal;
 import com.example.demo.service.AuthService;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,12 +10,17 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.core.Authentication;
 
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -36,11 +42,15 @@ class AuthControllerTest {
     private UserPrincipal userPrincipal;
 
     private AuthController controller;
+    private MockHttpServletRequest request;
     private final String adminEmail = "admin@test.com";
 
     @BeforeEach
     void setUp() {
-        controller = new AuthController(authService, jwtUtil, adminEmail);
+        LoginThrottle loginThrottle = new LoginThrottle(100, 100, 3, 1, 1000, new SimpleMeterRegistry());
+        controller = new AuthController(authService, jwtUtil, loginThrottle, adminEmail);
+        request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
     }
 
     @Test
@@ -59,7 +69,7 @@ class AuthControllerTest {
         when(jwtUtil.generateToken(email, userId)).thenReturn(token);
 
         // Act
-        ResponseEntity<?> result = controller.register(requestBody);
+        ResponseEntity<?> result = controller.register(requestBody, request);
 
         // Assert
         assertNotNull(result);
@@ -86,7 +96,7 @@ class AuthControllerTest {
         when(authService.findByEmail(email)).thenReturn(Optional.of(existingAccount));
 
         // Act
-        ResponseEntity<?> result = controller.register(requestBody);
+        ResponseEntity<?> result = controller.register(requestBody, request);
 
         // Assert
         assertNotNull(result);
@@ -100,13 +110,36 @@ class AuthControllerTest {
         verify(jwtUtil, never()).generateToken(any(), any());
     }
 
+    @Test
+    void register_WhenEmailRegisteredConcurrently_ShouldReturnConflict() {
+        // Arrange
+        String email = "race@example.com";
+        String password = "password123";
+
+        Map<String, String> requestBody = Map.of("email", email, "password", password);
+
+        when(authService.findByEmail(email)).thenReturn(Optional.empty());
+        when(authService.register(email, password)).thenThrow(new DuplicateKeyException("Email already registered"));
+
+        // Act
+        ResponseEntity<?> result = controller.register(requestBody, request);
+
+        // Assert
+        assertNotNull(result);
+        assertEquals(409, result.getStatusCodeValue());
+        @SuppressWarnings("unchecked")
+        Map<String, String> responseBody = (Map<String, String>) result.getBody();
+        assertEquals("Email already registered", responseBody.get("error"));
+        verify(jwtUtil, never()).generateToken(any(), any());
+    }
+
     @Test
     void register_WithEmptyEmail_ShouldReturnBadRequest() {
         // Arrange
         Map<String, String> requestBody = Map.of("email", "", "password", "password123");
 
         // Act
-        ResponseEntity<?> result = controller.register(requestBody);
+        ResponseEntity<?> result = controller.register(requestBody, request);
 
         // Assert
         assertNotNull(result);
@@ -125,7 +158,7 @@ class AuthControllerTest {
         Map<String, String> requestBody = Map.of("email", "test@example.com", "password", "");
 
         // Act
-        ResponseEntity<?> result = controller.register(requestBody);
+        ResponseEntity<?> result = controller.register(requestBody, request);
 
         // Assert
         assertNotNull(result);
@@ -154,7 +187,7 @@ class AuthControllerTest {
         when(jwtUtil.generateToken(email, userId)).thenReturn(token);
 
         // Act
-        ResponseEntity<?> result = controller.login(requestBody);
+        ResponseEntity<?> result = controller.login(requestBody, request);
 
         // Assert
         assertNotNull(result);
@@ -182,7 +215,7 @@ class AuthControllerTest {
         when(authService.verifyPassword(password, account.getPasswordHash())).thenReturn(false);
 
         // Act
-        ResponseEntity<?> result = controller.login(requestBody);
+        ResponseEntity<?> result = controller.login(requestBody, request);
 
         // Assert
         assertNotNull(result);
@@ -207,7 +240,7 @@ class AuthControllerTest {
         when(authService.findByEmail(email)).thenReturn(Optional.empty());
 
         // Act
-        ResponseEntity<?> result = controller.login(requestBody);
+        ResponseEntity<?> result = controller.login(requestBody, request);
 
         // Assert
         assertNotNull(result);
@@ -221,6 +254,45 @@ class AuthControllerTest {
         verify(jwtUtil, never()).generateToken(any(), any());
     }
 
+    @Test
+    void login_WhenEmailThrottled_ShouldReturnTooManyRequests() {
+        // Arrange
+        String email = "victim@example.com";
+        Map<String, String> requestBody = Map.of("email", email, "password", "guess");
+
+        when(authService.findByEmail(email)).thenReturn(Optional.empty());
+        for (int i = 0; i < 3; i++) {
+            controller.login(requestBody, request);
+        }
+
+        // Act
+        ResponseEntity<?> result = controller.login(requestBody, request);
+
+        // Assert
+        assertEquals(429, result.getStatusCodeValue());
+        assertNotNull(result.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        verify(authService, times(3)).findByEmail(email);
+    }
+
+    @Test
+    void login_WhenHashingPoolSaturated_ShouldReturnTooManyRequests() {
+        // Arrange
+        String email = "test@example.com";
+        Account account = new Account(UUID.randomUUID(), email, "hashedPassword", "");
+        Map<String, String> requestBody = Map.of("email", email, "password", "password123");
+
+        when(authService.findByEmail(email)).thenReturn(Optional.of(account));
+        when(authService.verifyPassword("password123", "hashedPassword")).thenThrow(new RejectedExecutionException("queue full"));
+
+        // Act
+        ResponseEntity<?> result = controller.login(requestBody, request);
+
+        // Assert
+        assertEquals(429, result.getStatusCodeValue());
+        assertEquals("1", result.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        verify(jwtUtil, never()).generateToken(any(), any());
+    }
+
     @Test
     void getCurrentUser_WhenUserIsAdmin_ShouldReturnUserInfoWithAdminFlag() {
         // Arrange
@@ -286,7 +358,7 @@ class AuthControllerTest {
         when(jwtUtil.generateToken(normalizedEmail, userId)).thenReturn(token);
 
         // Act
-        ResponseEntity<?> result = controller.register(requestBody);
+        ResponseEntity<?> result = controller.register(requestBody, request);
 
         // Assert
         assertNotNull(result);
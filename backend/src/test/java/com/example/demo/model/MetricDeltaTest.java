@@ -0,0 +1,40 @@
+package com.example.demo.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricDeltaTest {
+
+    @Test
+    void constructor_ShouldComputeAbsoluteAndPercentageDelta() {
+        // Act
+        MetricDelta delta = new MetricDelta(new BigDecimal("150"), new BigDecimal("120"));
+
+        // Assert
+        assertEquals(new BigDecimal("30"), delta.getDelta());
+        assertEquals(new BigDecimal("25.00"), delta.getDeltaPercent());
+    }
+
+    @Test
+    void constructor_WithDecline_ShouldReturnNegativePercentage() {
+        // Act
+        MetricDelta delta = new MetricDelta(new BigDecimal("1"), new BigDecimal("3"));
+
+        // Assert
+        assertEquals(new BigDecimal("-2"), delta.getDelta());
+        assertEquals(new BigDecimal("-66.67"), delta.getDeltaPercent());
+    }
+
+    @Test
+    void constructor_WithZeroPrevious_ShouldOmitPercentage() {
+        // Act
+        MetricDelta delta = new MetricDelta(new BigDecimal("5"), BigDecimal.ZERO);
+
+        // Assert
+        assertEquals(new BigDecimal("5"), delta.getDelta());
+        assertNull(delta.getDeltaPercent());
+    }
+}
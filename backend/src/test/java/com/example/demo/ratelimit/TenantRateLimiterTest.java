@@ -0,0 +1,77 @@
+package com.example.demo.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TenantRateLimiterTest {
+
+    private TenantRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new TenantRateLimiter(3, 0.001, 2, 10, 0.001, 4, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void tryAcquire_WhenInFlightLimitReached_ShouldRejectUntilReleased() {
+        // Arrange
+        UUID accountId = UUID.randomUUID();
+
+        // Act
+        assertEquals(0, limiter.tryAcquire(accountId, false));
+        assertEquals(0, limiter.tryAcquire(accountId, false));
+        long rejected = limiter.tryAcquire(accountId, false);
+        limiter.release(accountId);
+
+        // Assert
+        assertTrue(rejected > 0);
+        assertEquals(1, limiter.inFlight(accountId));
+    }
+
+    @Test
+    void tryAcquire_WhenRateExceeded_ShouldRejectEvenWithFreeSlots() {
+        // Arrange
+        UUID accountId = UUID.randomUUID();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire(accountId, false));
+            limiter.release(accountId);
+        }
+
+        // Act
+        long wait = limiter.tryAcquire(accountId, false);
+
+        // Assert
+        assertTrue(wait > 0);
+        assertEquals(0, limiter.inFlight(accountId));
+    }
+
+    @Test
+    void tryAcquire_ShouldIsolateTenants() {
+        // Arrange
+        UUID heavy = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        limiter.tryAcquire(heavy, false);
+        limiter.tryAcquire(heavy, false);
+
+        // Act & Assert
+        assertTrue(limiter.tryAcquire(heavy, false) > 0);
+        assertEquals(0, limiter.tryAcquire(other, false));
+    }
+
+    @Test
+    void tryAcquire_ForAdmin_ShouldUseAdminLimits() {
+        // Arrange
+        UUID adminId = UUID.randomUUID();
+
+        // Act & Assert
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, limiter.tryAcquire(adminId, true));
+        }
+        assertTrue(limiter.tryAcquire(adminId, true) > 0);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.demo.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void tryAcquire_ShouldAllowBurstUpToCapacity() {
+        // Arrange
+        AtomicLong clock = new AtomicLong(0);
+        TokenBucket bucket = new TokenBucket(3, 1.0, clock::get);
+
+        // Act & Assert
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertEquals(0, bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire() > 0);
+    }
+
+    @Test
+    void tryAcquire_WhenEmpty_ShouldReportWaitAndRefillOverTime() {
+        // Arrange
+        AtomicLong clock = new AtomicLong(0);
+        TokenBucket bucket = new TokenBucket(1, 2.0, clock::get);
+        bucket.tryAcquire();
+
+        // Act
+        long wait = bucket.tryAcquire();
+
+        // Assert
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), wait);
+        clock.addAndGet(wait);
+        assertEquals(0, bucket.tryAcquire());
+    }
+
+    @Test
+    void isFull_ShouldBeTrueOnlyAfterCompleteRefill() {
+        // Arrange
+        AtomicLong clock = new AtomicLong(0);
+        TokenBucket bucket = new TokenBucket(2, 1.0, clock::get);
+
+        // Act
+        bucket.tryAcquire();
+
+        // Assert
+        assertFalse(bucket.isFull());
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(bucket.isFull());
+    }
+
+    @Test
+    void keyedBuckets_ShouldIsolateKeysAndEvictFullBuckets() {
+        // Arrange
+        AtomicLong clock = new AtomicLong(0);
+        KeyedTokenBuckets buckets = new KeyedTokenBuckets(1, 1.0, 2, clock::get);
+
+        // Act
+        assertEquals(0, buckets.tryAcquire("a"));
+        assertTrue(buckets.tryAcquire("a") > 0);
+        assertEquals(0, buckets.tryAcquire("b"));
+        assertEquals(0, buckets.tryAcquire("c"));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, buckets.tryAcquire("d"));
+
+        // Assert
+        assertEquals(1, buckets.size());
+    }
+
+    @Test
+    void keyedBuckets_WhenFull_ShouldEvictTheBucketClosestToRefilled() {
+        // Arrange: "a" is drained, "b" has used one of its two tokens
+        AtomicLong clock = new AtomicLong(0);
+        KeyedTokenBuckets buckets = new KeyedTokenBuckets(2, 1.0, 2, clock::get);
+        buckets.tryAcquire("a");
+        buckets.tryAcquire("a");
+        buckets.tryAcquire("b");
+        clock.set(TimeUnit.MILLISECONDS.toNanos(500));
+
+        // Act
+        long newKey = buckets.tryAcquire("c");
+        long drainedKey = buckets.tryAcquire("a");
+
+        // Assert: "b" made room; "a" kept its state
+        assertEquals(0, newKey);
+        assertTrue(drainedKey > 0);
+        assertEquals(2, buckets.size());
+    }
+
+    @Test
+    void keyedBuckets_UnderConcurrentNewKeys_ShouldNeverExceedMaxKeys() throws Exception {
+        // Arrange
+        KeyedTokenBuckets buckets = new KeyedTokenBuckets(1, 0.001, 50);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger maxSize = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+
+        // Act
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 2_000; i++) {
+                    if (buckets.tryAcquire(thread + "-" + i) > 0) {
+                        rejected.incrementAndGet();
+                    }
+                    maxSize.accumulateAndGet(buckets.size(), Math::max);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> worker : workers) {
+                worker.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Assert
+        assertTrue(maxSize.get() <= 50, "size reached " + maxSize.get());
+        assertEquals(0, rejected.get());
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.demo.service;
 
 import com.example.demo.model.AdMetrics;
+import com.example.demo.model.FacetValue;
 import com.example.demo.model.PaginatedResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,10 +12,12 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 
 import java.math.BigDecimal;
+import java.sql.Array;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,11 +33,17 @@ class AdMetricsServiceTest {
     @Mock
     private ResultSet resultSet;
 
+    @Mock
+    private FacetDictionaryService facetDictionary;
+
+    @Mock
+    private HotWindowStore hotWindow;
+
     private AdMetricsService adMetricsService;
 
     @BeforeEach
     void setUp() {
-        adMetricsService = new AdMetricsService(jdbcTemplate);
+        adMetricsService = new AdMetricsService(jdbcTemplate, facetDictionary, hotWindow);
     }
 
     @Test
@@ -150,7 +159,7 @@ class AdMetricsServiceTest {
         // Arrange
         List<String> expectedCountries = Arrays.asList("US", "UK", "CA");
 
-        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+        when(facetDictionary.values(null, "country"))
                 .thenReturn(expectedCountries);
 
         // Act
@@ -160,7 +169,7 @@ class AdMetricsServiceTest {
         assertNotNull(result);
         assertEquals(3, result.size());
         assertEquals(expectedCountries, result);
-        verify(jdbcTemplate).queryForList(anyString(), eq(String.class));
+        verifyNoInteractions(jdbcTemplate);
     }
 
     @Test
@@ -169,7 +178,7 @@ class AdMetricsServiceTest {
         UUID accountId = UUID.randomUUID();
         List<String> expectedCountries = Arrays.asList("US", "UK");
 
-        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(accountId)))
+        when(facetDictionary.values(accountId, "country"))
                 .thenReturn(expectedCountries);
 
         // Act
@@ -179,7 +188,7 @@ class AdMetricsServiceTest {
         assertNotNull(result);
         assertEquals(2, result.size());
         assertEquals(expectedCountries, result);
-        verify(jdbcTemplate).queryForList(anyString(), eq(String.class), eq(accountId));
+        verifyNoInteractions(jdbcTemplate);
     }
 
     @Test
@@ -187,7 +196,7 @@ class AdMetricsServiceTest {
         // Arrange
         List<String> expectedCampaigns = Arrays.asList("Campaign1", "Campaign2");
 
-        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+        when(facetDictionary.values(null, "campaign"))
                 .thenReturn(expectedCampaigns);
 
         // Act
@@ -197,7 +206,7 @@ class AdMetricsServiceTest {
         assertNotNull(result);
         assertEquals(2, result.size());
         assertEquals(expectedCampaigns, result);
-        verify(jdbcTemplate).queryForList(anyString(), eq(String.class));
+        verifyNoInteractions(jdbcTemplate);
     }
 
     @Test
@@ -205,7 +214,7 @@ class AdMetricsServiceTest {
         // Arrange
         List<String> expectedPlatforms = Arrays.asList("Desktop", "Mobile");
 
-        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+        when(facetDictionary.values(null, "platform"))
                 .thenReturn(expectedPlatforms);
 
         // Act
@@ -215,7 +224,7 @@ class AdMetricsServiceTest {
         assertNotNull(result);
         assertEquals(2, result.size());
         assertEquals(expectedPlatforms, result);
-        verify(jdbcTemplate).queryForList(anyString(), eq(String.class));
+        verifyNoInteractions(jdbcTemplate);
     }
 
     @Test
@@ -223,7 +232,7 @@ class AdMetricsServiceTest {
         // Arrange
         List<String> expectedBrowsers = Arrays.asList("Chrome", "Firefox", "Safari");
 
-        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+        when(facetDictionary.values(null, "browser"))
                 .thenReturn(expectedBrowsers);
 
         // Act
@@ -233,6 +242,76 @@ class AdMetricsServiceTest {
         assertNotNull(result);
         assertEquals(3, result.size());
         assertEquals(expectedBrowsers, result);
-        verify(jdbcTemplate).queryForList(anyString(), eq(String.class));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getFacets_WithCounts_ShouldScanOnceAndMapValuesWithCounts() throws SQLException {
+        // Arrange
+        UUID accountId = UUID.randomUUID();
+        when(jdbcTemplate.queryForObject(anyString(), any(RowMapper.class), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    RowMapper<Map<String, List<FacetValue>>> mapper = invocation.getArgument(1);
+                    return mapper.mapRow(resultSet, 0);
+                });
+        Array values = mock(Array.class);
+        Array counts = mock(Array.class);
+        when(values.getArray()).thenReturn(new String[] {"CA", "US"});
+        when(counts.getArray()).thenReturn(new Long[] {3L, 7L});
+        when(resultSet.getArray(endsWith("_values"))).thenReturn(values);
+        when(resultSet.getArray(endsWith("_counts"))).thenReturn(counts);
+
+        // Act
+        Map<String, List<FacetValue>> result = adMetricsService.getFacets(accountId, "2024-01-01", "2024-01-31", true);
+
+        // Assert
+        assertEquals(AdMetricsService.FACET_DIMENSIONS, List.copyOf(result.keySet()));
+        assertEquals(List.of(new FacetValue("CA", 3L), new FacetValue("US", 7L)), result.get("country"));
+        verify(jdbcTemplate).queryForObject(contains("sumMap([country], [toUInt64(1)])"), any(RowMapper.class),
+                eq(accountId), eq("2024-01-01"), eq("2024-01-31"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getFacets_ForAdminWithDateRange_ShouldScanWithoutAccountScope() throws SQLException {
+        // Arrange
+        when(jdbcTemplate.queryForObject(anyString(), any(RowMapper.class), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    RowMapper<Map<String, List<FacetValue>>> mapper = invocation.getArgument(1);
+                    return mapper.mapRow(resultSet, 0);
+                });
+        Array values = mock(Array.class);
+        when(values.getArray()).thenReturn(new String[] {"Chrome"});
+        when(resultSet.getArray(anyString())).thenReturn(values);
+
+        // Act
+        Map<String, List<FacetValue>> result = adMetricsService.getFacets(null, "2024-01-01", null, false);
+
+        // Assert
+        assertEquals(List.of(new FacetValue("Chrome", null)), result.get("browser"));
+        verify(jdbcTemplate).queryForObject(
+                eq("SELECT arraySort(groupUniqArray(country)) AS country_values, "
+                        + "arraySort(groupUniqArray(campaign)) AS campaign_values, "
+                        + "arraySort(groupUniqArray(platform)) AS platform_values, "
+                        + "arraySort(groupUniqArray(browser)) AS browser_values FROM appdb.ads_metrics WHERE day >= ?"),
+                any(RowMapper.class), eq("2024-01-01"));
+        verifyNoInteractions(facetDictionary);
+    }
+
+    @Test
+    void getFacets_WithoutDateRangeOrCounts_ShouldServeFromDictionary() {
+        // Arrange
+        UUID accountId = UUID.randomUUID();
+        when(facetDictionary.values(eq(accountId), anyString())).thenReturn(List.of());
+        when(facetDictionary.values(accountId, "platform")).thenReturn(List.of("Desktop", "Mobile"));
+
+        // Act
+        Map<String, List<FacetValue>> result = adMetricsService.getFacets(accountId, null, "", false);
+
+        // Assert
+        assertEquals(List.of(new FacetValue("Desktop", null), new FacetValue("Mobile", null)), result.get("platform"));
+        assertEquals(List.of(), result.get("country"));
+        verifyNoInteractions(jdbcTemplate);
     }
 }
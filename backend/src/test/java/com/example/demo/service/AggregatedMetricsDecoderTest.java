@@ -0,0 +1,78 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class AggregatedMetricsDecoderTest {
+
+    private AggregationQuery query(List<String> metrics) {
+        return new AggregationQuery(UUID.randomUUID(), false, List.of("day", "country"), metrics,
+                "All", "All", "All", "All", "", "asc", "2024-01-01", "2024-01-31");
+    }
+
+    @Test
+    void mapRow_ShouldReadTypedColumnsByPositionResolvedOnce() throws Exception {
+        // Arrange
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.findColumn("day")).thenReturn(1);
+        when(rs.findColumn("country")).thenReturn(2);
+        when(rs.findColumn("total_spent")).thenReturn(3);
+        when(rs.findColumn("total_clicks")).thenReturn(4);
+        when(rs.findColumn("record_count")).thenReturn(5);
+        when(rs.findColumn("ctr")).thenReturn(6);
+        when(rs.getObject(1, LocalDate.class)).thenReturn(LocalDate.parse("2024-01-01"));
+        when(rs.getString(2)).thenReturn("US", "DE");
+        when(rs.getBigDecimal(3)).thenReturn(new BigDecimal("1.500000"));
+        when(rs.getLong(4)).thenReturn(3L);
+        when(rs.getLong(5)).thenReturn(2L);
+        when(rs.getDouble(6)).thenReturn(0.25, 0.0);
+        when(rs.wasNull()).thenReturn(false, true);
+        AggregatedMetricsDecoder decoder = new AggregatedMetricsDecoder(query(List.of("spent", "clicks", "ctr")), false);
+
+        // Act
+        AggregatedMetrics first = decoder.mapRow(rs, 0);
+        AggregatedMetrics second = decoder.mapRow(rs, 1);
+
+        // Assert
+        assertEquals(LocalDate.parse("2024-01-01"), first.getDimensions().get("day"));
+        assertEquals("US", first.getDimensions().get("country"));
+        assertEquals(new BigDecimal("1.500000"), first.getTotalSpent());
+        assertEquals(3L, first.getTotalClicks());
+        assertEquals(0L, first.getTotalImpressions());
+        assertEquals(2, first.getRecordCount());
+        assertEquals(0.25, first.getDerived().get("ctr"));
+        assertNull(first.getGroupingLevel());
+        assertEquals("DE", second.getDimensions().get("country"));
+        // Zero impressions: the ratio is NULL, not 0
+        assertTrue(second.getDerived().containsKey("ctr"));
+        assertNull(second.getDerived().get("ctr"));
+        verify(rs, times(6)).findColumn(anyString());
+        verify(rs, never()).getObject(anyString());
+    }
+
+    @Test
+    void mapRow_WithoutSpent_ShouldNotReadIt() throws Exception {
+        // Arrange
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.findColumn("record_count")).thenReturn(5);
+        AggregatedMetricsDecoder decoder = new AggregatedMetricsDecoder(query(List.of("impressions")), false);
+
+        // Act
+        AggregatedMetrics row = decoder.mapRow(rs, 0);
+
+        // Assert
+        assertEquals(BigDecimal.ZERO, row.getTotalSpent());
+        verify(rs, never()).findColumn("total_spent");
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AggregationCubeTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private final UUID accountId = UUID.randomUUID();
+    private AggregationCube cube;
+
+    @BeforeEach
+    void setUp() {
+        cube = new AggregationCube(jdbcTemplate, true, 30, 2, 4, 100,
+                Clock.fixed(Instant.parse("2024-06-30T12:00:00Z"), ZoneOffset.UTC), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        cube.shutdown();
+    }
+
+    private AggregationQuery query(List<String> groupBy, String country, String start, String end) {
+        return new AggregationQuery(accountId, false, groupBy, List.of("spent", "clicks"),
+                country, "All", "All", "All", "", "asc", start, end);
+    }
+
+    /** Serves two cells (US and DE on 2024-06-10) to the cube build query. */
+    private void stubBuild() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("account_id")).thenReturn(accountId.toString());
+        when(rs.getInt("day_number")).thenReturn((int) LocalDate.parse("2024-06-10").toEpochDay());
+        when(rs.getString("country")).thenReturn("US", "DE");
+        when(rs.getBigDecimal("total_spent")).thenReturn(new BigDecimal("2.000000"), new BigDecimal("3.000000"));
+        when(rs.getLong("total_impressions")).thenReturn(100L, 200L);
+        when(rs.getLong("total_clicks")).thenReturn(4L, 6L);
+        when(rs.getLong("record_count")).thenReturn(1L);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(rs);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(contains("GROUP BY account_id, day, country"), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void mask_ShouldCombineGroupedAndFilteredDimensions() {
+        // Act / Assert
+        assertEquals(0b0010, AggregationCube.mask(query(List.of("day", "country"), "All", "2024-06-01", "2024-06-30")));
+        assertEquals(0b0011, AggregationCube.mask(new AggregationQuery(accountId, false, List.of("campaign"),
+                List.of("spent"), "US", "All", "All", "All", "", "asc", "2024-06-01", "2024-06-30")));
+        assertEquals(-1, AggregationCube.mask(query(List.of("country"), "All", null, null)));
+    }
+
+    @Test
+    void refresh_AfterRepeatedUse_ShouldBuildCubeAndServeRollups() throws Exception {
+        // Arrange
+        stubBuild();
+        AggregationQuery byCountry = query(List.of("country"), "All", "2024-06-01", "2024-06-30");
+        cube.recordUse(byCountry);
+        cube.recordUse(byCountry);
+
+        // Act
+        cube.refresh();
+        List<AggregatedMetrics> byWeek = cube.aggregate(query(List.of("week"), "DE", "2024-06-01", "2024-06-30")).orElseThrow();
+
+        // Assert
+        assertTrue(cube.aggregate(byCountry).isPresent());
+        assertEquals(1, byWeek.size());
+        assertEquals(LocalDate.parse("2024-06-10"), byWeek.get(0).getDimensions().get("week"));
+        assertEquals(new BigDecimal("3.000000"), byWeek.get(0).getTotalSpent());
+    }
+
+    @Test
+    void aggregate_WithoutCoveringCube_ShouldDecline() {
+        // Act / Assert
+        assertTrue(cube.aggregate(query(List.of("campaign"), "All", "2024-06-01", "2024-06-30")).isEmpty());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void onIngested_AfterBuild_ShouldAddToCells() throws Exception {
+        // Arrange
+        stubBuild();
+        cube.build(0b0010, LocalDate.parse("2024-06-01"));
+
+        // Act
+        cube.onIngested(List.of(new AdEvent(LocalDateTime.parse("2024-06-10T08:00:00"), accountId, "c", "US", "web",
+                "chrome", new BigDecimal("1.000000"), 10, 1)));
+        List<AggregatedMetrics> rows = cube.aggregate(query(List.of("country"), "US", "2024-06-10", "2024-06-10")).orElseThrow();
+
+        // Assert
+        assertEquals(new BigDecimal("3.000000"), rows.get(0).getTotalSpent());
+        assertEquals(5L, rows.get(0).getTotalClicks());
+        assertEquals(2, rows.get(0).getRecordCount());
+    }
+
+    @Test
+    void onIngested_PastMaxCells_ShouldDropTheCube() throws Exception {
+        // Arrange: the build fills both cells allowed
+        cube.shutdown();
+        cube = new AggregationCube(jdbcTemplate, true, 30, 2, 4, 2,
+                Clock.fixed(Instant.parse("2024-06-30T12:00:00Z"), ZoneOffset.UTC), new SimpleMeterRegistry());
+        stubBuild();
+        cube.build(0b0010, LocalDate.parse("2024-06-01"));
+        AggregationQuery byCountry = query(List.of("country"), "All", "2024-06-01", "2024-06-30");
+        assertTrue(cube.aggregate(byCountry).isPresent());
+
+        // Act
+        cube.onIngested(List.of(new AdEvent(LocalDateTime.parse("2024-06-11T08:00:00"), accountId, "c", "FR", "web",
+                "chrome", BigDecimal.ONE, 1, 1)));
+
+        // Assert
+        assertTrue(cube.aggregate(byCountry).isEmpty());
+    }
+
+    @Test
+    void refresh_ForOversizedMask_ShouldRetryOnlyAfterItExpires() throws Exception {
+        // Arrange: one cell allowed, the build returns two
+        cube.shutdown();
+        cube = new AggregationCube(jdbcTemplate, true, 30, 2, 4, 1,
+                Clock.fixed(Instant.parse("2024-06-30T12:00:00Z"), ZoneOffset.UTC), new SimpleMeterRegistry());
+        stubBuild();
+        AggregationQuery byCountry = query(List.of("country"), "All", "2024-06-01", "2024-06-30");
+
+        // Act
+        for (int i = 0; i <= AggregationCube.OVERSIZED_RETRY_REFRESHES; i++) {
+            cube.recordUse(byCountry);
+            cube.recordUse(byCountry);
+            cube.refresh();
+        }
+
+        // Assert: built on the first refresh, skipped while marked oversized, retried once expired
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void build_OverlappingAnIngest_ShouldReplayTheIngestedRows() throws Exception {
+        // Arrange: one row is ingested before the build, another while its scan runs
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("account_id")).thenReturn(accountId.toString());
+        when(rs.getInt("day_number")).thenReturn((int) LocalDate.parse("2024-06-10").toEpochDay());
+        when(rs.getString("country")).thenReturn("US");
+        when(rs.getBigDecimal("total_spent")).thenReturn(new BigDecimal("2.000000"));
+        when(rs.getLong("total_impressions")).thenReturn(100L);
+        when(rs.getLong("total_clicks")).thenReturn(4L);
+        when(rs.getLong("record_count")).thenReturn(1L);
+        cube.onIngested(List.of(new AdEvent(LocalDateTime.parse("2024-06-10T07:00:00"), accountId, "c", "US",
+                "web", "chrome", BigDecimal.ONE, 1, 4)));
+        doAnswer(invocation -> {
+            cube.onIngested(List.of(new AdEvent(LocalDateTime.parse("2024-06-10T08:00:00"), accountId, "c", "US",
+                    "web", "chrome", BigDecimal.ONE, 1, 1)));
+            ((RowCallbackHandler) invocation.getArgument(1)).processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        // Act
+        cube.build(0b0010, LocalDate.parse("2024-06-01"));
+        List<AggregatedMetrics> rows = cube.aggregate(query(List.of("country"), "US", "2024-06-10", "2024-06-10")).orElseThrow();
+
+        // Assert: the scan already holds the earlier row; only the concurrent one is replayed
+        assertEquals(5L, rows.get(0).getTotalClicks());
+        assertEquals(2, rows.get(0).getRecordCount());
+    }
+
+    @Test
+    void build_WhenMoreThanMaxCellsRowsIngestedDuringIt_ShouldBeDiscarded() {
+        // Arrange: more rows arrive during the scan than the cube may hold
+        List<AdEvent> burst = new ArrayList<>();
+        for (int i = 0; i <= 100; i++) {
+            burst.add(new AdEvent(LocalDateTime.parse("2024-06-10T08:00:00"), accountId, "c", "US",
+                    "web", "chrome", BigDecimal.ONE, 1, 1));
+        }
+        doAnswer(invocation -> {
+            cube.onIngested(burst);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        // Act
+        cube.build(0b0010, LocalDate.parse("2024-06-01"));
+
+        // Assert
+        assertTrue(cube.aggregate(query(List.of("country"), "All", "2024-06-01", "2024-06-30")).isEmpty());
+    }
+}
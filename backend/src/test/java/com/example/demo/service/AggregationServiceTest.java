@@ -0,0 +1,488 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AggregationServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private QueryCostEstimator costEstimator;
+
+    private AggregationService aggregationService;
+
+    private final UUID accountId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        QueryAdmission admission = new QueryAdmission(100, 1_000, 10_000, 100_000, 2, 1, 1, 50, meterRegistry);
+        QueryCoalescer coalescer = new QueryCoalescer(mock(QueryTracker.class), 1_000, meterRegistry);
+        // Accelerators off: these tests exercise the direct SQL path
+        DaySegmentCache segmentCache = new DaySegmentCache(false, 100, 100, 400, 31, 0, meterRegistry);
+        HotWindowStore hotWindow = new HotWindowStore(jdbcTemplate, false, 30, 1, meterRegistry);
+        AggregationCube cube = new AggregationCube(jdbcTemplate, false, 30, 5, 4, 1000, Clock.systemUTC(), meterRegistry);
+        DrillDownCache drillDown = new DrillDownCache(0, 0, 60, meterRegistry);
+        aggregationService = new AggregationService(jdbcTemplate, costEstimator, admission, coalescer, segmentCache,
+                hotWindow, cube, drillDown);
+    }
+
+    private AggregationQuery query(boolean admin, List<String> groupBy, String country, String sortBy) {
+        return new AggregationQuery(accountId, admin, groupBy, List.of("spent", "clicks"),
+                country, "All", "All", "All", sortBy, "desc", "2024-01-01", "2024-01-31");
+    }
+
+    @Test
+    void buildSelectSql_ForTenant_ShouldScopeToAccountAndBindFilters() {
+        // Arrange
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildSelectSql(query(false, List.of("country"), "US", "spent"), params);
+
+        // Assert
+        assertEquals("SELECT country, sum(spent) as total_spent, sum(clicks) as total_clicks, count(*) as record_count "
+                + "FROM appdb.ads_metrics WHERE account_id = ? AND country = ? AND day >= ? AND day <= ? "
+                + "GROUP BY country ORDER BY total_spent DESC", sql.replaceAll("\\s+", " "));
+        assertEquals(List.of(accountId, "US", "2024-01-01", "2024-01-31"), params);
+    }
+
+    @Test
+    void buildSelectSql_ForAdmin_ShouldNotFilterByAccount() {
+        // Arrange
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildSelectSql(query(true, List.of(), "All", ""), params);
+
+        // Assert
+        assertFalse(sql.contains("account_id"));
+        assertEquals(List.of("2024-01-01", "2024-01-31"), params);
+    }
+
+    @Test
+    void getAggregatedData_ShouldEstimateThenRunAdmittedQuery() {
+        // Arrange
+        AggregationQuery query = query(false, List.of("country"), "All", "");
+        AggregatedMetrics row = new AggregatedMetrics(Map.of("country", "US"), BigDecimal.TEN, 0L, 5L, 2);
+        when(costEstimator.estimate(eq(query), anyString(), anyList())).thenReturn(50L);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenReturn(List.of(row));
+
+        // Act
+        List<AggregatedMetrics> result = aggregationService.getAggregatedData(query);
+
+        // Assert
+        assertEquals(List.of(row), result);
+    }
+
+    @Test
+    void getAggregatedData_OverBudget_ShouldNotQueryClickHouse() {
+        // Arrange
+        AggregationQuery query = query(true, List.of("day", "campaign"), "All", "");
+        when(costEstimator.estimate(eq(query), anyString(), anyList())).thenReturn(50_000L);
+
+        // Act & Assert
+        assertThrows(QueryRejectedException.class, () -> aggregationService.getAggregatedData(query));
+        verify(jdbcTemplate, never()).query(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    void getTimeSeries_Hourly_ShouldThrow() {
+        // Act / Assert: merged rows keep one arbitrary event_time per day, so hours are not exact
+        assertThrows(IllegalArgumentException.class,
+                () -> aggregationService.getTimeSeries(query(false, List.of(), "All", ""), "hour", 0, "spent"));
+    }
+
+    @Test
+    void getTimeSeries_UnknownInterval_ShouldThrow() {
+        // Act / Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> aggregationService.getTimeSeries(query(false, List.of(), "All", ""), "minute", 0, "spent"));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void buildComparisonSql_ShouldReadBothPeriodsInOneScan() {
+        // Arrange
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildComparisonSql(query(false, List.of("country"), "All", "spent"),
+                "2023-12-01", "2023-12-31", params);
+
+        // Assert
+        assertEquals("SELECT country, sumIf(spent, day >= ? AND day <= ?) AS total_spent, "
+                + "sumIf(spent, day >= ? AND day <= ?) AS previous_spent, "
+                + "sumIf(clicks, day >= ? AND day <= ?) AS total_clicks, "
+                + "sumIf(clicks, day >= ? AND day <= ?) AS previous_clicks FROM appdb.ads_metrics "
+                + "WHERE account_id = ? AND ((day >= ? AND day <= ?) OR (day >= ? AND day <= ?)) "
+                + "GROUP BY country ORDER BY total_spent DESC", sql);
+        assertEquals(List.of("2024-01-01", "2024-01-31", "2023-12-01", "2023-12-31",
+                "2024-01-01", "2024-01-31", "2023-12-01", "2023-12-31",
+                accountId, "2024-01-01", "2024-01-31", "2023-12-01", "2023-12-31"), params);
+    }
+
+    @Test
+    void buildComparisonSql_WithRatioSort_ShouldRankByCurrentPeriodOnly() {
+        // Arrange: ctr needs impressions, which the query does not select
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildComparisonSql(query(false, List.of("country"), "All", "ctr"),
+                "2023-12-01", "2023-12-31", params);
+
+        // Assert
+        assertEquals("SELECT country, sumIf(spent, day >= ? AND day <= ?) AS total_spent, "
+                + "sumIf(spent, day >= ? AND day <= ?) AS previous_spent, "
+                + "sumIf(clicks, day >= ? AND day <= ?) AS total_clicks, "
+                + "sumIf(clicks, day >= ? AND day <= ?) AS previous_clicks, "
+                + "sumIf(impressions, day >= ? AND day <= ?) AS total_impressions FROM appdb.ads_metrics "
+                + "WHERE account_id = ? AND ((day >= ? AND day <= ?) OR (day >= ? AND day <= ?)) "
+                + "GROUP BY country ORDER BY total_clicks / nullIf(total_impressions, 0) DESC NULLS LAST", sql);
+        assertEquals(List.of("2024-01-01", "2024-01-31", "2023-12-01", "2023-12-31",
+                "2024-01-01", "2024-01-31", "2023-12-01", "2023-12-31", "2024-01-01", "2024-01-31",
+                accountId, "2024-01-01", "2024-01-31", "2023-12-01", "2023-12-31"), params);
+    }
+
+    @Test
+    void buildSelectSql_WithDerivedMetricSort_ShouldComputeRatioInQuery() {
+        // Arrange
+        AggregationQuery query = new AggregationQuery(accountId, false, List.of("campaign"), List.of("clicks", "ctr"),
+                "All", "All", "All", "All", "ctr", "desc", "2024-01-01", "2024-01-31");
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildSelectSql(query, params).replaceAll("\\s+", " ");
+
+        // Assert
+        assertEquals("SELECT campaign, sum(clicks) as total_clicks, sum(clicks) / nullIf(sum(impressions), 0) as ctr, "
+                + "count(*) as record_count FROM appdb.ads_metrics WHERE account_id = ? AND day >= ? AND day <= ? "
+                + "GROUP BY campaign ORDER BY sum(clicks) / nullIf(sum(impressions), 0) DESC NULLS LAST", sql);
+    }
+
+    @Test
+    void buildSelectSql_SortByDerivedMetricNotSelected_ShouldStillOrderByExpression() {
+        // Arrange
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildSelectSql(query(true, List.of("country"), "All", "cpm"), params);
+
+        // Assert
+        assertTrue(sql.endsWith("ORDER BY toFloat64(sum(spent)) * 1000 / nullIf(sum(impressions), 0) DESC NULLS LAST"));
+        assertFalse(sql.contains(" as cpm"));
+    }
+
+    @Test
+    void buildSelectSql_WithRollup_ShouldEmitSubtotalsAndGroupingMask() {
+        // Arrange
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildSelectSql(query(true, List.of("country", "platform"), "All", ""), params, true)
+                .replaceAll("\\s+", " ");
+
+        // Assert
+        assertEquals("SELECT country, platform, sum(spent) as total_spent, sum(clicks) as total_clicks, "
+                + "count(*) as record_count, GROUPING(country, platform) as grouping_mask FROM appdb.ads_metrics "
+                + "WHERE day >= ? AND day <= ? GROUP BY country, platform WITH ROLLUP ORDER BY country, platform "
+                + "SETTINGS group_by_use_nulls = 1", sql);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getAggregatedData_WithRollup_ShouldDeriveGroupingLevelFromMask() throws Exception {
+        // Arrange
+        ResultSet rs = mock(ResultSet.class);
+        when(costEstimator.estimate(any(), anyString(), anyList())).thenReturn(10L);
+        when(rs.findColumn("country")).thenReturn(1);
+        when(rs.findColumn("platform")).thenReturn(2);
+        when(rs.findColumn("total_spent")).thenReturn(3);
+        when(rs.findColumn("total_clicks")).thenReturn(4);
+        when(rs.findColumn("record_count")).thenReturn(5);
+        when(rs.findColumn("grouping_mask")).thenReturn(6);
+        when(rs.getString(1)).thenReturn("US");
+        when(rs.getBigDecimal(3)).thenReturn(BigDecimal.TEN);
+        when(rs.getLong(anyInt())).thenReturn(0L);
+        when(rs.getLong(6)).thenReturn(1L);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            RowMapper<AggregatedMetrics> mapper = invocation.getArgument(1);
+            return List.of(mapper.mapRow(rs, 0));
+        });
+
+        // Act
+        List<AggregatedMetrics> result = aggregationService.getAggregatedData(
+                query(false, List.of("country", "platform"), "All", ""), false, true);
+
+        // Assert
+        assertEquals(1, result.get(0).getGroupingLevel());
+        assertEquals("US", result.get(0).getDimensions().get("country"));
+        assertNull(result.get(0).getDimensions().get("platform"));
+    }
+
+    @Test
+    void buildTopNSql_WithoutOthers_ShouldLimitByPartition() {
+        // Arrange
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildTopNSql(query(false, List.of("country", "campaign"), "All", ""), 5, "spent", false, params);
+
+        // Assert
+        assertEquals("SELECT country, campaign, sum(spent) AS total_spent, sum(impressions) AS total_impressions, "
+                + "sum(clicks) AS total_clicks, count(*) AS record_count FROM appdb.ads_metrics "
+                + "WHERE account_id = ? AND day >= ? AND day <= ? GROUP BY country, campaign "
+                + "ORDER BY country, total_spent DESC, campaign LIMIT ? BY country", sql);
+        assertEquals(List.of(accountId, "2024-01-01", "2024-01-31", 5), params);
+    }
+
+    @Test
+    void buildTopNSql_WithOthers_ShouldCollapseTailIntoOneRowPerPartition() {
+        // Arrange
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildTopNSql(query(true, List.of("country", "campaign"), "All", ""), 3, "clicks", true, params);
+
+        // Assert
+        assertEquals("SELECT country, any(ranked_value) AS campaign, sum(group_spent) AS total_spent, "
+                + "sum(group_impressions) AS total_impressions, sum(group_clicks) AS total_clicks, "
+                + "sum(group_count) AS record_count, min(rn) > 3 AS is_others FROM (SELECT country, "
+                + "campaign AS ranked_value, sum(spent) AS group_spent, sum(impressions) AS group_impressions, "
+                + "sum(clicks) AS group_clicks, count(*) AS group_count, "
+                + "row_number() OVER (PARTITION BY country ORDER BY group_clicks DESC, ranked_value) AS rn "
+                + "FROM appdb.ads_metrics WHERE day >= ? AND day <= ? GROUP BY country, campaign) "
+                + "GROUP BY country, least(rn, 4) AS bucket ORDER BY country, bucket", sql);
+        assertEquals(List.of("2024-01-01", "2024-01-31"), params);
+    }
+
+    @Test
+    void getTopN_WithoutGroupBy_ShouldThrow() {
+        // Act / Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> aggregationService.getTopN(query(false, List.of(), "All", ""), 5, "spent", false));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getTopN_WithDerivedMetrics_ShouldComputeThemFromTheSums() throws Exception {
+        // Arrange
+        ResultSet rs = mock(ResultSet.class);
+        when(costEstimator.estimate(any(), anyString(), anyList())).thenReturn(10L);
+        when(rs.getObject("country")).thenReturn("US");
+        when(rs.getBigDecimal("total_spent")).thenReturn(new BigDecimal("5.000000"));
+        when(rs.getLong("total_impressions")).thenReturn(1000L);
+        when(rs.getLong("total_clicks")).thenReturn(0L);
+        when(rs.getLong("record_count")).thenReturn(3L);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            RowMapper<AggregatedMetrics> mapper = invocation.getArgument(1);
+            return List.of(mapper.mapRow(rs, 0));
+        });
+        AggregationQuery query = new AggregationQuery(accountId, false, List.of("country"), List.of("ctr", "cpc", "cpm"),
+                "All", "All", "All", "All", "", "desc", "2024-01-01", "2024-01-31");
+
+        // Act
+        AggregatedMetrics row = aggregationService.getTopN(query, 5, "spent", false).get(0);
+
+        // Assert
+        assertEquals(0.0, row.getDerived().get("ctr"));
+        assertEquals(5.0, row.getDerived().get("cpm"));
+        assertTrue(row.getDerived().containsKey("cpc"));
+        assertNull(row.getDerived().get("cpc"));
+        assertEquals(BigDecimal.ZERO, row.getTotalSpent());
+    }
+
+    @Test
+    void buildDaySegmentSql_ShouldGroupByDayAndDimensionsForMissingDaysOnly() {
+        // Arrange
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildDaySegmentSql(query(false, List.of("country"), "US", "spent"),
+                List.of(LocalDate.parse("2024-01-30"), LocalDate.parse("2024-01-31")), params);
+
+        // Assert
+        assertEquals("SELECT toString(day) AS segment_day, country, sum(spent) AS total_spent, "
+                + "sum(impressions) AS total_impressions, sum(clicks) AS total_clicks, count(*) AS record_count "
+                + "FROM appdb.ads_metrics WHERE account_id = ? AND country = ? AND day IN (?, ?) "
+                + "GROUP BY segment_day, country", sql);
+        assertEquals(List.of(accountId, "US", "2024-01-30", "2024-01-31"), params);
+    }
+
+    @Test
+    void getAggregatedData_WithWarmSegments_ShouldOnlyScanNewDays() {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DaySegmentCache segmentCache = new DaySegmentCache(true, 100, 100, 400, 31, 0,
+                Clock.fixed(Instant.parse("2024-06-01T00:00:00Z"), ZoneOffset.UTC), meterRegistry);
+        AggregationService service = new AggregationService(jdbcTemplate, costEstimator,
+                new QueryAdmission(100, 1_000, 10_000, 100_000, 2, 1, 1, 50, meterRegistry),
+                new QueryCoalescer(mock(QueryTracker.class), 1_000, meterRegistry), segmentCache,
+                new HotWindowStore(jdbcTemplate, false, 30, 1, meterRegistry),
+                new AggregationCube(jdbcTemplate, false, 30, 5, 4, 1000, Clock.systemUTC(), meterRegistry),
+                new DrillDownCache(0, 0, 60, meterRegistry));
+        when(costEstimator.estimate(any(), anyString(), anyList())).thenReturn(10L);
+        AggregationQuery first = new AggregationQuery(accountId, false, List.of(), List.of("spent", "clicks"),
+                "All", "All", "All", "All", "", "desc", "2024-01-01", "2024-01-03");
+        AggregationQuery slid = first.withDateRange("2024-01-02", "2024-01-04");
+
+        // Act
+        service.getAggregatedData(first);
+        service.getAggregatedData(slid);
+
+        // Assert
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowCallbackHandler.class), params.capture());
+        assertEquals(List.of(accountId, "2024-01-01", "2024-01-02", "2024-01-03"), List.of(params.getAllValues().get(0)));
+        assertEquals(List.of(accountId, "2024-01-04"), List.of(params.getAllValues().get(1)));
+    }
+
+    @Test
+    void getAggregatedData_WithTooManyUncachedDays_ShouldAggregateDirectly() {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AggregationService service = new AggregationService(jdbcTemplate, costEstimator,
+                new QueryAdmission(100, 1_000, 10_000, 100_000, 2, 1, 1, 50, meterRegistry),
+                new QueryCoalescer(mock(QueryTracker.class), 1_000, meterRegistry),
+                new DaySegmentCache(true, 100, 100, 400, 2, 0,
+                        Clock.fixed(Instant.parse("2024-06-01T00:00:00Z"), ZoneOffset.UTC), meterRegistry),
+                new HotWindowStore(jdbcTemplate, false, 30, 1, meterRegistry),
+                new AggregationCube(jdbcTemplate, false, 30, 5, 4, 1000, Clock.systemUTC(), meterRegistry),
+                new DrillDownCache(0, 0, 60, meterRegistry));
+        when(costEstimator.estimate(any(), anyString(), anyList())).thenReturn(10L);
+
+        // Act
+        service.getAggregatedData(new AggregationQuery(accountId, false, List.of(), List.of("spent"),
+                "All", "All", "All", "All", "", "desc", "2024-01-01", "2024-01-03"));
+
+        // Assert
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), any(Object[].class));
+        verify(jdbcTemplate, never()).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void getAggregatedData_LoadingDaySegments_ShouldNotUseQueryCache() {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Clock clock = Clock.fixed(Instant.parse("2024-06-01T00:00:00Z"), ZoneOffset.UTC);
+        QuerySettings settings = new QuerySettings(Map.of(QuerySettings.INTERACTIVE, Map.of("query_cache_ttl", 300L)),
+                1, clock, meterRegistry);
+        AggregationService service = new AggregationService(jdbcTemplate, costEstimator,
+                new QueryAdmission(100, 1_000, 10_000, 100_000, 2, 1, 1, 50, meterRegistry),
+                new QueryCoalescer(mock(QueryTracker.class), 1_000, meterRegistry),
+                new DaySegmentCache(true, 100, 100, 400, 31, 0, clock, meterRegistry),
+                new HotWindowStore(jdbcTemplate, false, 30, 1, meterRegistry),
+                new AggregationCube(jdbcTemplate, false, 30, 5, 4, 1000, Clock.systemUTC(), meterRegistry),
+                new DrillDownCache(0, 0, 60, meterRegistry));
+        when(costEstimator.estimate(any(), anyString(), anyList())).thenReturn(10L);
+        List<Map<String, Long>> applied = new ArrayList<>();
+        doAnswer(invocation -> applied.add(settings.forStatement(QuerySettings.INTERACTIVE)))
+                .when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        // Act
+        service.getAggregatedData(new AggregationQuery(accountId, false, List.of(), List.of("spent"),
+                "All", "All", "All", "All", "", "desc", "2024-01-01", "2024-01-03"));
+
+        // Assert: a closed range, yet the per-day load must see late ingest
+        assertEquals(List.of(Map.of()), applied);
+    }
+
+    @Test
+    void buildSampledSelectSql_ShouldSampleAndSelectSumsOfSquares() {
+        // Arrange
+        List<Object> params = new ArrayList<>();
+
+        // Act
+        String sql = aggregationService.buildSampledSelectSql(query(true, List.of("country"), "All", "clicks"), 0.01, params);
+
+        // Assert
+        assertTrue(sql.contains("FROM appdb.ads_metrics SAMPLE 0.01 WHERE day >= ? AND day <= ? "
+                + "GROUP BY country, sample_key)"));
+        assertTrue(sql.contains("any(_sample_factor) as unit_factor"));
+        // Squares of each sampled combination's total, not of stored rows
+        assertTrue(sql.contains("sum(toFloat64(unit_clicks) * unit_clicks) as clicks_sq"));
+        assertTrue(sql.endsWith(") GROUP BY country ORDER BY total_clicks DESC"));
+        assertEquals(List.of("2024-01-01", "2024-01-31"), params);
+    }
+
+    @Test
+    void buildSampledSelectSql_SortedByRatio_ShouldSortOverCombinationTotals() {
+        // Act
+        String sql = aggregationService.buildSampledSelectSql(query(true, List.of("country"), "All", "ctr"), 0.1,
+                new ArrayList<>());
+
+        // Assert
+        assertTrue(sql.endsWith("ORDER BY sum(unit_clicks) / nullIf(sum(unit_impressions), 0) DESC NULLS LAST"));
+    }
+
+    @Test
+    void getSampledAggregatedData_GroupedByEverySampledDimension_ShouldThrow() {
+        // Arrange
+        AggregationQuery query = query(true, List.of("day", "campaign", "country", "platform", "browser"), "All", "");
+
+        // Act / Assert
+        assertThrows(IllegalArgumentException.class, () -> aggregationService.getSampledAggregatedData(query, 0.1));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getSampledAggregatedData_ShouldScaleSumsAndReturnMargins() throws Exception {
+        // Arrange
+        ResultSet rs = mock(ResultSet.class);
+        when(costEstimator.estimate(any(), anyString(), anyList())).thenReturn(10L);
+        when(rs.getObject("country")).thenReturn("US");
+        when(rs.getBigDecimal("total_spent")).thenReturn(new BigDecimal("2.5"));
+        when(rs.getLong(anyString())).thenReturn(0L);
+        when(rs.getDouble(anyString())).thenReturn(0.0);
+        when(rs.getDouble("sample_factor")).thenReturn(100.0);
+        when(rs.getLong("total_clicks")).thenReturn(3L);
+        when(rs.getLong("record_count")).thenReturn(2L);
+        when(rs.getDouble("spent_sq")).thenReturn(4.25);
+        when(rs.getDouble("clicks_sq")).thenReturn(5.0);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            RowMapper<AggregatedMetrics> mapper = invocation.getArgument(1);
+            return List.of(mapper.mapRow(rs, 0));
+        });
+
+        // Act
+        List<AggregatedMetrics> result = aggregationService.getSampledAggregatedData(
+                query(true, List.of("country"), "All", ""), 0.01);
+
+        // Assert
+        AggregatedMetrics row = result.get(0);
+        assertEquals(new BigDecimal("250.000000"), row.getTotalSpent());
+        assertEquals(300L, row.getTotalClicks());
+        assertEquals(200, row.getRecordCount());
+        assertEquals(1.959964 * Math.sqrt(100 * 99 * 4.25), row.getMarginOfError().get("spent"), 1e-9);
+        assertEquals(1.959964 * Math.sqrt(100 * 99 * 5.0), row.getMarginOfError().get("clicks"), 1e-9);
+    }
+}
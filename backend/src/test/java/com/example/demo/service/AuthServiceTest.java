@@ -1,17 +1,17 @@
 package com.example.demo.service;
 
 import com.example.demo.model.Account;
+import com.example.demo.security.PasswordHasher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -23,31 +23,36 @@ import static org.mockito.Mockito.*;
 class AuthServiceTest {
 
     @Mock
-    private JdbcTemplate jdbcTemplate;
+    private AccountStore accountStore;
 
     @Mock
     private PasswordEncoder passwordEncoder;
 
-    @Mock
-    private ResultSet resultSet;
+    private PasswordHasher passwordHasher;
 
     private AuthService authService;
 
     @BeforeEach
     void setUp() {
-        authService = new AuthService(jdbcTemplate, passwordEncoder);
+        passwordHasher = new PasswordHasher(passwordEncoder, 1, 4, 5000, new SimpleMeterRegistry());
+        authService = new AuthService(accountStore, passwordHasher);
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordHasher.shutdown();
     }
 
     @Test
-    void findByEmail_WhenUserExists_ShouldReturnAccount() throws SQLException {
+    void findByEmail_WhenUserExists_ShouldReturnAccount() {
         // Arrange
         String email = "test@example.com";
         UUID userId = UUID.randomUUID();
         String passwordHash = "hashedPassword";
         String createdAt = "2023-01-01";
 
-        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq(email)))
-                .thenAnswer(invocation -> Optional.of(new Account(userId, email, passwordHash, createdAt)));
+        when(accountStore.findByEmail(email))
+                .thenReturn(Optional.of(new Account(userId, email, passwordHash, createdAt)));
 
         // Act
         Optional<Account> result = authService.findByEmail(email);
@@ -66,8 +71,7 @@ class AuthServiceTest {
         // Arrange
         String email = "nonexistent@example.com";
 
-        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq(email)))
-                .thenReturn(Optional.empty());
+        when(accountStore.findByEmail(email)).thenReturn(Optional.empty());
 
         // Act
         Optional<Account> result = authService.findByEmail(email);
@@ -82,11 +86,9 @@ class AuthServiceTest {
         String email = "newuser@example.com";
         String rawPassword = "password123";
         String hashedPassword = "hashedPassword123";
-        UUID generatedId = UUID.randomUUID();
 
         when(passwordEncoder.encode(rawPassword)).thenReturn(hashedPassword);
-        when(jdbcTemplate.update(anyString(), anyString(), eq(email), eq(hashedPassword)))
-                .thenReturn(1);
+        when(accountStore.create(any(Account.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         // Act
         Account result = authService.register(email, rawPassword);
@@ -97,7 +99,19 @@ class AuthServiceTest {
         assertEquals(hashedPassword, result.getPasswordHash());
         assertNotNull(result.getId());
         verify(passwordEncoder).encode(rawPassword);
-        verify(jdbcTemplate).update(anyString(), anyString(), eq(email), eq(hashedPassword));
+        verify(accountStore).create(argThat(a -> email.equals(a.getEmail()) && hashedPassword.equals(a.getPasswordHash())));
+    }
+
+    @Test
+    void register_WhenEmailTakenConcurrently_ShouldPropagateDuplicateKey() {
+        // Arrange
+        String email = "taken@example.com";
+
+        when(passwordEncoder.encode("password123")).thenReturn("hashedPassword123");
+        when(accountStore.create(any(Account.class))).thenThrow(new DuplicateKeyException("Email already registered"));
+
+        // Act & Assert
+        assertThrows(DuplicateKeyException.class, () -> authService.register(email, "password123"));
     }
 
     @Test
@@ -0,0 +1,132 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.CursorPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class CampaignCatalogTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private CampaignCatalog catalog;
+
+    private final UUID accountA = UUID.randomUUID();
+    private final UUID accountB = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        catalog = new CampaignCatalog(jdbcTemplate);
+        catalog.onIngested(events(accountA, "Summer Sale", "summer launch", "Spring Promo", "Black Friday", "Summit"));
+        catalog.onIngested(events(accountB, "Summer B2B"));
+    }
+
+    private List<AdEvent> events(UUID accountId, String... campaigns) {
+        List<AdEvent> events = new ArrayList<>();
+        for (String campaign : campaigns) {
+            events.add(new AdEvent(LocalDateTime.of(2024, 1, 1, 0, 0), accountId, campaign, "US",
+                    "Desktop", "Chrome", BigDecimal.ONE, 1, 0));
+        }
+        return events;
+    }
+
+    @Test
+    void search_Prefix_ShouldMatchCaseInsensitivelyInOrder() {
+        // Act
+        CursorPage<String> page = catalog.search(accountA, "SUM", CampaignCatalog.Mode.PREFIX, 10, null);
+
+        // Assert
+        assertEquals(List.of("summer launch", "Summer Sale", "Summit"), page.getItems());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void search_Substring_ShouldMatchAnywhereInName() {
+        // Act
+        CursorPage<String> page = catalog.search(accountA, "promo", CampaignCatalog.Mode.SUBSTRING, 10, null);
+
+        // Assert
+        assertEquals(List.of("Spring Promo"), page.getItems());
+    }
+
+    @Test
+    void search_WithCursor_ShouldContinueAfterPreviousPage() {
+        // Act
+        CursorPage<String> first = catalog.search(accountA, "s", CampaignCatalog.Mode.PREFIX, 2, null);
+        CursorPage<String> second = catalog.search(accountA, "s", CampaignCatalog.Mode.PREFIX, 2, first.getNextCursor());
+
+        // Assert
+        assertEquals(List.of("Spring Promo", "summer launch"), first.getItems());
+        assertNotNull(first.getNextCursor());
+        assertEquals(List.of("Summer Sale", "Summit"), second.getItems());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void search_ShouldScopeToAccountAndCoverAllAccountsForAdmin() {
+        // Act
+        List<String> own = catalog.search(accountB, "summer", CampaignCatalog.Mode.PREFIX, 10, null).getItems();
+        List<String> all = catalog.search(null, "summer", CampaignCatalog.Mode.PREFIX, 10, null).getItems();
+
+        // Assert
+        assertEquals(List.of("Summer B2B"), own);
+        assertEquals(List.of("Summer B2B", "summer launch", "Summer Sale"), all);
+        assertTrue(catalog.search(UUID.randomUUID(), "", CampaignCatalog.Mode.PREFIX, 10, null).getItems().isEmpty());
+    }
+
+    @Test
+    void search_SubstringWithRareMatch_ShouldBoundEachPageAndResumeFromCursor() {
+        // Arrange: the only match sorts after more entries than one page may examine
+        List<AdEvent> many = new ArrayList<>();
+        for (int i = 0; i < CampaignCatalog.MAX_EXAMINED + 10; i++) {
+            many.addAll(events(accountB, String.format("Campaign %05d", i)));
+        }
+        many.addAll(events(accountB, "Zeta Needle"));
+        catalog.onIngested(many);
+
+        // Act
+        CursorPage<String> first = catalog.search(accountB, "needle", CampaignCatalog.Mode.SUBSTRING, 10, null);
+        CursorPage<String> second = catalog.search(accountB, "needle", CampaignCatalog.Mode.SUBSTRING, 10,
+                first.getNextCursor());
+
+        // Assert
+        assertTrue(first.getItems().isEmpty());
+        assertNotNull(first.getNextCursor());
+        assertEquals(List.of("Zeta Needle"), second.getItems());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void search_ShouldClampLimit() {
+        // Arrange
+        List<AdEvent> many = new ArrayList<>();
+        for (int i = 0; i < CampaignCatalog.MAX_LIMIT + 50; i++) {
+            many.addAll(events(accountB, String.format("Campaign %04d", i)));
+        }
+        catalog.onIngested(many);
+
+        // Act
+        CursorPage<String> page = catalog.search(accountB, "campaign", CampaignCatalog.Mode.PREFIX, 10_000, null);
+
+        // Assert
+        assertEquals(CampaignCatalog.MAX_LIMIT, page.getItems().size());
+        assertEquals("Campaign 0000", page.getItems().get(0));
+        assertNotNull(page.getNextCursor());
+        assertEquals(page.getItems(), page.getItems().stream().sorted().collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaySegmentCacheTest {
+
+    private static final LocalDate TODAY = LocalDate.parse("2024-06-01");
+
+    private final UUID accountId = UUID.randomUUID();
+    private DaySegmentCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new DaySegmentCache(true, 3, 2, 400, 31, 0,
+                Clock.fixed(Instant.parse("2024-06-01T12:00:00Z"), ZoneOffset.UTC), new SimpleMeterRegistry());
+    }
+
+    private AggregationQuery query(List<String> groupBy, List<String> metrics, String sortBy) {
+        return new AggregationQuery(accountId, false, groupBy, metrics,
+                "All", "All", "All", "All", sortBy, "desc", "2024-05-01", "2024-05-31");
+    }
+
+    private DaySegmentCache.DaySegment segment(Object key, long clicks, long impressions) {
+        return new DaySegmentCache.DaySegment(Map.of(List.of(key),
+                new DaySegmentCache.Partial(BigDecimal.ONE, impressions, clicks, 1)));
+    }
+
+    @Test
+    void put_ForTodayOrLater_ShouldNotCache() {
+        // Act
+        cache.put("shape", TODAY, segment("US", 1, 1), cache.generation());
+        cache.put("shape", TODAY.minusDays(1), segment("US", 1, 1), cache.generation());
+
+        // Assert
+        assertNull(cache.get("shape", TODAY));
+        assertNotNull(cache.get("shape", TODAY.minusDays(1)));
+    }
+
+    @Test
+    void onIngested_ForSealedDay_ShouldEvictItAndRejectLoadsThatRaced() {
+        // Arrange
+        LocalDate day = TODAY.minusDays(3);
+        long loadedAt = cache.generation();
+        cache.put("shape", day, segment("US", 1, 1), loadedAt);
+
+        // Act
+        cache.onIngested(List.of(new AdEvent(day.atTime(10, 0), accountId, "c", "US", "web", "chrome",
+                BigDecimal.ONE, 1, 1)));
+        cache.put("other", day, segment("US", 1, 1), loadedAt);
+
+        // Assert
+        assertNull(cache.get("shape", day));
+        assertNull(cache.get("other", day));
+    }
+
+    @Test
+    void onIngested_ForToday_ShouldKeepSealedDays() {
+        // Arrange
+        LocalDate day = TODAY.minusDays(1);
+        cache.put("shape", day, segment("US", 1, 1), cache.generation());
+
+        // Act
+        cache.onIngested(List.of(new AdEvent(LocalDateTime.parse("2024-06-01T09:00:00"), accountId, "c", "US", "web",
+                "chrome", BigDecimal.ONE, 1, 1)));
+
+        // Assert
+        assertNotNull(cache.get("shape", day));
+    }
+
+    @Test
+    void put_OverCapacity_ShouldEvictOldestDay() {
+        // Act
+        for (int i = 1; i <= 4; i++) {
+            cache.put("shape", TODAY.minusDays(i), segment("US", 1, 1), cache.generation());
+        }
+
+        // Assert
+        assertNull(cache.get("shape", TODAY.minusDays(4)));
+        assertNotNull(cache.get("shape", TODAY.minusDays(1)));
+    }
+
+    @Test
+    void put_OverGroupCapacity_ShouldEvictOldestDayEvenWithFewSegments() {
+        // Arrange
+        DaySegmentCache.DaySegment twoGroups = new DaySegmentCache.DaySegment(Map.of(
+                List.of("US"), new DaySegmentCache.Partial(BigDecimal.ONE, 1, 1, 1),
+                List.of("DE"), new DaySegmentCache.Partial(BigDecimal.ONE, 1, 1, 1)));
+
+        // Act
+        cache.put("shape", TODAY.minusDays(2), twoGroups, cache.generation());
+        cache.put("shape", TODAY.minusDays(1), twoGroups, cache.generation());
+
+        // Assert
+        assertNull(cache.get("shape", TODAY.minusDays(2)));
+        assertNotNull(cache.get("shape", TODAY.minusDays(1)));
+    }
+
+    @Test
+    void put_WithTooManyGroups_ShouldStopCachingTheShape() {
+        // Arrange
+        AggregationQuery query = query(List.of("country"), List.of("clicks"), "");
+        String shape = cache.shapeKey(query);
+        DaySegmentCache.DaySegment wide = new DaySegmentCache.DaySegment(Map.of(
+                List.of("US"), new DaySegmentCache.Partial(BigDecimal.ONE, 1, 1, 1),
+                List.of("DE"), new DaySegmentCache.Partial(BigDecimal.ONE, 1, 1, 1),
+                List.of("FR"), new DaySegmentCache.Partial(BigDecimal.ONE, 1, 1, 1)));
+
+        // Act
+        cache.put(shape, TODAY.minusDays(1), wide, cache.generation());
+
+        // Assert
+        assertFalse(cache.supports(query));
+    }
+
+    @Test
+    void merge_ShouldSumDaysAndOrderByRatioEvenWhenItsInputsWereNotRequested() {
+        // Arrange: US 2/100 clicks, DE 3/10 clicks over two days
+        AggregationQuery query = query(List.of("country"), List.of("clicks"), "ctr");
+
+        // Act
+        List<AggregatedMetrics> rows = cache.merge(query, List.of(
+                segment("US", 1, 50), segment("US", 1, 50), segment("DE", 3, 10)));
+
+        // Assert
+        assertEquals(2, rows.size());
+        assertEquals("DE", rows.get(0).getDimensions().get("country"));
+        assertEquals(2L, rows.get(1).getTotalClicks());
+        assertEquals(0L, rows.get(1).getTotalImpressions());
+        assertEquals(2, rows.get(1).getRecordCount());
+    }
+
+    @Test
+    void merge_WithoutGroupByOverEmptyDays_ShouldReturnZeroTotal() {
+        // Act
+        List<AggregatedMetrics> rows = cache.merge(query(List.of(), List.of("spent"), ""),
+                List.of(new DaySegmentCache.DaySegment(Map.of())));
+
+        // Assert
+        assertEquals(1, rows.size());
+        assertEquals(BigDecimal.ZERO, rows.get(0).getTotalSpent());
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrillDownCacheTest {
+
+    private final UUID accountId = UUID.randomUUID();
+    private SimpleMeterRegistry meterRegistry;
+    private DrillDownCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new DrillDownCache(8, 1000, 60, meterRegistry);
+    }
+
+    private AggregationQuery query(List<String> groupBy, List<String> metrics, String country) {
+        return new AggregationQuery(accountId, false, groupBy, metrics,
+                country, "All", "All", "All", "", "desc", "2024-01-01", "2024-01-31");
+    }
+
+    private AggregatedMetrics row(String day, String campaign, String country, String spent, long clicks) {
+        return new AggregatedMetrics(Map.of("day", LocalDate.parse(day), "campaign", campaign, "country", country),
+                new BigDecimal(spent), 0L, clicks, 1);
+    }
+
+    private void rememberDailyRows() {
+        cache.remember(query(List.of("day", "campaign", "country"), List.of("spent", "clicks"), "All"), List.of(
+                row("2024-01-01", "a", "US", "1.5", 1),
+                row("2024-01-02", "a", "DE", "2.25", 2),
+                row("2024-01-02", "b", "US", "3", 3),
+                row("2024-01-09", "a", "US", "4", 4)));
+    }
+
+    @Test
+    void rollUp_ToWeekAndCampaign_ShouldSumDailyRows() {
+        // Arrange
+        rememberDailyRows();
+
+        // Act
+        Optional<List<AggregatedMetrics>> rows = cache.rollUp(query(List.of("week", "campaign"), List.of("spent", "clicks"), "All"));
+
+        // Assert
+        assertTrue(rows.isPresent());
+        assertEquals(3, rows.get().size());
+        AggregatedMetrics first = rows.get().get(0);
+        assertEquals(LocalDate.parse("2024-01-01"), first.getDimensions().get("week"));
+        assertEquals("a", first.getDimensions().get("campaign"));
+        assertEquals(0, new BigDecimal("3.75").compareTo(first.getTotalSpent()));
+        assertEquals(3L, first.getTotalClicks());
+        assertEquals(2, first.getRecordCount());
+        assertEquals(1.0, meterRegistry.counter("query.drilldown.requests", "result", "hit").count());
+    }
+
+    @Test
+    void rollUp_WithFilterOnCachedDimension_ShouldFilterInMemory() {
+        // Arrange
+        rememberDailyRows();
+
+        // Act
+        Optional<List<AggregatedMetrics>> rows = cache.rollUp(query(List.of("month"), List.of("clicks"), "US"));
+
+        // Assert
+        assertTrue(rows.isPresent());
+        assertEquals(1, rows.get().size());
+        assertEquals(LocalDate.parse("2024-01-01"), rows.get().get(0).getDimensions().get("month"));
+        assertEquals(8L, rows.get().get(0).getTotalClicks());
+        assertEquals(BigDecimal.ZERO, rows.get().get(0).getTotalSpent());
+    }
+
+    @Test
+    void rollUp_WhenNotDerivable_ShouldMiss() {
+        // Arrange
+        rememberDailyRows();
+        AggregationQuery otherDimension = query(List.of("platform"), List.of("clicks"), "All");
+        AggregationQuery missingMetric = query(List.of("campaign"), List.of("impressions"), "All");
+        AggregationQuery otherRange = query(List.of("campaign"), List.of("clicks"), "All").withDateRange("2024-01-01", "2024-01-07");
+
+        // Act & Assert
+        assertTrue(cache.rollUp(otherDimension).isEmpty());
+        assertTrue(cache.rollUp(missingMetric).isEmpty());
+        assertTrue(cache.rollUp(otherRange).isEmpty());
+        assertEquals(3.0, meterRegistry.counter("query.drilldown.requests", "result", "miss").count());
+    }
+
+    @Test
+    void onIngested_IntoCachedRange_ShouldDropEntry() {
+        // Arrange
+        rememberDailyRows();
+
+        // Act
+        cache.onIngested(List.of(new AdEvent(LocalDate.parse("2024-01-05").atTime(10, 0), accountId, "a", "US", "web",
+                "chrome", BigDecimal.ONE, 1, 1)));
+
+        // Assert
+        assertTrue(cache.rollUp(query(List.of("campaign"), List.of("clicks"), "All")).isEmpty());
+    }
+}
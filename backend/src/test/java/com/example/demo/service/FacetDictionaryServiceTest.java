@@ -0,0 +1,93 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FacetDictionaryServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private FacetDictionaryService dictionary;
+
+    private final UUID accountA = UUID.randomUUID();
+    private final UUID accountB = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        dictionary = new FacetDictionaryService(jdbcTemplate);
+    }
+
+    private AdEvent event(UUID accountId, String campaign, String country) {
+        return new AdEvent(LocalDateTime.of(2024, 1, 1, 12, 0), accountId, campaign, country,
+                "Desktop", "Chrome", BigDecimal.ONE, 10, 1);
+    }
+
+    @Test
+    void warm_ShouldLoadPerAccountAndGlobalValues() throws Exception {
+        // Arrange
+        Array countries = mock(Array.class);
+        Array other = mock(Array.class);
+        when(countries.getArray()).thenReturn(new String[] {"US", "CA"});
+        when(other.getArray()).thenReturn(new String[] {"x"});
+        when(resultSet.getString("account_id")).thenReturn(accountA.toString());
+        when(resultSet.getArray(anyString())).thenReturn(other);
+        when(resultSet.getArray("country")).thenReturn(countries);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        // Act
+        dictionary.warm();
+
+        // Assert
+        assertEquals(List.of("CA", "US"), dictionary.values(accountA, "country"));
+        assertEquals(List.of("CA", "US"), dictionary.values(null, "country"));
+        assertEquals(List.of(), dictionary.values(accountB, "country"));
+    }
+
+    @Test
+    void onIngested_ShouldAddNewValuesInSortedOrder() {
+        // Act
+        dictionary.onIngested(List.of(event(accountA, "Summer", "US"), event(accountB, "Autumn", "DE")));
+        dictionary.onIngested(List.of(event(accountA, "Autumn", "US")));
+
+        // Assert
+        assertEquals(List.of("Autumn", "Summer"), dictionary.values(accountA, "campaign"));
+        assertEquals(List.of("US"), dictionary.values(accountA, "country"));
+        assertEquals(List.of("DE", "US"), dictionary.values(null, "country"));
+        assertEquals(List.of("Autumn"), dictionary.values(accountB, "campaign"));
+    }
+
+    @Test
+    void values_UnknownDimension_ShouldThrow() {
+        // Arrange
+        dictionary.onIngested(List.of(event(accountA, "Summer", "US")));
+
+        // Act / Assert
+        assertThrows(IllegalArgumentException.class, () -> dictionary.values(accountA, "spent"));
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AdEvent;
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import com.example.demo.model.FacetValue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class HotWindowStoreTest {
+
+    private final UUID accountId = UUID.randomUUID();
+    private final UUID otherAccountId = UUID.randomUUID();
+    private HotWindowStore store;
+
+    @BeforeEach
+    void setUp() {
+        // Today is 2024-06-10 (a Monday); the 7-day window starts 2024-06-04
+        store = new HotWindowStore(mock(JdbcTemplate.class), true, 7, 2,
+                Clock.fixed(Instant.parse("2024-06-10T12:00:00Z"), ZoneOffset.UTC), new SimpleMeterRegistry());
+        store.warm();
+        store.onIngested(List.of(
+                event(accountId, "2024-06-08T10:00:00", "summer", "US", "1.500000", 100, 5),
+                event(accountId, "2024-06-09T10:00:00", "summer", "US", "2.000000", 200, 10),
+                event(accountId, "2024-06-09T11:00:00", "winter", "DE", "0.250000", 50, 1),
+                event(accountId, "2024-06-10T09:00:00", "summer", "DE", "1.000000", 10, 0),
+                event(otherAccountId, "2024-06-09T10:00:00", "summer", "US", "9.000000", 900, 90),
+                event(accountId, "2024-05-01T10:00:00", "summer", "US", "7.000000", 700, 70)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    private AdEvent event(UUID account, String time, String campaign, String country, String spent,
+                          long impressions, long clicks) {
+        return new AdEvent(LocalDateTime.parse(time), account, campaign, country, "web", "chrome",
+                new BigDecimal(spent), impressions, clicks);
+    }
+
+    private AggregationQuery query(boolean admin, List<String> groupBy, String country, String start, String end) {
+        return new AggregationQuery(accountId, admin, groupBy, List.of("spent", "impressions", "clicks", "ctr"),
+                country, "All", "All", "All", "spent", "desc", start, end);
+    }
+
+    @Test
+    void aggregate_ForTenant_ShouldGroupFilterAndSortInMemory() {
+        // Act
+        List<AggregatedMetrics> rows = store.aggregate(
+                query(false, List.of("campaign"), "All", "2024-06-04", "2024-06-10")).orElseThrow();
+
+        // Assert
+        assertEquals(2, rows.size());
+        assertEquals("summer", rows.get(0).getDimensions().get("campaign"));
+        assertEquals(new BigDecimal("4.500000"), rows.get(0).getTotalSpent());
+        assertEquals(310L, rows.get(0).getTotalImpressions());
+        assertEquals(3, rows.get(0).getRecordCount());
+        assertEquals(15.0 / 310, rows.get(0).getDerived().get("ctr"), 1e-12);
+    }
+
+    @Test
+    void aggregate_ForAdminByDayWithFilter_ShouldIncludeAllAccounts() {
+        // Act
+        List<AggregatedMetrics> rows = store.aggregate(
+                query(true, List.of("day"), "US", "2024-06-04", "2024-06-10")).orElseThrow();
+
+        // Assert
+        assertEquals(2, rows.size());
+        assertEquals(LocalDate.parse("2024-06-09"), rows.get(0).getDimensions().get("day"));
+        assertEquals(new BigDecimal("11.000000"), rows.get(0).getTotalSpent());
+    }
+
+    @Test
+    void aggregate_ByWeek_ShouldBucketToMonday() {
+        // Act
+        List<AggregatedMetrics> rows = store.aggregate(
+                query(false, List.of("week", "country"), "All", "2024-06-04", "2024-06-10")).orElseThrow();
+
+        // Assert
+        List<Object> weeks = new ArrayList<>();
+        rows.forEach(row -> weeks.add(row.getDimensions().get("week")));
+        assertTrue(weeks.contains(LocalDate.parse("2024-06-03")));
+        assertTrue(weeks.contains(LocalDate.parse("2024-06-10")));
+        assertEquals(3, rows.size());
+    }
+
+    @Test
+    void aggregate_UnknownFilterValue_ShouldReturnZeroTotal() {
+        // Act
+        List<AggregatedMetrics> rows = store.aggregate(
+                query(false, List.of(), "FR", "2024-06-04", "2024-06-10")).orElseThrow();
+
+        // Assert
+        assertEquals(1, rows.size());
+        assertEquals(0, rows.get(0).getRecordCount());
+    }
+
+    @Test
+    void aggregate_StartingBeforeWindow_ShouldDecline() {
+        // Act
+        Optional<List<AggregatedMetrics>> result = store.aggregate(
+                query(false, List.of(), "All", "2024-05-01", "2024-06-10"));
+
+        // Assert
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void compact_WithAllRowsInWindow_ShouldKeepRowsAndAccountMemory() {
+        // Arrange
+        assertEquals(5, store.rows());
+        assertTrue(store.bytesPerRow() >= HotWindowStore.BYTES_PER_ROW);
+
+        // Act
+        store.compact();
+
+        // Assert
+        assertEquals(5, store.rows());
+        assertEquals(2L * 1024 * HotWindowStore.BYTES_PER_ROW, store.allocatedBytes());
+    }
+
+    @Test
+    void facets_ShouldCountRowsPerValueWithinRange() {
+        // Act
+        Map<String, List<FacetValue>> facets = store.facets(accountId, "2024-06-09", "2024-06-10", true).orElseThrow();
+
+        // Assert
+        assertEquals(List.of(new FacetValue("DE", 2L), new FacetValue("US", 1L)), facets.get("country"));
+        assertEquals(List.of(new FacetValue("summer", 2L), new FacetValue("winter", 1L)), facets.get("campaign"));
+    }
+
+    @Test
+    void facets_StartingBeforeWindow_ShouldDecline() {
+        // Act / Assert
+        assertTrue(store.facets(null, "2024-05-01", null, true).isEmpty());
+    }
+
+    @Test
+    void compact_AfterWindowSlides_ShouldDropOldRowsAndRebuildIndexes() {
+        // Arrange: two days later the window starts 2024-06-06, so 2024-06-08 onwards stays
+        MutableClock clock = new MutableClock(Instant.parse("2024-06-08T12:00:00Z"));
+        HotWindowStore sliding = new HotWindowStore(mock(JdbcTemplate.class), true, 3, 1, clock, new SimpleMeterRegistry());
+        sliding.warm();
+        sliding.onIngested(List.of(
+                event(accountId, "2024-06-06T10:00:00", "summer", "US", "1.000000", 1, 1),
+                event(accountId, "2024-06-07T10:00:00", "winter", "US", "1.000000", 1, 1),
+                event(accountId, "2024-06-08T10:00:00", "summer", "DE", "1.000000", 1, 1)));
+        clock.instant = Instant.parse("2024-06-09T12:00:00Z");
+
+        // Act
+        sliding.compact();
+        List<AggregatedMetrics> rows = sliding.aggregate(
+                query(false, List.of("campaign"), "DE", "2024-06-07", "2024-06-09")).orElseThrow();
+
+        // Assert
+        assertEquals(2, sliding.rows());
+        assertEquals(1, rows.size());
+        assertEquals("summer", rows.get(0).getDimensions().get("campaign"));
+        sliding.shutdown();
+    }
+
+    @Test
+    void splitTasks_ShouldCoverEveryRowOnceWhenViewsExceedHalfAChunk() {
+        // Arrange: one view alone, then several views sharing tasks
+        int[][] cases = {{40_000}, {100_000}, {40_000, 40_000, 3, 70_000}};
+
+        for (int[] sizes : cases) {
+            // Act
+            List<List<int[]>> tasks = HotWindowStore.splitTasks(sizes);
+
+            // Assert
+            long[] covered = new long[sizes.length];
+            for (List<int[]> task : tasks) {
+                int taskRows = 0;
+                for (int[] range : task) {
+                    covered[range[0]] += range[2] - range[1];
+                    taskRows += range[2] - range[1];
+                }
+                assertTrue(taskRows <= HotWindowStore.CHUNK_ROWS);
+            }
+            for (int v = 0; v < sizes.length; v++) {
+                assertEquals(sizes[v], covered[v]);
+            }
+        }
+    }
+
+    @Test
+    void aggregate_WithBlocksLargerThanHalfAChunk_ShouldCountEveryRowOnce() {
+        // Arrange: two accounts of 40,000 rows each end up in shared tasks
+        int perAccount = 40_000;
+        List<AdEvent> events = new ArrayList<>();
+        for (int i = 0; i < perAccount; i++) {
+            events.add(event(accountId, "2024-06-05T10:00:00", "bulk", "US", "0.000001", 1, 0));
+            events.add(event(otherAccountId, "2024-06-06T10:00:00", "bulk", "US", "0.000001", 1, 0));
+        }
+        store.onIngested(events);
+
+        // Act
+        List<AggregatedMetrics> rows = store.aggregate(new AggregationQuery(accountId, true, List.of("campaign"),
+                List.of("impressions"), "All", "bulk", "All", "All", "", "asc", "2024-06-04", "2024-06-10")).orElseThrow();
+
+        // Assert
+        assertEquals(1, rows.size());
+        assertEquals(2L * perAccount, rows.get(0).getTotalImpressions());
+        assertEquals(2 * perAccount, rows.get(0).getRecordCount());
+    }
+
+    private static final class MutableClock extends Clock {
+        Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Account;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InMemoryAccountStoreTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private InMemoryAccountStore accountStore;
+
+    @BeforeEach
+    void setUp() {
+        accountStore = new InMemoryAccountStore(jdbcTemplate);
+    }
+
+    @Test
+    void warm_ShouldIndexExistingAccountsByEmail() throws Exception {
+        // Arrange
+        UUID userId = UUID.randomUUID();
+        when(resultSet.getString("id")).thenReturn(userId.toString());
+        when(resultSet.getString("email")).thenReturn("user@example.com");
+        when(resultSet.getString("password_hash")).thenReturn("hash");
+        when(resultSet.getString("created_at")).thenReturn("2024-01-01 00:00:00");
+        doAnswer(invocation -> {
+            invocation.getArgument(1, RowCallbackHandler.class).processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        // Act
+        accountStore.warm();
+        Optional<Account> result = accountStore.findByEmail("user@example.com");
+
+        // Assert
+        assertTrue(result.isPresent());
+        assertEquals(userId, result.get().getId());
+        assertEquals("hash", result.get().getPasswordHash());
+        assertFalse(accountStore.findByEmail("other@example.com").isPresent());
+    }
+
+    @Test
+    void create_ShouldWriteThroughAndServeLookupsFromMemory() {
+        // Arrange
+        Account account = new Account(UUID.randomUUID(), "new@example.com", "hash", "");
+
+        // Act
+        Account created = accountStore.create(account);
+
+        // Assert
+        assertEquals(account.getId(), created.getId());
+        assertFalse(created.getCreatedAt().isEmpty());
+        assertSame(created, accountStore.findByEmail("new@example.com").orElse(null));
+        verify(jdbcTemplate).update(anyString(), eq(account.getId().toString()), eq("new@example.com"), eq("hash"));
+    }
+
+    @Test
+    void create_WithDuplicateEmail_ShouldThrowWithoutInserting() {
+        // Arrange
+        accountStore.create(new Account(UUID.randomUUID(), "dup@example.com", "hash", ""));
+
+        // Act & Assert
+        assertThrows(DuplicateKeyException.class,
+                () -> accountStore.create(new Account(UUID.randomUUID(), "dup@example.com", "other", "")));
+        verify(jdbcTemplate, times(1)).update(anyString(), any(), any(), any());
+    }
+
+    @Test
+    void create_WhenInsertFails_ShouldReleaseEmail() {
+        // Arrange
+        when(jdbcTemplate.update(anyString(), any(), any(), any()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(1);
+
+        // Act & Assert
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> accountStore.create(new Account(UUID.randomUUID(), "retry@example.com", "hash", "")));
+        assertFalse(accountStore.findByEmail("retry@example.com").isPresent());
+        assertNotNull(accountStore.create(new Account(UUID.randomUUID(), "retry@example.com", "hash", "")));
+    }
+
+    @Test
+    void create_WithConcurrentSignups_ShouldAcceptExactlyOne() throws Exception {
+        // Arrange
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    accountStore.create(new Account(UUID.randomUUID(), "burst@example.com", "hash", ""));
+                    return true;
+                } catch (DuplicateKeyException e) {
+                    return false;
+                }
+            }));
+        }
+
+        // Act
+        start.countDown();
+        int accepted = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(5, TimeUnit.SECONDS)) accepted++;
+        }
+        executor.shutdown();
+
+        // Assert
+        assertEquals(1, accepted);
+        verify(jdbcTemplate, times(1)).update(anyString(), any(), any(), any());
+    }
+}
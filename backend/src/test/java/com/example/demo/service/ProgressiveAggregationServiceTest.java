@@ -0,0 +1,237 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AggregatedMetrics;
+import com.example.demo.model.AggregationQuery;
+import com.example.demo.model.ProgressiveFrame;
+import com.example.demo.ratelimit.TenantRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProgressiveAggregationServiceTest {
+
+    @Mock
+    private AggregationService aggregationService;
+
+    private final UUID accountId = UUID.randomUUID();
+    private TenantRateLimiter tenantRateLimiter;
+    private ProgressiveAggregationService service;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        tenantRateLimiter = new TenantRateLimiter(100, 100, 2, 100, 100, 3, meterRegistry);
+        service = new ProgressiveAggregationService(aggregationService, new QueryTracker(meterRegistry),
+                tenantRateLimiter, 2, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    private AggregationQuery query(String start, String end) {
+        return new AggregationQuery(accountId, false, List.of("country"), List.of("clicks", "ctr"),
+                "All", "All", "All", "All", "clicks", "desc", start, end);
+    }
+
+    private AggregatedMetrics row(String country, long impressions, long clicks) {
+        return new AggregatedMetrics(Map.of("country", country), BigDecimal.ONE, impressions, clicks, 1);
+    }
+
+    @Test
+    void partitions_ShouldClipRangeToCalendarMonthsWithAllBaseMetrics() {
+        // Act
+        List<AggregationQuery> partitions = ProgressiveAggregationService.partitions(query("2024-01-15", "2024-03-10"));
+
+        // Assert
+        assertEquals(3, partitions.size());
+        assertEquals("2024-01-15", partitions.get(0).getStartDate());
+        assertEquals("2024-01-31", partitions.get(0).getEndDate());
+        assertEquals("2024-02-01", partitions.get(1).getStartDate());
+        assertEquals("2024-02-29", partitions.get(1).getEndDate());
+        assertEquals("2024-03-01", partitions.get(2).getStartDate());
+        assertEquals("2024-03-10", partitions.get(2).getEndDate());
+        assertEquals(AggregationQuery.METRICS, partitions.get(0).getMetrics());
+    }
+
+    @Test
+    void aggregate_ShouldEmitMergedFrameAfterEachMonthAndCompleteResultLast() throws Exception {
+        // Arrange
+        when(aggregationService.getAggregatedData(argThat(q -> q != null && q.getStartDate().equals("2024-01-01"))))
+                .thenReturn(List.of(row("US", 100, 1), row("DE", 100, 5)));
+        when(aggregationService.getAggregatedData(argThat(q -> q != null && q.getStartDate().equals("2024-02-01"))))
+                .thenReturn(List.of(row("US", 100, 9)));
+        List<ProgressiveFrame> frames = Collections.synchronizedList(new ArrayList<>());
+
+        // Act
+        service.aggregate(query("2024-01-01", "2024-02-29"), frames::add).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(2, frames.size());
+        assertFalse(frames.get(0).isComplete());
+        ProgressiveFrame last = frames.get(1);
+        assertTrue(last.isComplete());
+        assertEquals(2, last.getCoveredRanges().size());
+        AggregatedMetrics us = last.getData().get(0);
+        assertEquals("US", us.getDimensions().get("country"));
+        assertEquals(10L, us.getTotalClicks());
+        assertEquals(0.05, us.getDerived().get("ctr"), 1e-9);
+        // Not requested, only fetched for the ratio
+        assertEquals(0L, us.getTotalImpressions());
+        assertEquals(BigDecimal.ZERO, us.getTotalSpent());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void aggregate_WithMonthsFromSqlAndSegmentCache_ShouldMergeTheWeekSpanningThem() throws Exception {
+        // Arrange: January is too cold for per-day loads and goes to SQL, February is fully cached
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        QueryCostEstimator costEstimator = mock(QueryCostEstimator.class);
+        DaySegmentCache segmentCache = new DaySegmentCache(true, 1_000, 1_000, 400, 5, 0,
+                Clock.fixed(Instant.parse("2024-06-01T00:00:00Z"), ZoneOffset.UTC), meterRegistry);
+        AggregationService realService = new AggregationService(jdbcTemplate, costEstimator,
+                new QueryAdmission(100, 1_000, 10_000, 100_000, 2, 1, 1, 50, meterRegistry),
+                new QueryCoalescer(mock(QueryTracker.class), 1_000, meterRegistry), segmentCache,
+                new HotWindowStore(jdbcTemplate, false, 30, 1, meterRegistry),
+                new AggregationCube(jdbcTemplate, false, 30, 5, 4, 1000, Clock.systemUTC(), meterRegistry),
+                new DrillDownCache(0, 0, 60, meterRegistry));
+        ProgressiveAggregationService progressive = new ProgressiveAggregationService(realService,
+                new QueryTracker(meterRegistry), tenantRateLimiter, 2, meterRegistry);
+        AggregationQuery query = new AggregationQuery(accountId, false, List.of("week"), List.of("clicks"),
+                "All", "All", "All", "All", "", "asc", "2024-01-01", "2024-02-29");
+
+        String shape = segmentCache.shapeKey(query);
+        for (LocalDate day = LocalDate.parse("2024-02-01"); !day.isAfter(LocalDate.parse("2024-02-29")); day = day.plusDays(1)) {
+            Map<List<Object>, DaySegmentCache.Partial> groups = new HashMap<>();
+            if (day.equals(LocalDate.parse("2024-02-01"))) {
+                groups.put(List.of(LocalDate.parse("2024-01-29")), new DaySegmentCache.Partial(BigDecimal.ONE, 10, 2, 1));
+            } else if (day.equals(LocalDate.parse("2024-02-05"))) {
+                groups.put(List.of(LocalDate.parse("2024-02-05")), new DaySegmentCache.Partial(BigDecimal.ONE, 10, 1, 1));
+            }
+            segmentCache.put(shape, day, new DaySegmentCache.DaySegment(groups), segmentCache.generation());
+        }
+
+        ResultSet rs = mock(ResultSet.class);
+        when(costEstimator.estimate(any(), anyString(), anyList())).thenReturn(10L);
+        when(rs.findColumn("week")).thenReturn(1);
+        when(rs.findColumn("total_spent")).thenReturn(2);
+        when(rs.findColumn("total_impressions")).thenReturn(3);
+        when(rs.findColumn("total_clicks")).thenReturn(4);
+        when(rs.findColumn("record_count")).thenReturn(5);
+        when(rs.getObject(1, LocalDate.class)).thenReturn(LocalDate.parse("2024-01-22"), LocalDate.parse("2024-01-29"));
+        when(rs.getBigDecimal(2)).thenReturn(BigDecimal.ONE);
+        when(rs.getLong(3)).thenReturn(10L);
+        when(rs.getLong(4)).thenReturn(4L);
+        when(rs.getLong(5)).thenReturn(1L);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            RowMapper<AggregatedMetrics> mapper = invocation.getArgument(1);
+            return List.of(mapper.mapRow(rs, 0), mapper.mapRow(rs, 1));
+        });
+        List<ProgressiveFrame> frames = Collections.synchronizedList(new ArrayList<>());
+
+        // Act
+        try {
+            progressive.aggregate(query, frames::add).get(5, TimeUnit.SECONDS);
+        } finally {
+            progressive.shutdown();
+        }
+
+        // Assert
+        List<AggregatedMetrics> rows = frames.get(frames.size() - 1).getData();
+        assertEquals(List.of(LocalDate.parse("2024-01-22"), LocalDate.parse("2024-01-29"), LocalDate.parse("2024-02-05")),
+                rows.stream().map(row -> row.getDimensions().get("week")).collect(Collectors.toList()));
+        assertEquals(6L, rows.get(1).getTotalClicks());
+    }
+
+    @Test
+    void aggregate_WithSpareTenantSlot_ShouldRunMonthsConcurrentlyAndReleaseTheSlot() throws Exception {
+        // Arrange: the request holds one of the tenant's two slots
+        assertEquals(0, tenantRateLimiter.tryAcquire(accountId, false));
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        when(aggregationService.getAggregatedData(any())).thenAnswer(invocation -> {
+            bothRunning.countDown();
+            assertTrue(bothRunning.await(5, TimeUnit.SECONDS), "months did not overlap");
+            return List.of(row("US", 100, 1));
+        });
+
+        // Act
+        service.aggregate(query("2024-01-01", "2024-02-29"), frame -> { }).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(1, tenantRateLimiter.inFlight(accountId));
+    }
+
+    @Test
+    void aggregate_WhenTenantHasNoSpareSlot_ShouldRunOneMonthAtATime() throws Exception {
+        // Arrange: the request and another of the tenant's requests hold both slots
+        assertEquals(0, tenantRateLimiter.tryAcquire(accountId, false));
+        assertEquals(0, tenantRateLimiter.tryAcquire(accountId, false));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(aggregationService.getAggregatedData(any())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return List.of(row("US", 100, 1));
+        });
+        List<ProgressiveFrame> frames = Collections.synchronizedList(new ArrayList<>());
+
+        // Act
+        service.aggregate(query("2024-01-01", "2024-03-31"), frames::add).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(1, maxRunning.get());
+        assertEquals(3, frames.size());
+        assertTrue(frames.get(2).isComplete());
+        assertEquals(2, tenantRateLimiter.inFlight(accountId));
+    }
+
+    @Test
+    void aggregate_WhenMonthFails_ShouldCompleteExceptionallyWithItsCause() {
+        // Arrange
+        when(aggregationService.getAggregatedData(any()))
+                .thenThrow(new QueryRejectedException("Too many queries", 503, 1));
+
+        // Act
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> service.aggregate(query("2024-01-01", "2024-01-31"), frame -> { }).get(5, TimeUnit.SECONDS));
+
+        // Assert
+        assertInstanceOf(QueryRejectedException.class, ProgressiveAggregationService.cause(e.getCause()));
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryAdmissionTest {
+
+    private QueryAdmission admission;
+
+    @BeforeEach
+    void setUp() {
+        admission = new QueryAdmission(100, 1_000, 10_000, 100_000, 2, 1, 1, 50, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void classify_ShouldMapCostToLanes() {
+        assertEquals(QueryAdmission.Lane.CHEAP, admission.classify(100));
+        assertEquals(QueryAdmission.Lane.MEDIUM, admission.classify(1_000));
+        assertEquals(QueryAdmission.Lane.HEAVY, admission.classify(5_000));
+        assertEquals(QueryAdmission.Lane.MEDIUM, admission.classify(-1));
+    }
+
+    @Test
+    void execute_OverInteractiveBudget_ShouldReject() {
+        // Act
+        QueryRejectedException e = assertThrows(QueryRejectedException.class,
+                () -> admission.execute(20_000, false, () -> "never"));
+
+        // Assert
+        assertEquals(422, e.getStatus());
+    }
+
+    @Test
+    void execute_ExportWithinExportBudget_ShouldRun() {
+        assertEquals("done", admission.execute(20_000, true, () -> "done"));
+    }
+
+    @Test
+    void execute_WhenHeavyLaneBusy_ShouldRejectHeavyButAdmitCheap() throws Exception {
+        // Arrange
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(() -> admission.execute(5_000, false, () -> {
+            running.countDown();
+            try {
+                finish.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            return null;
+        }));
+        running.await(5, TimeUnit.SECONDS);
+
+        // Act
+        QueryRejectedException e = assertThrows(QueryRejectedException.class,
+                () -> admission.execute(5_000, false, () -> "blocked"));
+        String cheap = admission.execute(10, false, () -> "cheap");
+        finish.countDown();
+        executor.shutdown();
+
+        // Assert
+        assertEquals(429, e.getStatus());
+        assertEquals(1, e.getRetryAfterSeconds());
+        assertEquals("cheap", cheap);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class QueryCoalescerTest {
+
+    private QueryCoalescer coalescer;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new QueryCoalescer(mock(QueryTracker.class), 1_000, new SimpleMeterRegistry());
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void execute_ConcurrentIdenticalKeys_ShouldRunWorkOnce() throws Exception {
+        // Arrange
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+
+        Future<String> leader = executor.submit(() -> coalescer.execute("key", () -> {
+            executions.incrementAndGet();
+            leaderStarted.countDown();
+            await(release);
+            return "result";
+        }));
+        assertTrue(leaderStarted.await(1, TimeUnit.SECONDS));
+
+        // Act
+        Future<String> follower = executor.submit(() -> coalescer.execute("key", () -> {
+            executions.incrementAndGet();
+            return "duplicate";
+        }));
+        Thread.sleep(50);
+        release.countDown();
+
+        // Assert
+        assertEquals("result", leader.get(1, TimeUnit.SECONDS));
+        assertEquals("result", follower.get(1, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void execute_AfterLeaderFinished_ShouldRunAgain() {
+        // Arrange
+        AtomicInteger executions = new AtomicInteger();
+
+        // Act
+        coalescer.execute("key", executions::incrementAndGet);
+        coalescer.execute("key", executions::incrementAndGet);
+
+        // Assert
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void execute_WhenLeaderIsSlowerThanWaiterDeadline_ShouldCancelWaiterOnly() throws Exception {
+        // Arrange
+        QueryCoalescer shortWait = new QueryCoalescer(mock(QueryTracker.class), 50, new SimpleMeterRegistry());
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> shortWait.execute("key", () -> {
+            leaderStarted.countDown();
+            await(release);
+            return "result";
+        }));
+        assertTrue(leaderStarted.await(1, TimeUnit.SECONDS));
+
+        // Act
+        QueryCancelledException e = assertThrows(QueryCancelledException.class,
+                () -> shortWait.execute("key", () -> "duplicate"));
+        release.countDown();
+
+        // Assert
+        assertEquals(QueryTracker.Reason.DEADLINE, e.getReason());
+        assertEquals("result", leader.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void execute_WhenLeaderIsCancelled_ShouldRerunForWaiter() throws Exception {
+        // Arrange
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> coalescer.execute("key", () -> {
+            leaderStarted.countDown();
+            await(release);
+            throw new QueryCancelledException(QueryTracker.Reason.SUPERSEDED, null);
+        }));
+        assertTrue(leaderStarted.await(1, TimeUnit.SECONDS));
+
+        // Act
+        Future<String> follower = executor.submit(() -> coalescer.execute("key", () -> "own result"));
+        Thread.sleep(50);
+        release.countDown();
+
+        // Assert
+        assertEquals("own result", follower.get(1, TimeUnit.SECONDS));
+        assertThrows(Exception.class, () -> leader.get(1, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
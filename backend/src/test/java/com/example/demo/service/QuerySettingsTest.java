@@ -0,0 +1,91 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuerySettingsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private QuerySettings querySettings;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("app.query.settings.export.max-threads", "2")
+                .withProperty("app.query.settings.export.priority", "5")
+                .withProperty("app.query.settings.interactive.max-bytes-before-external-group-by", "1000")
+                .withProperty("app.query.settings.interactive.query-cache-ttl", "300");
+        querySettings = new QuerySettings(environment, 1, meterRegistry);
+    }
+
+    @Test
+    void forStatement_ShouldReturnOnlyConfiguredSettingsAndCountUse() {
+        // Act
+        Map<String, Long> export = querySettings.forStatement(QuerySettings.EXPORT);
+        Map<String, Long> ingest = querySettings.forStatement(QuerySettings.INGEST);
+
+        // Assert
+        assertEquals(Map.of("max_threads", 2L, "priority", 5L), export);
+        assertTrue(ingest.isEmpty());
+        assertEquals(1.0, meterRegistry.counter("query.settings.statements", "profile", "export").count());
+        assertEquals(5.0, meterRegistry.get("query.settings").tags("profile", "export", "setting", "priority").gauge().value());
+    }
+
+    @Test
+    void forStatement_WithoutProfile_ShouldApplyNothing() {
+        // Act & Assert
+        assertTrue(querySettings.forStatement(null).isEmpty());
+    }
+
+    @Test
+    void run_ShouldScopeProfileToThreadAndRestoreOuterOne() {
+        // Act
+        String inner = QuerySettings.run(QuerySettings.EXPORT,
+                () -> QuerySettings.run(QuerySettings.INGEST, QuerySettings::scoped));
+        String outer = QuerySettings.run(QuerySettings.EXPORT, () -> {
+            QuerySettings.run(QuerySettings.INGEST, () -> { });
+            return QuerySettings.scoped();
+        });
+
+        // Assert
+        assertEquals(QuerySettings.INGEST, inner);
+        assertEquals(QuerySettings.EXPORT, outer);
+        assertNull(QuerySettings.scoped());
+    }
+
+    @Test
+    void forStatement_ReadingClosedRange_ShouldUseQueryCacheWithProfileTtl() {
+        // Arrange
+        Map<String, Map<String, Long>> profiles = Map.of(QuerySettings.INTERACTIVE, Map.of("max_threads", 4L, "query_cache_ttl", 300L),
+                QuerySettings.EXPORT, Map.of("max_threads", 2L));
+        QuerySettings settings = new QuerySettings(profiles, 1,
+                Clock.fixed(Instant.parse("2024-06-01T12:00:00Z"), ZoneOffset.UTC), meterRegistry);
+
+        // Act
+        Map<String, Long> closed = QuerySettings.readingUpTo(LocalDate.parse("2024-05-31"),
+                () -> settings.forStatement(QuerySettings.INTERACTIVE));
+        Map<String, Long> today = QuerySettings.readingUpTo(LocalDate.parse("2024-06-01"),
+                () -> settings.forStatement(QuerySettings.INTERACTIVE));
+        Map<String, Long> noTtl = QuerySettings.readingUpTo(LocalDate.parse("2024-05-31"),
+                () -> settings.forStatement(QuerySettings.EXPORT));
+        Map<String, Long> unmarked = settings.forStatement(QuerySettings.INTERACTIVE);
+
+        // Assert
+        assertEquals(Map.of("max_threads", 4L, "use_query_cache", 1L, "query_cache_ttl", 300L), closed);
+        assertEquals(Map.of("max_threads", 4L), today);
+        assertEquals(Map.of("max_threads", 2L), noTtl);
+        assertEquals(Map.of("max_threads", 4L), unmarked);
+        assertEquals(1.0, meterRegistry.counter("query.settings.query_cache", "profile", "interactive").count());
+    }
+}
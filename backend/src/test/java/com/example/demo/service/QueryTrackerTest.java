@@ -0,0 +1,100 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class QueryTrackerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private QueryTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        tracker = new QueryTracker(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracker.shutdown();
+    }
+
+    @Test
+    void begin_WithSameSupersedeKey_ShouldCancelPreviousRequest() throws Exception {
+        // Arrange
+        QueryTracker.TrackedRequest first = tracker.begin("user:/api/aggregate/paginated:tab", 10_000);
+        Statement statement = mock(Statement.class);
+        assertTrue(first.register(statement));
+
+        // Act
+        QueryTracker.TrackedRequest second = tracker.begin("user:/api/aggregate/paginated:tab", 10_000);
+
+        // Assert
+        verify(statement).cancel();
+        assertEquals(QueryTracker.Reason.SUPERSEDED, first.getCancelledReason());
+        assertNull(second.getCancelledReason());
+        assertSame(second, tracker.current());
+        assertEquals(1.0, meterRegistry.counter("query.cancelled", "reason", "superseded").count());
+    }
+
+    @Test
+    void begin_WithoutSupersedeKey_ShouldNotCancelOtherRequests() throws Exception {
+        // Arrange
+        QueryTracker.TrackedRequest first = tracker.begin(null, 10_000);
+        Statement statement = mock(Statement.class);
+        first.register(statement);
+
+        // Act
+        tracker.begin(null, 10_000);
+
+        // Assert
+        verify(statement, never()).cancel();
+        assertNull(first.getCancelledReason());
+    }
+
+    @Test
+    void watchdog_PastDeadline_ShouldCancelRunningStatements() throws Exception {
+        // Arrange
+        QueryTracker.TrackedRequest request = tracker.begin(null, 50);
+        Statement statement = mock(Statement.class);
+        request.register(statement);
+
+        // Act / Assert
+        verify(statement, timeout(2_000)).cancel();
+        assertEquals(QueryTracker.Reason.DEADLINE, request.getCancelledReason());
+        assertEquals(1.0, meterRegistry.counter("query.cancelled", "reason", "deadline").count());
+    }
+
+    @Test
+    void register_AfterCancel_ShouldRefuseStatement() {
+        // Arrange
+        QueryTracker.TrackedRequest request = tracker.begin(null, 10_000);
+        tracker.cancel(request, QueryTracker.Reason.SUPERSEDED);
+
+        // Act / Assert
+        assertFalse(request.register(mock(Statement.class)));
+    }
+
+    @Test
+    void end_ShouldClearCurrentAndReleaseSupersedeKey() throws Exception {
+        // Arrange
+        QueryTracker.TrackedRequest first = tracker.begin("key", 10_000);
+        Statement statement = mock(Statement.class);
+        first.register(statement);
+
+        // Act
+        tracker.end(first);
+        tracker.begin("key", 10_000);
+
+        // Assert
+        assertNull(first.getCancelledReason());
+        verify(statement, never()).cancel();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeSeriesDownsamplerTest {
+
+    private static List<Double> flatWithSpike(int size, int spikeAt) {
+        List<Double> points = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            points.add(i == spikeAt ? 100.0 : 1.0);
+        }
+        return points;
+    }
+
+    @Test
+    void lttb_ShouldReturnRequestedSizeKeepingEndpoints() {
+        // Arrange
+        List<Double> points = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            points.add(Math.sin(i / 10.0));
+        }
+
+        // Act
+        List<Double> sampled = TimeSeriesDownsampler.lttb(points, 50, Double::doubleValue);
+
+        // Assert
+        assertEquals(50, sampled.size());
+        assertSame(points.get(0), sampled.get(0));
+        assertSame(points.get(999), sampled.get(49));
+    }
+
+    @Test
+    void lttb_ShouldPreserveSpikes() {
+        // Arrange
+        List<Double> points = flatWithSpike(500, 237);
+
+        // Act
+        List<Double> sampled = TimeSeriesDownsampler.lttb(points, 20, Double::doubleValue);
+
+        // Assert
+        assertTrue(sampled.contains(100.0));
+    }
+
+    @Test
+    void lttb_ShouldKeepTimeOrder() {
+        // Arrange
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            indexes.add(i);
+        }
+
+        // Act
+        List<Integer> sampled = TimeSeriesDownsampler.lttb(indexes, 25, i -> (i * 7919) % 101);
+
+        // Assert
+        for (int i = 1; i < sampled.size(); i++) {
+            assertTrue(sampled.get(i) > sampled.get(i - 1));
+        }
+    }
+
+    @Test
+    void lttb_WhenAlreadySmallEnoughOrThresholdTooLow_ShouldReturnInput() {
+        // Arrange
+        List<Double> points = flatWithSpike(10, 3);
+
+        // Act / Assert
+        assertSame(points, TimeSeriesDownsampler.lttb(points, 10, Double::doubleValue));
+        assertSame(points, TimeSeriesDownsampler.lttb(points, 0, Double::doubleValue));
+        assertSame(points, TimeSeriesDownsampler.lttb(points, 2, Double::doubleValue));
+    }
+}
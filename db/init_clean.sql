@@ -16,11 +16,14 @@ CREATE TABLE IF NOT EXISTS appdb.ads_metrics
     browser LowCardinality(String),
     spent Decimal(18,6),
     impressions UInt64,
-    clicks UInt64
+    clicks UInt64,
+    -- Sampling key: a function of the other key columns, so rows that sum together share it
+    sample_key UInt32 MATERIALIZED xxHash32(campaign, country, platform, browser)
 )
 ENGINE = SummingMergeTree((spent, impressions, clicks))
 PARTITION BY toYYYYMM(day)
-ORDER BY (day, account_id, campaign, country, platform, browser);
+ORDER BY (day, account_id, sample_key, campaign, country, platform, browser)
+SAMPLE BY sample_key;
 
 -- Mock data will be loaded from CSV files via Java StartupSeeder
 
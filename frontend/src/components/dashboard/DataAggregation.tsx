@@ -2,7 +2,7 @@ import React from 'react'
 import { AggregationState, FilterState, AggregatedMetrics, SortState } from '../../types'
 import { Card } from '../ui/Card'
 import { Button } from '../ui/Button'
-import { AVAILABLE_DIMENSIONS, AVAILABLE_METRICS } from '../../utils/constants'
+import { AVAILABLE_DIMENSIONS, AVAILABLE_METRICS, DERIVED_METRICS } from '../../utils/constants'
 
 interface DataAggregationProps {
   aggregationState: AggregationState
@@ -197,6 +197,18 @@ export const DataAggregation: React.FC<DataAggregationProps> = ({
                       </div>
                     </th>
                   )}
+                  {DERIVED_METRICS.filter(m => aggregationState.selectedMetrics.includes(m)).map(metric => (
+                    <th 
+                      key={metric}
+                      className="table-cell text-right font-semibold cursor-pointer hover:bg-gray-100 transition-colors" 
+                      onClick={() => onSort(metric)}
+                    >
+                      <div className="flex items-center justify-end gap-1">
+                        {metric.toUpperCase()}
+                        <SortIcon field={metric} />
+                      </div>
+                    </th>
+                  ))}
                   <th className="table-cell text-right font-semibold">Records</th>
                 </tr>
               </thead>
@@ -223,6 +235,11 @@ export const DataAggregation: React.FC<DataAggregationProps> = ({
                         {row.totalClicks.toLocaleString()}
                       </td>
                     )}
+                    {DERIVED_METRICS.filter(m => aggregationState.selectedMetrics.includes(m)).map(metric => (
+                      <td key={metric} className="table-cell text-right font-mono">
+                        {row.derived?.[metric] != null ? row.derived[metric]!.toFixed(metric === 'ctr' ? 4 : 2) : '-'}
+                      </td>
+                    ))}
                     <td className="table-cell text-right font-mono">
                       {row.recordCount}
                     </td>
@@ -2,6 +2,10 @@ import { useState, useCallback } from 'react'
 import { apiClient } from '../utils/apiClient'
 import { AggregatedMetrics, PaginatedResponse, FilterState, AggregationState, PaginationState, SortState } from '../types'
 
+// One query group per tab: the backend cancels this tab's previous paginated
+// query when a newer one arrives and answers the stale request with 409
+const QUERY_GROUP = Math.random().toString(36).slice(2)
+
 export const useAggregatedData = (token: string | null) => {
   const [aggregatedData, setAggregatedData] = useState<AggregatedMetrics[]>([])
   const [aggPaginatedData, setAggPaginatedData] = useState<PaginatedResponse<AggregatedMetrics> | null>(null)
@@ -55,6 +59,7 @@ export const useAggregatedData = (token: string | null) => {
     try {
       const data = await apiClient.requestWithAuth<any>('/api/aggregate/paginated', token, {
         method: 'POST',
+        headers: { 'X-Query-Group': QUERY_GROUP },
         body: JSON.stringify({
           groupBy: aggregationState.clickedDimensions,
           metrics: aggregationState.clickedMetrics,
@@ -87,6 +92,8 @@ export const useAggregatedData = (token: string | null) => {
         totalElements: data.totalElements
       }))
     } catch (e) {
+      // Superseded by a newer request from this tab, which owns the result
+      if (String(e).includes('HTTP 409')) return
       setError(String(e))
     } finally {
       setLoading(false)
@@ -1,5 +1,6 @@
 import { useState, useCallback } from 'react'
 import { apiClient } from '../utils/apiClient'
+import { FacetValue } from '../types'
 
 export const useFilters = () => {
   const [availableCountries, setAvailableCountries] = useState<string[]>([])
@@ -44,14 +45,19 @@ export const useFilters = () => {
     }
   }, [])
 
+  // All four filter lists come from one scan on the backend
   const fetchAllFilters = useCallback(async (token: string) => {
-    await Promise.all([
-      fetchAvailableCountries(token),
-      fetchAvailableCampaigns(token),
-      fetchAvailablePlatforms(token),
-      fetchAvailableBrowsers(token)
-    ])
-  }, [fetchAvailableCountries, fetchAvailableCampaigns, fetchAvailablePlatforms, fetchAvailableBrowsers])
+    try {
+      const facets = await apiClient.requestWithAuth<Record<string, FacetValue[]>>('/api/ads/facets', token)
+      const values = (dimension: string) => (facets[dimension] ?? []).map(f => f.value)
+      setAvailableCountries(values('country'))
+      setAvailableCampaigns(values('campaign'))
+      setAvailablePlatforms(values('platform'))
+      setAvailableBrowsers(values('browser'))
+    } catch (e) {
+      setError(String(e))
+    }
+  }, [])
 
   return {
     availableCountries,
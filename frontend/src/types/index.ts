@@ -4,6 +4,13 @@ export type AggregatedMetrics = {
   totalImpressions: number;
   totalClicks: number;
   recordCount: number;
+  derived?: Record<string, number | null>;
+  groupingLevel?: number;
+}
+
+export type FacetValue = {
+  value: string;
+  count?: number;
 }
 
 export type AdMetrics = { 
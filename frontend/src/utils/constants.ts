@@ -2,7 +2,9 @@ export const API_URL: string = (import.meta as any).env.VITE_API_URL || 'http://
 
 export const AVAILABLE_DIMENSIONS = ['day', 'week', 'month', 'campaign', 'country', 'platform', 'browser'] as const
 
-export const AVAILABLE_METRICS = ['spent', 'impressions', 'clicks'] as const
+export const DERIVED_METRICS = ['ctr', 'cpc', 'cpm'] as const
+
+export const AVAILABLE_METRICS = ['spent', 'impressions', 'clicks', ...DERIVED_METRICS] as const
 
 export const PAGE_SIZE_OPTIONS = [5, 10, 20, 50] as const
 